@@ -90,6 +90,98 @@ publishing {
     }
 }
 
+/**
+ * Compiles the VTIMEZONE definitions of ical4j (`zoneinfo/…/*.ics`) and the time zone aliases
+ * (`tz.alias` of ical4j, overridden by the one of this library) into one snapshot resource,
+ * which is read by `at.bitfire.ical4android.TimeZoneSnapshot` (see there for the format).
+ */
+abstract class CompileTimeZoneSnapshot : DefaultTask() {
+
+    @get:InputFiles
+    abstract val ical4jJars: ConfigurableFileCollection
+
+    @get:InputFile
+    abstract val aliasFile: RegularFileProperty
+
+    @get:OutputDirectory
+    abstract val outputDir: DirectoryProperty
+
+    @TaskAction
+    fun compile() {
+        val zones = sortedMapOf<String, ByteArray>()
+        val aliases = java.util.Properties()
+
+        for (jar in ical4jJars.files.filter { it.name.endsWith(".jar") })
+            java.util.zip.ZipFile(jar).use { zip ->
+                for (entry in zip.entries()) {
+                    val name = entry.name
+                    if (name.startsWith("zoneinfo/") && name.endsWith(".ics"))
+                        zip.getInputStream(entry).use { stream ->
+                            val id = name.removePrefix("zoneinfo/").removeSuffix(".ics")
+                            zones[id] = vTimeZone(stream.reader(Charsets.UTF_8).readText()).toByteArray(Charsets.UTF_8)
+                        }
+                    else if (name == "net/fortuna/ical4j/model/tz.alias")
+                        zip.getInputStream(entry).use { aliases.load(it) }
+                }
+            }
+        aliasFile.get().asFile.inputStream().use { aliases.load(it) }
+
+        val index = java.io.ByteArrayOutputStream()
+        java.io.DataOutputStream(index).use { out ->
+            out.writeInt(aliases.size)
+            for (alias in aliases.stringPropertyNames().sorted()) {
+                out.writeUTF(alias)
+                out.writeUTF(aliases.getProperty(alias))
+            }
+            out.writeInt(zones.size)
+            var offset = 0
+            for ((id, definition) in zones) {
+                out.writeUTF(id)
+                out.writeInt(offset)
+                out.writeInt(definition.size)
+                offset += definition.size
+            }
+        }
+
+        val file = outputDir.file("at/bitfire/ical4android/timezones.snapshot").get().asFile
+        file.parentFile.mkdirs()
+        java.io.DataOutputStream(file.outputStream().buffered()).use { out ->
+            out.writeInt(0x545A5331)        // "TZS1"
+            out.writeInt(index.size())
+            index.writeTo(out)
+            for (definition in zones.values)
+                out.write(definition)
+        }
+        logger.info("Compiled ${zones.size} time zones and ${aliases.size} aliases into $file")
+    }
+
+    /**
+     * Extracts the VTIMEZONE component from an iCalendar and unfolds its lines.
+     */
+    private fun vTimeZone(ical: String): String {
+        val lines = ical.replace(Regex("\r?\n[ \t]"), "").lines()
+        val start = lines.indexOfFirst { it.trim() == "BEGIN:VTIMEZONE" }
+        val end = lines.indexOfLast { it.trim() == "END:VTIMEZONE" }
+        if (start == -1 || end < start)
+            throw GradleException("Invalid VTIMEZONE definition")
+        return lines.subList(start, end + 1).joinToString("") { it.trimEnd('\r') + "\r\n" }
+    }
+
+}
+
+val compileTimeZoneSnapshot by tasks.registering(CompileTimeZoneSnapshot::class) {
+    ical4jJars.from(configurations.detachedConfiguration(dependencies.create(libs.ical4j.get())).apply {
+        isTransitive = false
+    })
+    aliasFile.set(layout.projectDirectory.file("src/main/resources/tz.alias"))
+}
+
+androidComponents {
+    onVariants { variant ->
+        variant.sources.resources?.addGeneratedSourceDirectory(compileTimeZoneSnapshot, CompileTimeZoneSnapshot::outputDir)
+    }
+}
+
 dependencies {
     implementation(libs.kotlin.stdlib)
     coreLibraryDesugaring(libs.android.desugaring)
@@ -14,17 +14,26 @@ import android.content.ContentValues
 import android.provider.CalendarContract
 import android.provider.CalendarContract.Calendars
 import android.provider.CalendarContract.Colors
+import android.provider.CalendarContract.Events
+import androidx.core.content.contentValuesOf
+import androidx.test.filters.SdkSuppress
 import androidx.test.platform.app.InstrumentationRegistry
 import androidx.test.rule.GrantPermissionRule
 import at.bitfire.ical4android.impl.TestCalendar
 import at.bitfire.ical4android.impl.TestEvent
 import at.bitfire.ical4android.util.MiscUtils.asSyncAdapter
 import at.bitfire.ical4android.util.MiscUtils.closeCompat
+import io.mockk.every
+import io.mockk.mockk
+import net.fortuna.ical4j.model.DateTime
 import net.fortuna.ical4j.model.property.DtEnd
 import net.fortuna.ical4j.model.property.DtStart
+import net.fortuna.ical4j.model.property.RRule
+import net.fortuna.ical4j.model.property.RecurrenceId
 import org.junit.AfterClass
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
 import org.junit.Assert.assertTrue
 import org.junit.Before
 import org.junit.BeforeClass
@@ -123,6 +132,199 @@ class AndroidCalendarTest {
         }
     }
 
+    @Test
+    fun testAvailableColorKeys() {
+        assertTrue(AndroidCalendar.availableColorKeys(provider, testAccount).isEmpty())
+
+        // insertColors invalidates the cache
+        AndroidCalendar.insertColors(provider, testAccount)
+        val keys = AndroidCalendar.availableColorKeys(provider, testAccount)
+        assertEquals(Css3Color.values().size, keys.size)
+        assertTrue(keys.contains(Css3Color.limegreen.name))
+
+        // removeColors invalidates the cache
+        AndroidCalendar.removeColors(provider, testAccount)
+        assertTrue(AndroidCalendar.availableColorKeys(provider, testAccount).isEmpty())
+    }
+
+    @Test
+    @SdkSuppress(minSdkVersion = 28)
+    fun testAvailableColorKeys_QueryFailed() {
+        // mocking final classes requires Android P or newer
+        AndroidCalendar.insertColors(provider, testAccount)
+        val failingProvider = mockk<ContentProviderClient> {
+            every { query(any(), any(), any<String>(), any(), any()) } returns null
+        }
+        assertTrue(AndroidCalendar.availableColorKeys(failingProvider, testAccount).isEmpty())
+
+        // failed query has not been cached
+        assertEquals(Css3Color.values().size, AndroidCalendar.availableColorKeys(provider, testAccount).size)
+    }
+
+    @Test
+    fun testSyncIndex() {
+        val calendar = TestCalendar.findOrCreate(testAccount, provider)
+        try {
+            val event = Event().apply {
+                uid = "sample1@testSyncIndex"
+                dtStart = DtStart("20150502T120000Z")
+                dtEnd = DtEnd("20150502T130000Z")
+            }
+            val existing = TestEvent(calendar, event)
+            val existingId = ContentUris.parseId(existing.add())
+
+            // load index
+            val index = calendar.loadSyncIndex()
+            assertEquals(1, index.size)
+            val entry = index.findByUid("sample1@testSyncIndex")!!
+            assertEquals(existingId, entry.id)
+            assertEquals(existing.syncId, entry.fileName)
+            assertEquals(entry, index.findByFileName(existing.syncId))
+
+            // add: index is updated
+            val added = TestEvent(calendar, Event().apply {
+                uid = "sample2@testSyncIndex"
+                dtStart = DtStart("20150502T120000Z")
+                dtEnd = DtEnd("20150502T130000Z")
+            })
+            val addedId = ContentUris.parseId(added.add())
+            assertEquals(2, index.size)
+            assertEquals(addedId, index.findByUid("sample2@testSyncIndex")?.id)
+
+            // update: UID is changed in the index
+            existing.update(Event().apply {
+                uid = "sample1-updated@testSyncIndex"
+                dtStart = DtStart("20150502T120000Z")
+                dtEnd = DtEnd("20150502T130000Z")
+            })
+            assertNull(index.findByUid("sample1@testSyncIndex"))
+            assertEquals(existingId, index.findByUid("sample1-updated@testSyncIndex")?.id)
+
+            // delete: row is removed from the index
+            added.delete()
+            assertNull(index.findById(addedId))
+            assertNull(index.findByFileName(added.syncId))
+            assertEquals(1, index.size)
+        } finally {
+            calendar.delete()
+        }
+    }
+
+    @Test
+    fun testSyncIndex_ExceptionRowNotIndexed() {
+        val calendar = TestCalendar.findOrCreate(testAccount, provider)
+        try {
+            val mainId = ContentUris.parseId(TestEvent(calendar, Event().apply {
+                uid = "recurring@testSyncIndex"
+                dtStart = DtStart("20150502T120000Z")
+                dtEnd = DtEnd("20150502T130000Z")
+                rRules += RRule("FREQ=DAILY;COUNT=3")
+                exceptions += Event().apply {
+                    uid = "recurring@testSyncIndex"
+                    recurrenceId = RecurrenceId("20150503T120000Z")
+                    dtStart = DtStart("20150503T140000Z")
+                    dtEnd = DtEnd("20150503T150000Z")
+                }
+            }).add())
+            val index = calendar.loadSyncIndex()
+            assertEquals(mainId, index.findByUid("recurring@testSyncIndex")?.id)
+
+            // update exception row that has been queried without selection
+            val exceptionRow = calendar.queryEvents().first { it.id != mainId }
+            exceptionRow.update(exceptionRow.event!!.apply { summary = "Updated exception" })
+
+            // index still points to the main event
+            assertEquals(1, index.size)
+            assertEquals(mainId, index.findByUid("recurring@testSyncIndex")?.id)
+        } finally {
+            calendar.delete()
+        }
+    }
+
+    @Test
+    fun testInstanceIndex_ExceptionRowNotIndexed() {
+        val calendar = TestCalendar.findOrCreate(testAccount, provider)
+        try {
+            val mainId = ContentUris.parseId(TestEvent(calendar, Event().apply {
+                uid = "recurring@testInstanceIndex"
+                dtStart = DtStart("20150502T120000Z")
+                dtEnd = DtEnd("20150502T130000Z")
+                rRules += RRule("FREQ=DAILY;COUNT=3")
+                exceptions += Event().apply {
+                    uid = "recurring@testInstanceIndex"
+                    recurrenceId = RecurrenceId("20150503T120000Z")
+                    dtStart = DtStart("20150503T140000Z")
+                    dtEnd = DtEnd("20150503T150000Z")
+                }
+            }).add())
+            val index = calendar.loadInstanceIndex(
+                DateTime("20150501T000000Z").time,
+                DateTime("20150601T000000Z").time
+            )
+            assertEquals(3, index.size)
+
+            // update exception row that has been queried without selection
+            val exceptionRow = calendar.queryEvents().first { it.id != mainId }
+            exceptionRow.update(exceptionRow.event!!.apply { summary = "Updated exception" })
+
+            // exception row has not been added as separate event
+            assertEquals(3, index.size)
+            assertEquals(setOf(mainId), index.query(DateTime("20150501T000000Z").time, DateTime("20150601T000000Z").time).map { it.key }.toSet())
+        } finally {
+            calendar.delete()
+        }
+    }
+
+    @Test
+    fun testQueryChanges() {
+        val calendar = TestCalendar.findOrCreate(testAccount, provider)
+        try {
+            fun add(uid: String, withException: Boolean = false) = ContentUris.parseId(TestEvent(calendar, Event().apply {
+                this.uid = uid
+                dtStart = DtStart("20150502T120000Z")
+                dtEnd = DtEnd("20150502T130000Z")
+                if (withException) {
+                    rRules += RRule("FREQ=DAILY;COUNT=3")
+                    exceptions += Event().apply {
+                        this.uid = uid
+                        recurrenceId = RecurrenceId("20150503T120000Z")
+                        dtStart = DtStart("20150503T140000Z")
+                        dtEnd = DtEnd("20150503T150000Z")
+                    }
+                }
+            }).add())
+            fun set(id: Long, values: ContentValues) =
+                provider.update(ContentUris.withAppendedId(Events.CONTENT_URI, id).asSyncAdapter(testAccount), values, null, null)
+
+            add("clean@testQueryChanges")
+
+            // clean main event with dirty exception
+            val recurringId = add("recurring@testQueryChanges", withException = true)
+            val exceptionId = calendar.queryEvents("${Events.ORIGINAL_ID}=?", arrayOf(recurringId.toString())).single().id!!
+            set(exceptionId, contentValuesOf(Events.DIRTY to 1))
+
+            val deletedId = add("deleted@testQueryChanges")
+            set(deletedId, contentValuesOf(Events.DELETED to 1))
+
+            // new event (without file name)
+            val newId = add("new@testQueryChanges")
+            set(newId, contentValuesOf(Events._SYNC_ID to null, Events.DIRTY to 1))
+
+            val changes = calendar.queryChanges(pageSize = 2).associateBy { it.id }
+            assertEquals(setOf(recurringId, deletedId, newId), changes.keys)
+            assertEquals(LocalChange.Type.DIRTY, changes[recurringId]!!.type)
+            assertEquals(LocalChange.Type.DELETED, changes[deletedId]!!.type)
+            assertEquals(LocalChange.Type.NEW, changes[newId]!!.type)
+
+            // full event is loaded on demand (with exception)
+            val recurring = changes[recurringId]!!.resource!!.event!!
+            assertEquals("recurring@testQueryChanges", recurring.uid)
+            assertEquals(1, recurring.exceptions.size)
+        } finally {
+            calendar.delete()
+        }
+    }
+
     private fun countColors(account: Account): Int {
         val uri = Colors.CONTENT_URI.asSyncAdapter(account)
         provider.query(uri, null, null, null, null)!!.use { cursor ->
@@ -12,11 +12,15 @@ import net.fortuna.ical4j.model.TimeZoneRegistry
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertFalse
 import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
 import org.junit.Assume
 import org.junit.Before
 import org.junit.Test
 import java.time.ZoneId
 import java.time.zone.ZoneRulesException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 
 class AndroidCompatTimeZoneRegistryTest {
 
@@ -91,4 +95,62 @@ class AndroidCompatTimeZoneRegistryTest {
         assertNull(registry.getTimeZone("Test/NotExisting"))
     }
 
+    @Test
+    fun getTimeZone_Cached_SameInstance() {
+        assertSame(registry.getTimeZone("Europe/Vienna"), registry.getTimeZone("Europe/Vienna"))
+        // also for copied time zones
+        assertSame(registry.getTimeZone("Europe/Kiev"), registry.getTimeZone("Europe/Kiev"))
+    }
+
+    @Test
+    fun getTimeZone_Cached_NotExisting() {
+        var calls = 0
+        val reg = AndroidCompatTimeZoneRegistry(object: TimeZoneRegistry {
+            override fun register(timezone: TimeZone?) {}
+            override fun register(timezone: TimeZone?, update: Boolean) {}
+            override fun clear() {}
+            override fun getTimeZone(id: String?): TimeZone? {
+                calls++
+                return null
+            }
+        })
+        assertNull(reg.getTimeZone("Test/NotExisting"))
+        assertNull(reg.getTimeZone("Test/NotExisting"))
+        assertEquals(1, calls)
+
+        // registering a time zone invalidates the cache
+        reg.register(ical4jRegistry.getTimeZone("Europe/Vienna"))
+        assertNull(reg.getTimeZone("Test/NotExisting"))
+        assertEquals(2, calls)
+    }
+
+    @Test
+    fun getTimeZone_Cached_ThreadSafe() {
+        val ids = arrayOf("Europe/Vienna", "Europe/Kiev", "America/New_York", "Asia/Tokyo", "Test/NotExisting")
+        val threads = 8
+        val results = Array(threads) { arrayOfNulls<TimeZone>(ids.size) }
+        val start = CountDownLatch(1)
+        val executor = Executors.newFixedThreadPool(threads)
+        try {
+            val futures = (0 until threads).map { thread ->
+                executor.submit {
+                    start.await()
+                    for (i in ids.indices)
+                        results[thread][i] = registry.getTimeZone(ids[i])
+                }
+            }
+            start.countDown()
+            for (future in futures)
+                future.get(30, TimeUnit.SECONDS)
+        } finally {
+            executor.shutdown()
+        }
+
+        // all threads got the same instances
+        for (thread in 1 until threads)
+            for (i in ids.indices)
+                assertSame(results[0][i], results[thread][i])
+        assertNull(results[0][ids.indexOf("Test/NotExisting")])
+    }
+
 }
\ No newline at end of file
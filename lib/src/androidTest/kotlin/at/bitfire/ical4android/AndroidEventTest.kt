@@ -2339,6 +2339,141 @@ class AndroidEventTest {
         }
     }
 
+    @Test
+    fun testQueryEvents_Paged() {
+        val ids = (1..5).map { i ->
+            ContentUris.parseId(TestEvent(calendar, Event().apply {
+                uid = "event$i@testQueryEvents_Paged"
+                summary = "Event $i"
+                dtStart = DtStart("20200706T193000", tzVienna)
+                dtEnd = DtEnd("20200706T203000", tzVienna)
+            }).add())
+        }
+
+        // page sizes smaller than, equal to and larger than the number of rows
+        for (pageSize in listOf(1, 2, 5, 10)) {
+            val queriedIds = mutableListOf<Long>()
+            val titles = mutableListOf<String>()
+            for (event in calendar.queryEvents(arrayOf(Events._ID, Events.TITLE), "${Events.TITLE} LIKE ?", arrayOf("Event %"), pageSize)) {
+                queriedIds += event.id!!
+                titles += event.event!!.summary!!
+            }
+
+            // every row exactly once, across page boundaries
+            assertEquals("page size $pageSize", ids.sorted(), queriedIds.sorted())
+            assertEquals("page size $pageSize", (1..5).map { "Event $it" }, titles.sorted())
+        }
+    }
+
+    @Test
+    fun testEventCache_Lru() {
+        val uri = TestEvent(calendar, Event().apply {
+            uid = "sample1@testEventCache"
+            summary = "Cached event"
+            dtStart = DtStart("20150502T120000Z")
+            dtEnd = DtEnd("20150502T130000Z")
+        }).add()
+
+        // budget is too small for one event, so every access re-loads the event
+        calendar.eventCache = DataCache.Lru(0) { AndroidEvent.estimatedSize(it) }
+        try {
+            val testEvent = calendar.findById(ContentUris.parseId(uri))
+            assertEquals("Cached event", testEvent.event!!.summary)
+            assertEquals("Cached event", testEvent.event!!.summary)
+
+            val metrics = calendar.eventCache.metrics
+            assertEquals(0L, metrics.hits)
+            assertEquals(2L, metrics.loads)
+            assertEquals(1L, metrics.reloads)
+        } finally {
+            calendar.eventCache = DataCache.Strong()
+        }
+    }
+
+    @Test
+    fun testLoadEvents() {
+        val recurring = Event().apply {
+            uid = "recurring@testLoadEvents"
+            summary = "Recurring event"
+            dtStart = DtStart("20200706T193000", tzVienna)
+            dtEnd = DtEnd("20200706T203000", tzVienna)
+            rRules += RRule("FREQ=DAILY;COUNT=10")
+            attendees += Attendee(URI("mailto:user@example.com"))
+            exceptions += Event().apply {
+                uid = "recurring@testLoadEvents"
+                recurrenceId = RecurrenceId("20200708T193000", tzVienna)
+                summary = "Exception"
+                dtStart = DtStart("20200708T203000", tzVienna)
+                dtEnd = DtEnd("20200708T213000", tzVienna)
+            }
+        }
+        TestEvent(calendar, recurring).add()
+        for (i in 1..3)
+            TestEvent(calendar, Event().apply {
+                uid = "single$i@testLoadEvents"
+                summary = "Single event $i"
+                dtStart = DtStart("20200706T193000", tzVienna)
+                dtEnd = DtEnd("20200706T203000", tzVienna)
+                alarms += VAlarm(Duration.ofMinutes(-i.toLong()))
+            }).add()
+
+        // load main events in pages of 2 events
+        val loaded = mutableListOf<Event>()
+        calendar.loadEvents("${Events.ORIGINAL_ID} IS NULL", null, pageSize = 2) { androidEvent ->
+            loaded += androidEvent.event!!
+        }
+
+        assertEquals(4, loaded.size)
+        val loadedRecurring = loaded.first { it.uid == "recurring@testLoadEvents" }
+        assertEquals(1, loadedRecurring.attendees.size)
+        assertEquals(1, loadedRecurring.exceptions.size)
+        assertEquals("Exception", loadedRecurring.exceptions.first().summary)
+        for (i in 1..3) {
+            val single = loaded.first { it.uid == "single$i@testLoadEvents" }
+            assertEquals("Single event $i", single.summary)
+            assertEquals(1, single.alarms.size)
+            assertEquals(0, single.exceptions.size)
+        }
+    }
+
+    @Test
+    fun testLoadEvents_PopulateExceptionsOverridden() {
+        // event class that hides some exceptions
+        class FilteringEvent(calendar: AndroidCalendar<AndroidEvent>, values: ContentValues): AndroidEvent(calendar, values) {
+            override fun populateExceptions(exceptions: List<AndroidEvent>) {
+                super.populateExceptions(exceptions.filter { it.event?.summary != "Hidden" })
+            }
+        }
+        val filteringCalendar = object: AndroidCalendar<FilteringEvent>(testAccount, provider, object: AndroidEventFactory<FilteringEvent> {
+            override fun fromProvider(calendar: AndroidCalendar<AndroidEvent>, values: ContentValues) = FilteringEvent(calendar, values)
+        }, calendar.id) {}
+
+        val recurring = Event().apply {
+            uid = "recurring@testLoadEvents_PopulateExceptionsOverridden"
+            dtStart = DtStart("20200706T193000", tzVienna)
+            dtEnd = DtEnd("20200706T203000", tzVienna)
+            rRules += RRule("FREQ=DAILY;COUNT=10")
+            for ((day, summary) in listOf(7 to "Visible", 8 to "Hidden"))
+                exceptions += Event().apply {
+                    uid = "recurring@testLoadEvents_PopulateExceptionsOverridden"
+                    recurrenceId = RecurrenceId("2020070${day}T193000", tzVienna)
+                    this.summary = summary
+                    dtStart = DtStart("2020070${day}T203000", tzVienna)
+                    dtEnd = DtEnd("2020070${day}T213000", tzVienna)
+                }
+        }
+        val id = ContentUris.parseId(TestEvent(calendar, recurring).add())
+
+        // bulk loading and loading a single event must produce the same exceptions
+        var bulkLoaded: Event? = null
+        filteringCalendar.loadEvents("${Events.ORIGINAL_ID} IS NULL", null) { androidEvent ->
+            if (androidEvent.id == id)
+                bulkLoaded = androidEvent.event
+        }
+        val singleLoaded = filteringCalendar.findById(id).event!!
+        assertEquals(listOf("Visible"), bulkLoaded!!.exceptions.map { it.summary })
+        assertEquals(listOf("Visible"), singleLoaded.exceptions.map { it.summary })
+    }
 
 
     @Test
@@ -2459,6 +2594,40 @@ class AndroidEventTest {
         }
     }
 
+    @Test
+    fun testUpdateEvent_UpdateStatusToNull_Prefetched() {
+        val event = Event()
+        event.uid = "sample1@testAddEvent"
+        event.summary = "Sample event with STATUS"
+        event.dtStart = DtStart("20150502T120000Z")
+        event.dtEnd = DtEnd("20150502T130000Z")
+        event.status = Status.VEVENT_CONFIRMED
+        val uri = TestEvent(calendar, event).add()
+
+        // event object that only knows the ID, so the status must be pre-fetched
+        val testEvent = TestEvent(calendar, ContentValues().apply {
+            put(Events._ID, ContentUris.parseId(uri))
+        })
+        calendar.prefetchStatus(listOf(testEvent))
+
+        val event2 = Event()
+        event2.uid = "sample1@testAddEvent"
+        event2.summary = "Sample event without STATUS"
+        event2.dtStart = DtStart("20150502T120000Z")
+        event2.dtEnd = DtEnd("20150502T130000Z")
+        val uri2 = testEvent.update(event2)
+
+        // event should have been deleted and inserted again
+        assertNotEquals(ContentUris.parseId(uri), ContentUris.parseId(uri2))
+
+        val updatedEvent = calendar.findById(ContentUris.parseId(uri2))
+        try {
+            assertNull(updatedEvent.event!!.status)
+        } finally {
+            updatedEvent.delete()
+        }
+    }
+
 
 
     @Test
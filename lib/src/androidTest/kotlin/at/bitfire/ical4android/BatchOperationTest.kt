@@ -9,6 +9,7 @@ package at.bitfire.ical4android
 import android.Manifest
 import android.accounts.Account
 import android.content.ContentProviderClient
+import android.content.ContentProviderResult
 import android.content.ContentUris
 import android.net.Uri
 import android.provider.CalendarContract
@@ -131,4 +132,65 @@ class BatchOperationTest {
 
         TestEvent(calendar, event).add()
     }
-}
\ No newline at end of file
+
+    @Test
+    fun testBuilder_BackReferenceInSplitTransaction() {
+        val builder = BatchOperation.CpoBuilder
+            .newInsert(CalendarContract.Reminders.CONTENT_URI)
+            .withValue(CalendarContract.Reminders.MINUTES, 10)
+            .withValueBackReference(CalendarContract.Reminders.EVENT_ID, 1)
+
+        // referenced operation is part of the (splitted) transaction: index is shifted
+        val inBatch = builder.build(1, null, false)
+        val inBatchValues = inBatch.resolveValueBackReferences(
+            arrayOf(ContentProviderResult(ContentUris.withAppendedId(CalendarContract.Events.CONTENT_URI, 42))), 1
+        )
+        assertEquals(42L, inBatchValues.getAsLong(CalendarContract.Reminders.EVENT_ID))
+
+        // referenced operation has already been run: result is used directly
+        val results = arrayOf<ContentProviderResult?>(null, ContentProviderResult(ContentUris.withAppendedId(CalendarContract.Events.CONTENT_URI, 43)))
+        val afterBatch = builder.build(2, results, false)
+        val afterBatchValues = afterBatch.resolveValueBackReferences(emptyArray(), 0)
+        assertEquals(43L, afterBatchValues.getAsLong(CalendarContract.Reminders.EVENT_ID))
+        assertEquals(10, afterBatchValues.getAsInteger(CalendarContract.Reminders.MINUTES))
+
+        // builder itself has not been modified
+        assertEquals(1, builder.valueBackrefs[CalendarContract.Reminders.EVENT_ID])
+    }
+
+    @Test
+    fun testCommitSameBuilderTwice() {
+        val builder = BatchOperation.CpoBuilder
+            .newUpdate(calendar.calendarSyncURI())
+            .withValue(CalendarContract.Calendars.CALENDAR_DISPLAY_NAME, "Updated")
+
+        val batch = BatchOperation(provider)
+        batch.enqueue(builder)
+        assertEquals(1, batch.commit())
+
+        batch.enqueue(builder)
+        assertEquals(1, batch.commit())
+    }
+
+    @Test
+    fun testListener() {
+        val metrics = BatchOperationMetrics()
+        BatchOperation.listener = metrics
+        try {
+            val batch = BatchOperation(provider)
+            batch.enqueue(BatchOperation.CpoBuilder
+                .newUpdate(calendar.calendarSyncURI())
+                .withValue(CalendarContract.Calendars.CALENDAR_DISPLAY_NAME, "Updated"))
+            assertEquals(1, batch.commit())
+        } finally {
+            BatchOperation.listener = null
+        }
+
+        assertEquals(1L, metrics.commits)
+        assertEquals(0L, metrics.failedCommits)
+        assertEquals(1L, metrics.rowsAffected)
+        assertEquals(1L, metrics.operationsPerCommit.count)
+        assertEquals(1L, metrics.chunkMillis.count)
+    }
+
+}
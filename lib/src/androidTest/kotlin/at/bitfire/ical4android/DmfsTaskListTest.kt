@@ -62,6 +62,117 @@ class DmfsTaskListTest(providerName: TaskProvider.ProviderName):
         }
     }
 
+    @Test
+    fun testLoadTasks() {
+        val taskList = createTaskList()
+        try {
+            val parent = Task().apply {
+                uid = "parent"
+                summary = "Parent task"
+                categories += "Category 1"
+                categories += "Category 2"
+            }
+            val parentId = ContentUris.parseId(TestTask(taskList, parent).add())
+            TestTask(taskList, Task().apply {
+                uid = "single"
+                summary = "Task without properties"
+            }).add()
+
+            // child with parent_id, but without relation (like created by aCalendar+)
+            taskList.provider.insert(taskList.tasksSyncUri(), ContentValues().apply {
+                put(Tasks.LIST_ID, taskList.id)
+                put(Tasks._UID, "child")
+                put(Tasks.TITLE, "Child task")
+                put(Tasks.PARENT_ID, parentId)
+            })
+
+            val tasks = mutableListOf<Task>()
+            taskList.loadTasks { tasks += it.task!! }
+
+            assertEquals(3, tasks.size)
+            assertEquals(listOf("Category 1", "Category 2"), tasks.first { it.uid == "parent" }.categories.sorted())
+            assertTrue(tasks.first { it.uid == "single" }.categories.isEmpty())
+            assertEquals("parent", tasks.first { it.uid == "child" }.relatedTo.single().value)
+        } finally {
+            taskList.delete()
+        }
+    }
+
+    @Test
+    fun testLoadTasks_ParentRelation_TinyLruCache() {
+        val taskList = createTaskList()
+        // budget is too small for one task, so every task is evicted as soon as it's cached
+        taskList.taskCache = DataCache.Lru(1) { DmfsTask.estimatedSize(it) }
+        try {
+            // child which is read before its parent (lower ID), without relation (like created by aCalendar+)
+            val childBeforeUri = taskList.provider.insert(taskList.tasksSyncUri(), ContentValues().apply {
+                put(Tasks.LIST_ID, taskList.id)
+                put(Tasks._UID, "child-before")
+                put(Tasks.TITLE, "Child task (before parent)")
+            })!!
+            val parentId = ContentUris.parseId(TestTask(taskList, Task().apply {
+                uid = "parent"
+                summary = "Parent task"
+            }).add())
+            taskList.provider.update(childBeforeUri, ContentValues().apply {
+                put(Tasks.PARENT_ID, parentId)
+            }, null, null)
+
+            // child which is read after its parent
+            val childAfterId = ContentUris.parseId(taskList.provider.insert(taskList.tasksSyncUri(), ContentValues().apply {
+                put(Tasks.LIST_ID, taskList.id)
+                put(Tasks._UID, "child-after")
+                put(Tasks.TITLE, "Child task (after parent)")
+                put(Tasks.PARENT_ID, parentId)
+            })!!)
+
+            val tasks = mutableListOf<Task>()
+            taskList.loadTasks { tasks += it.task!! }
+            assertEquals(3, tasks.size)
+            assertEquals("parent", tasks.first { it.uid == "child-before" }.relatedTo.single().value)
+            assertEquals("parent", tasks.first { it.uid == "child-after" }.relatedTo.single().value)
+
+            // reload by getter
+            val child = taskList.findById(childAfterId)!!
+            assertEquals("parent", child.task!!.relatedTo.single().value)
+            assertEquals("parent", child.task!!.relatedTo.single().value)
+            assertTrue(taskList.taskCache.metrics.evictions > 0)
+        } finally {
+            taskList.taskCache = DataCache.Strong()
+            taskList.delete()
+        }
+    }
+
+    @Test
+    fun testQueryChanges() {
+        val taskList = createTaskList()
+        try {
+            fun insert(uid: String, syncId: String?, dirty: Boolean, deleted: Boolean) =
+                ContentUris.parseId(taskList.provider.insert(taskList.tasksSyncUri(), ContentValues().apply {
+                    put(Tasks.LIST_ID, taskList.id)
+                    put(Tasks._UID, uid)
+                    put(Tasks._SYNC_ID, syncId)
+                    put(Tasks._DIRTY, if (dirty) 1 else 0)
+                    put(Tasks._DELETED, if (deleted) 1 else 0)
+                })!!)
+            insert("clean", "clean.ics", false, false)
+            val newId = insert("new", null, true, false)
+            val dirtyId = insert("dirty", "dirty.ics", true, false)
+            val deletedId = insert("deleted", "deleted.ics", false, true)
+
+            val changes = taskList.queryChanges(pageSize = 2).associateBy { it.id }
+            assertEquals(setOf(newId, dirtyId, deletedId), changes.keys)
+            assertEquals(LocalChange.Type.NEW, changes[newId]!!.type)
+            assertEquals(LocalChange.Type.DIRTY, changes[dirtyId]!!.type)
+            assertEquals(LocalChange.Type.DELETED, changes[deletedId]!!.type)
+
+            // full task is loaded on demand
+            assertEquals("dirty", changes[dirtyId]!!.resource!!.task!!.uid)
+        } finally {
+            taskList.delete()
+        }
+    }
+
     @Test
     fun testTouchRelations() {
         val taskList = createTaskList()
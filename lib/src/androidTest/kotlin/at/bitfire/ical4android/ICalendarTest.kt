@@ -11,11 +11,15 @@ import net.fortuna.ical4j.data.CalendarBuilder
 import net.fortuna.ical4j.model.Component
 import net.fortuna.ical4j.model.Date
 import net.fortuna.ical4j.model.DateTime
+import net.fortuna.ical4j.model.Parameter
 import net.fortuna.ical4j.model.Property
 import net.fortuna.ical4j.model.component.VAlarm
 import net.fortuna.ical4j.model.component.VTimeZone
 import net.fortuna.ical4j.model.parameter.Related
+import net.fortuna.ical4j.model.parameter.TzId
 import net.fortuna.ical4j.model.property.Color
+import net.fortuna.ical4j.model.property.DateListProperty
+import net.fortuna.ical4j.model.property.DateProperty
 import net.fortuna.ical4j.model.property.DtEnd
 import net.fortuna.ical4j.model.property.DtStart
 import net.fortuna.ical4j.model.property.Due
@@ -23,6 +27,7 @@ import net.fortuna.ical4j.util.TimeZones
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertNotNull
 import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
 import org.junit.Test
 import java.io.StringReader
 import java.time.Duration
@@ -73,6 +78,41 @@ class ICalendarTest {
 		assertEquals("#123456", calendar.getProperty<Property>(ICalendar.CALENDAR_COLOR).value)
 	}
 
+	@Test
+	fun testFromReader_sharedTimeZones() {
+		val calendar = ICalendar.fromReader(
+			StringReader(
+				"BEGIN:VCALENDAR\n" +
+						"PRODID:something\n" +
+						"VERSION:2.0\n" +
+						"BEGIN:VEVENT\n" +
+						"UID:event1@example.com\n" +
+						"DTSTART;TZID=Europe/Vienna:20250101T100000\n" +
+						"DTEND;TZID=Europe/Vienna:20250101T110000\n" +
+						"EXDATE;TZID=Europe/Vienna:20250108T100000\n" +
+						"END:VEVENT\n" +
+						"BEGIN:VEVENT\n" +
+						"UID:event2@example.com\n" +
+						"DTSTART;TZID=Europe/Vienna:20250102T100000\n" +
+						"END:VEVENT\n" +
+						"END:VCALENDAR"
+			)
+		)
+		val properties = calendar.components.flatMap { component ->
+			listOf(Property.DTSTART, Property.DTEND, Property.EXDATE).mapNotNull { component.getProperty<Property>(it) }
+		}
+		assertEquals(4, properties.size)
+		val tzId = properties.first().getParameter<TzId>(Parameter.TZID)
+		val timeZone = (properties.first() as DtStart).timeZone
+		for (property in properties) {
+			assertSame(tzId, property.getParameter<TzId>(Parameter.TZID))
+			when (property) {
+				is DateProperty -> assertSame(timeZone, property.timeZone)
+				is DateListProperty -> assertSame(timeZone, property.dates.timeZone)
+			}
+		}
+	}
+
 	@Test
 	fun testFromReader_invalidProperty() {
 		// The GEO property is invalid and should be ignored.
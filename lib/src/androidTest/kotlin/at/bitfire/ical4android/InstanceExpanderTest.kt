@@ -0,0 +1,152 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android
+
+import at.bitfire.ical4android.util.DateUtils
+import net.fortuna.ical4j.model.Date
+import net.fortuna.ical4j.model.DateList
+import net.fortuna.ical4j.model.DateTime
+import net.fortuna.ical4j.model.Recur
+import net.fortuna.ical4j.model.parameter.Value
+import net.fortuna.ical4j.model.property.DtEnd
+import net.fortuna.ical4j.model.property.DtStart
+import net.fortuna.ical4j.model.property.ExDate
+import net.fortuna.ical4j.model.property.RDate
+import net.fortuna.ical4j.model.property.RRule
+import net.fortuna.ical4j.model.property.RecurrenceId
+import net.fortuna.ical4j.model.property.Status
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.time.ZoneId
+import java.time.ZonedDateTime
+
+class InstanceExpanderTest {
+
+    private val tzVienna = DateUtils.ical4jTimeZone("Europe/Vienna")!!
+
+    private fun millis(iso: String) = ZonedDateTime.parse(iso).toInstant().toEpochMilli()
+
+    /** local time in Europe/Vienna (only for winter time) */
+    private fun vienna(local: String) = millis("$local+01:00[Europe/Vienna]")
+
+
+    @Test
+    fun testNonRecurring() {
+        val event = Event(
+            dtStart = DtStart("20250110T100000", tzVienna),
+            dtEnd = DtEnd("20250110T110000", tzVienna)
+        )
+        val expander = InstanceExpander(event)
+        val instances = expander.instances(vienna("2025-01-01T00:00"), vienna("2025-02-01T00:00")).toList()
+        assertEquals(1, instances.size)
+        assertEquals(vienna("2025-01-10T10:00"), instances[0].start)
+        assertEquals(vienna("2025-01-10T11:00"), instances[0].end)
+
+        assertTrue(expander.instances(vienna("2025-01-10T11:00"), vienna("2025-02-01T00:00")).none())
+    }
+
+    @Test
+    fun testDaily_LocalTimeAcrossDst() {
+        val event = Event(
+            dtStart = DtStart("20250328T090000", tzVienna),
+            dtEnd = DtEnd("20250328T100000", tzVienna)
+        )
+        event.rRules += RRule("FREQ=DAILY;COUNT=5")
+        val instances = InstanceExpander(event).instances(0, Long.MAX_VALUE / 2).toList()
+        val zone = ZoneId.of("Europe/Vienna")
+        assertEquals(
+            (28..31).map { ZonedDateTime.of(2025, 3, it, 9, 0, 0, 0, zone).toInstant().toEpochMilli() } +
+                ZonedDateTime.of(2025, 4, 1, 9, 0, 0, 0, zone).toInstant().toEpochMilli(),
+            instances.map { it.start }
+        )
+        for (instance in instances)
+            assertEquals(3600_000L, instance.end - instance.start)
+    }
+
+    @Test
+    fun testDailyForTenYears_SameAsIcal4j() {
+        val event = Event(dtStart = DtStart("20200101T080000", tzVienna))
+        event.rRules += RRule("FREQ=DAILY;COUNT=3650")
+        val expander = InstanceExpander(event)
+
+        val windowStart = vienna("2029-12-01T00:00")
+        val windowEnd = vienna("2029-12-08T00:00")
+        val expected = event.rRules.first.recur.getDates(
+            event.dtStart!!.date, DateTime(windowStart), DateTime(windowEnd), Value.DATE_TIME
+        ).map { it.time }.filter { it in windowStart until windowEnd }.sorted()
+
+        assertEquals(7, expected.size)
+        assertEquals(expected, expander.instances(windowStart, windowEnd).map { it.start }.toList())
+
+        // after COUNT
+        assertTrue(expander.instances(vienna("2030-01-01T00:00"), vienna("2031-01-01T00:00")).none())
+    }
+
+    @Test
+    fun testComplexRule_SameAsIcal4j() {
+        val event = Event(dtStart = DtStart("20250106T080000", tzVienna))
+        event.rRules += RRule(Recur("FREQ=WEEKLY;BYDAY=MO,WE;UNTIL=20250301T000000Z"))
+        val windowStart = vienna("2025-02-01T00:00")
+        val windowEnd = vienna("2025-03-15T00:00")
+        val expected = event.rRules.first.recur.getDates(
+            event.dtStart!!.date, DateTime(windowStart), DateTime(windowEnd), Value.DATE_TIME
+        ).map { it.time }.filter { it in windowStart until windowEnd }.sorted()
+        assertEquals(expected, InstanceExpander(event).instances(windowStart, windowEnd).map { it.start }.toList())
+    }
+
+    @Test
+    fun testRDateExDateAndExceptions() {
+        val event = Event(
+            uid = "test",
+            dtStart = DtStart("20250106T080000", tzVienna),
+            dtEnd = DtEnd("20250106T090000", tzVienna)
+        )
+        event.rRules += RRule("FREQ=WEEKLY;COUNT=4")
+        event.exDates += ExDate(DateList("20250113T080000", Value.DATE_TIME, tzVienna))
+        event.rDates += RDate(DateList("20250201", Value.DATE))         // DATE: time is taken from DTSTART
+
+        val moved = Event(
+            uid = "test",
+            recurrenceId = RecurrenceId("20250120T080000", tzVienna),
+            dtStart = DtStart("20250121T120000", tzVienna),
+            dtEnd = DtEnd("20250121T130000", tzVienna)
+        )
+        val cancelled = Event(
+            uid = "test",
+            recurrenceId = RecurrenceId("20250127T080000", tzVienna),
+            status = Status.VEVENT_CANCELLED
+        )
+        event.exceptions += moved
+        event.exceptions += cancelled
+
+        val instances = InstanceExpander(event).instances(vienna("2025-01-01T00:00"), vienna("2025-03-01T00:00")).toList()
+        assertEquals(
+            listOf(vienna("2025-01-06T08:00"), vienna("2025-01-21T12:00"), vienna("2025-02-01T08:00")),
+            instances.map { it.start }
+        )
+        assertSame(moved, instances[1].event)
+        assertEquals(vienna("2025-01-20T08:00"), instances[1].originalStart)
+    }
+
+    @Test
+    fun testAllDay() {
+        val event = Event(dtStart = DtStart(Date("20250101")))
+        event.rRules += RRule("FREQ=MONTHLY;INTERVAL=2;UNTIL=20250601")
+        val instances = InstanceExpander(event).instances(0, Long.MAX_VALUE / 2).toList()
+        assertEquals(
+            listOf("2025-01-01", "2025-03-01", "2025-05-01").map { millis("${it}T00:00Z") },
+            instances.map { it.start }
+        )
+        for (instance in instances) {
+            assertTrue(instance.allDay)
+            assertEquals(86400_000L, instance.end - instance.start)
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android
+
+import net.fortuna.ical4j.model.DateTime
+import net.fortuna.ical4j.model.property.DtEnd
+import net.fortuna.ical4j.model.property.DtStart
+import net.fortuna.ical4j.model.property.RRule
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.time.ZonedDateTime
+import kotlin.random.Random
+
+class InstanceIndexTest {
+
+    private fun millis(iso: String) = ZonedDateTime.parse(iso).toInstant().toEpochMilli()
+
+    private fun utcEvent(start: Long, end: Long) = Event(
+        dtStart = DtStart(DateTime(start).apply { isUtc = true }),
+        dtEnd = DtEnd(DateTime(end).apply { isUtc = true })
+    )
+
+    private val horizonStart = millis("2025-01-01T00:00Z")
+    private val horizonEnd = millis("2026-01-01T00:00Z")
+
+
+    @Test
+    fun testQuery_Overlap() {
+        val index = InstanceIndex.of(listOf(
+            utcEvent(millis("2025-03-01T10:00Z"), millis("2025-03-01T11:00Z")),
+            utcEvent(millis("2025-03-01T11:00Z"), millis("2025-03-01T11:00Z")),     // without duration
+            utcEvent(millis("2025-02-01T00:00Z"), millis("2025-04-01T00:00Z"))      // long event
+        ), horizonStart, horizonEnd)
+
+        assertEquals(listOf(2L, 0L), index.query(millis("2025-03-01T10:30Z"), millis("2025-03-01T11:00Z")).map { it.key })
+        assertEquals(listOf(2L, 1L), index.query(millis("2025-03-01T11:00Z"), millis("2025-03-01T12:00Z")).map { it.key })
+        assertTrue(index.query(millis("2025-04-01T00:00Z"), millis("2025-05-01T00:00Z")).isEmpty())
+    }
+
+    @Test
+    fun testQuery_OpenEnded() {
+        val event = utcEvent(millis("2025-06-02T08:00Z"), millis("2025-06-02T09:00Z"))
+        event.rRules += RRule("FREQ=WEEKLY")
+        val index = InstanceIndex.of(listOf(event), horizonStart, horizonEnd)
+        assertEquals(1, index.openEndedSize)
+
+        // beyond the horizon
+        val instances = index.query(millis("2030-01-01T00:00Z"), millis("2030-01-15T00:00Z"))
+        assertEquals(listOf(millis("2030-01-07T08:00Z"), millis("2030-01-14T08:00Z")), instances.map { it.instance.start })
+
+        // across the end of the horizon: no duplicates
+        val across = index.query(millis("2025-12-20T00:00Z"), millis("2026-01-10T00:00Z"))
+        assertEquals(
+            listOf("2025-12-22", "2025-12-29", "2026-01-05").map { millis("${it}T08:00Z") },
+            across.map { it.instance.start }
+        )
+    }
+
+    @Test
+    fun testPutAndRemove() {
+        val index = InstanceIndex(horizonStart, horizonEnd)
+        index.put(1, utcEvent(millis("2025-03-01T10:00Z"), millis("2025-03-01T11:00Z")))
+        assertEquals(1, index.query(horizonStart, horizonEnd).size)
+
+        // replace
+        index.put(1, utcEvent(millis("2025-04-01T10:00Z"), millis("2025-04-01T11:00Z")))
+        assertEquals(listOf(millis("2025-04-01T10:00Z")), index.query(horizonStart, horizonEnd).map { it.instance.start })
+
+        assertTrue(index.remove(1))
+        assertTrue(index.query(horizonStart, horizonEnd).isEmpty())
+        assertEquals(0, index.size)
+    }
+
+    @Test
+    fun test100kInstances_SameAsScan() {
+        // results only; timings are measured by benchmark.InstanceIndexBenchmark
+        val random = Random(0)
+        val events = (0 until 100_000).map {
+            val start = horizonStart + random.nextLong(horizonEnd - horizonStart - 86400_000L)
+            utcEvent(start, start + random.nextLong(86400_000L))
+        }
+        val index = InstanceIndex.of(events, horizonStart, horizonEnd)
+        assertEquals(100_000, index.size)
+
+        // incremental updates
+        for (key in 0L until 1000L)
+            if (key % 2 == 0L)
+                index.remove(key)
+            else
+                index.put(key, events[key.toInt() + 1000])
+
+        for (i in 0 until 20) {
+            val windowStart = horizonStart + random.nextLong(horizonEnd - horizonStart)
+            val windowEnd = windowStart + 7 * 86400_000L
+            val expected = events.withIndex().mapNotNull { (idx, event) ->
+                val key = idx.toLong()
+                val current = when {
+                    key < 1000 && key % 2 == 0L -> return@mapNotNull null
+                    key < 1000 -> events[idx + 1000]
+                    else -> event
+                }
+                val start = current.dtStart!!.date.time
+                val end = current.dtEnd!!.date.time
+                if (start < windowEnd && (end > windowStart || (end == start && start >= windowStart)))
+                    key to start
+                else
+                    null
+            }.sortedBy { it.first }
+            assertEquals(expected, index.query(windowStart, windowEnd).map { it.key to it.instance.start }.sortedBy { it.first })
+        }
+    }
+
+}
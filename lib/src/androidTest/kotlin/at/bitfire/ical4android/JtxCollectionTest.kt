@@ -13,6 +13,7 @@ import androidx.test.platform.app.InstrumentationRegistry
 import androidx.test.rule.GrantPermissionRule
 import at.bitfire.ical4android.impl.TestJtxCollection
 import at.bitfire.ical4android.util.MiscUtils.closeCompat
+import at.bitfire.ical4android.util.MiscUtils.toValues
 import at.techbee.jtx.JtxContract
 import at.techbee.jtx.JtxContract.asSyncAdapter
 import junit.framework.TestCase.assertEquals
@@ -115,6 +116,78 @@ class JtxCollectionTest {
         assertEquals(1, icalobjects.size)
     }
 
+    @Test
+    fun addAll_test() {
+        val collectionUri = JtxCollection.create(testAccount, client, cv)
+        assertNotNull(collectionUri)
+        val collection = JtxCollection.find(testAccount, client, context, TestJtxCollection.Factory, null, null)[0]
+
+        val iCalObjects = (0 until 10).map { i ->
+            JtxICalObject(collection).apply {
+                component = JtxContract.JtxICalObject.Component.VJOURNAL.name
+                summary = "entry$i"
+                categories += JtxICalObject.Category(text = "category$i")
+            }
+        }
+        // small batches so that the objects are committed in multiple chunks
+        val uris = collection.addAll(iCalObjects, maxOperationsPerBatch = 4)
+
+        assertEquals(10, uris.size)
+        iCalObjects.forEachIndexed { i, iCalObject ->
+            assertEquals(uris[i].lastPathSegment?.toLong(), iCalObject.id)
+            client.query(
+                JtxContract.JtxCategory.CONTENT_URI.asSyncAdapter(testAccount),
+                arrayOf(JtxContract.JtxCategory.TEXT),
+                "${JtxContract.JtxCategory.ICALOBJECT_ID} = ?", arrayOf(iCalObject.id.toString()),
+                null
+            ).use {
+                assertNotNull(it)
+                assertTrue(it!!.moveToFirst())
+                assertEquals("category$i", it.getString(0))
+            }
+        }
+    }
+
+    @Test
+    fun loadICalObjects_test() {
+        val collectionUri = JtxCollection.create(testAccount, client, cv)
+        assertNotNull(collectionUri)
+        val collection = JtxCollection.find(testAccount, client, context, TestJtxCollection.Factory, null, null)[0]
+
+        val iCalObjects = (0 until 5).map { i ->
+            JtxICalObject(collection).apply {
+                component = JtxContract.JtxICalObject.Component.VTODO.name
+                summary = "entry$i"
+                categories += JtxICalObject.Category(text = "category$i")
+                comments += JtxICalObject.Comment(text = "comment$i")
+                attendees += JtxICalObject.Attendee(caladdress = "mailto:attendee$i@example.com")
+                organizer = JtxICalObject.Organizer(caladdress = "mailto:organizer@example.com")
+            }
+        }
+        collection.addAll(iCalObjects)
+
+        // small pages so that the list properties are loaded in multiple chunks
+        val loaded = mutableListOf<JtxICalObject>()
+        collection.loadICalObjects(pageSize = 2) { loaded += it }
+
+        assertEquals(5, loaded.size)
+        loaded.forEachIndexed { i, iCalObject ->
+            // compare with an object that has been populated with one query per table
+            val single = JtxICalObject(collection)
+            client.query(collection.jtxSyncURI(), null, "${JtxContract.JtxICalObject.ID} = ?", arrayOf(iCalObject.id.toString()), null).use {
+                assertTrue(it!!.moveToFirst())
+                single.populateFromContentValues(it.toValues())
+            }
+
+            assertEquals("entry$i", iCalObject.summary)
+            assertEquals(single.categories, iCalObject.categories)
+            assertEquals(single.comments, iCalObject.comments)
+            assertEquals(single.attendees, iCalObject.attendees)
+            assertEquals(single.organizer, iCalObject.organizer)
+            assertEquals("category$i", iCalObject.categories.single().text)
+        }
+    }
+
     @Test
     fun queryRecur_test() {
         val collectionUri = JtxCollection.create(testAccount, client, cv)
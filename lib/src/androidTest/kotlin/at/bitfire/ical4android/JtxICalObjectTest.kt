@@ -9,6 +9,7 @@ package at.bitfire.ical4android
 import android.accounts.Account
 import android.content.ContentProviderClient
 import android.content.ContentResolver
+import android.content.ContentUris
 import android.content.ContentValues
 import android.content.Context
 import android.database.DatabaseUtils
@@ -807,6 +808,82 @@ class JtxICalObjectTest {
         }
     }
 
+    @Test
+    fun update_keepsUnchangedListProperties() {
+        val iCalObject = at.bitfire.ical4android.JtxICalObject(collection!!).apply {
+            component = Component.VJOURNAL.name
+            categories += at.bitfire.ical4android.JtxICalObject.Category(text = "unchanged")
+            categories += at.bitfire.ical4android.JtxICalObject.Category(text = "removed")
+        }
+        iCalObject.add()
+
+        fun queryCategories(): Map<String, Long> {
+            val result = mutableMapOf<String, Long>()
+            client.query(
+                JtxContract.JtxCategory.CONTENT_URI.asSyncAdapter(testAccount),
+                arrayOf(JtxContract.JtxCategory.ID, JtxContract.JtxCategory.TEXT),
+                "${JtxContract.JtxCategory.ICALOBJECT_ID} = ?", arrayOf(iCalObject.id.toString()),
+                null
+            )?.use { cursor ->
+                while (cursor.moveToNext())
+                    result[cursor.getString(1)] = cursor.getLong(0)
+            }
+            return result
+        }
+        val before = queryCategories()
+        assertEquals(setOf("unchanged", "removed"), before.keys)
+
+        val newData = at.bitfire.ical4android.JtxICalObject(collection!!).apply {
+            component = Component.VJOURNAL.name
+            uid = iCalObject.uid
+            categories += at.bitfire.ical4android.JtxICalObject.Category(text = "unchanged")
+            categories += at.bitfire.ical4android.JtxICalObject.Category(text = "added")
+        }
+        iCalObject.update(newData)
+
+        val after = queryCategories()
+        assertEquals(setOf("unchanged", "added"), after.keys)
+        assertEquals(before["unchanged"], after["unchanged"])      // unchanged row has not been re-inserted
+    }
+
+    @Test
+    fun update_replacesChangedAttachmentBinary() {
+        val iCalObject = at.bitfire.ical4android.JtxICalObject(collection!!).apply {
+            component = Component.VJOURNAL.name
+            attachments += at.bitfire.ical4android.JtxICalObject.Attachment(binary = "anR4IEJvYXJk", fmttype = "text/plain")
+        }
+        iCalObject.add()
+
+        fun readAttachment(): String {
+            val attachmentIds = mutableListOf<Long>()
+            client.query(
+                JtxContract.JtxAttachment.CONTENT_URI.asSyncAdapter(testAccount),
+                arrayOf(JtxContract.JtxAttachment.ID),
+                "${JtxContract.JtxAttachment.ICALOBJECT_ID} = ?", arrayOf(iCalObject.id.toString()),
+                null
+            )?.use { cursor ->
+                while (cursor.moveToNext())
+                    attachmentIds += cursor.getLong(0)
+            }
+            assertEquals(1, attachmentIds.size)
+
+            val attachmentUri = ContentUris.withAppendedId(JtxContract.JtxAttachment.CONTENT_URI.asSyncAdapter(testAccount), attachmentIds.first())
+            val pfd = client.openFile(attachmentUri, "r", null)
+            return String(ParcelFileDescriptor.AutoCloseInputStream(pfd).use { it.readBytes() })
+        }
+        assertEquals("jtx Board", readAttachment())
+
+        // only the binary content changes
+        val newData = at.bitfire.ical4android.JtxICalObject(collection!!).apply {
+            component = Component.VJOURNAL.name
+            uid = iCalObject.uid
+            attachments += at.bitfire.ical4android.JtxICalObject.Attachment(binary = "anR4IEJvYXJkIHJ1bHo=", fmttype = "text/plain")
+        }
+        iCalObject.update(newData)
+
+        assertEquals("jtx Board rulz", readAttachment())
+    }
+
 
 
 
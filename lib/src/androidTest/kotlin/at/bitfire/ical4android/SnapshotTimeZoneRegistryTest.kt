@@ -0,0 +1,53 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android
+
+import net.fortuna.ical4j.model.DefaultTimeZoneRegistryFactory
+import net.fortuna.ical4j.model.TimeZoneRegistry
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+
+class SnapshotTimeZoneRegistryTest {
+
+    lateinit var ical4jRegistry: TimeZoneRegistry
+    lateinit var registry: SnapshotTimeZoneRegistry
+
+    @Before
+    fun createRegistry() {
+        ical4jRegistry = DefaultTimeZoneRegistryFactory().createRegistry()
+        registry = SnapshotTimeZoneRegistry(DefaultTimeZoneRegistryFactory().createRegistry())
+    }
+
+
+    @Test
+    fun testSnapshotAvailable() {
+        val snapshot = TimeZoneSnapshot.default
+        assertNotNull(snapshot)
+        assertTrue(snapshot!!.ids.contains("Europe/Vienna"))
+    }
+
+    @Test
+    fun testGetTimeZone_SameAsIcal4j() {
+        for (id in TimeZoneSnapshot.default!!.ids)
+            assertEquals(id, ical4jRegistry.getTimeZone(id)?.vTimeZone, registry.getTimeZone(id)?.vTimeZone)
+    }
+
+    @Test
+    fun testGetTimeZone_Alias() {
+        assertEquals(ical4jRegistry.getTimeZone("US/Eastern")?.vTimeZone, registry.getTimeZone("US/Eastern")?.vTimeZone)
+    }
+
+    @Test
+    fun testGetTimeZone_NotExisting() {
+        assertNull(registry.getTimeZone("Invalid/Time_Zone"))
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+
+class TimeZoneSnapshotTest {
+
+    private val definition =
+        "BEGIN:VTIMEZONE\r\n" +
+        "TZID:Test/Zone\r\n" +
+        "BEGIN:STANDARD\r\n" +
+        "DTSTART:19700101T000000\r\n" +
+        "TZOFFSETFROM:+0100\r\n" +
+        "TZOFFSETTO:+0100\r\n" +
+        "END:STANDARD\r\n" +
+        "END:VTIMEZONE\r\n"
+
+    private fun snapshot(length: Int = definition.length): ByteArray {
+        val data = definition.toByteArray()
+        val index = ByteArrayOutputStream()
+        DataOutputStream(index).use { out ->
+            out.writeInt(1)
+            out.writeUTF("Test/Alias")
+            out.writeUTF("Test/Zone")
+            out.writeInt(2)
+            out.writeUTF("Test/Other")
+            out.writeInt(0)
+            out.writeInt(0)
+            out.writeUTF("Test/Zone")
+            out.writeInt(0)
+            out.writeInt(length)
+        }
+        val snapshot = ByteArrayOutputStream()
+        DataOutputStream(snapshot).use { out ->
+            out.writeInt(TimeZoneSnapshot.MAGIC)
+            out.writeInt(index.size())
+            index.writeTo(out)
+            out.write(data)
+        }
+        return snapshot.toByteArray()
+    }
+
+
+    @Test
+    fun testLoad() {
+        var opened = 0
+        val bytes = snapshot()
+        val snapshot = TimeZoneSnapshot.load {
+            opened++
+            ByteArrayInputStream(bytes)
+        }!!
+        assertEquals(1, opened)
+        assertEquals(setOf("Test/Other", "Test/Zone"), snapshot.ids)
+        assertEquals("Test/Zone", snapshot.resolveAlias("Test/Alias"))
+        assertEquals("Test/Zone", snapshot.resolveAlias("Test/Zone"))
+
+        val vTimeZone = snapshot.getVTimeZone("Test/Zone")
+        assertNotNull(vTimeZone)
+        assertEquals("Test/Zone", vTimeZone!!.timeZoneId.value)
+
+        // parsed definition is cached
+        assertSame(vTimeZone, snapshot.getVTimeZone("Test/Zone"))
+
+        // the snapshot is only read once
+        assertEquals(1, opened)
+
+        assertNull(snapshot.getVTimeZone("Test/Missing"))
+    }
+
+    @Test
+    fun testLoad_Invalid() {
+        assertNull(TimeZoneSnapshot.load { ByteArrayInputStream(byteArrayOf(1, 2, 3, 4, 5, 6, 7, 8)) })
+        assertNull(TimeZoneSnapshot.load { null })
+    }
+
+    @Test
+    fun testLoad_InvalidPosition() {
+        val bytes = snapshot(length = definition.length + 1)
+        assertNull(TimeZoneSnapshot.load { ByteArrayInputStream(bytes) })
+    }
+
+}
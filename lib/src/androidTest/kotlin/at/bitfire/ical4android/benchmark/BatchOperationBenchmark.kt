@@ -0,0 +1,120 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android.benchmark
+
+import android.Manifest
+import android.accounts.Account
+import android.content.ContentProviderClient
+import android.provider.CalendarContract
+import android.provider.CalendarContract.Events
+import android.provider.CalendarContract.Reminders
+import androidx.test.platform.app.InstrumentationRegistry
+import androidx.test.rule.GrantPermissionRule
+import at.bitfire.ical4android.BatchOperation
+import at.bitfire.ical4android.BatchOperation.CpoBuilder
+import at.bitfire.ical4android.impl.TestCalendar
+import at.bitfire.ical4android.util.MiscUtils.asSyncAdapter
+import at.bitfire.ical4android.util.MiscUtils.closeCompat
+import org.junit.AfterClass
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.BeforeClass
+import org.junit.ClassRule
+import org.junit.Test
+
+class BatchOperationBenchmark {
+
+    companion object {
+
+        @JvmField
+        @ClassRule
+        val permissionRule = GrantPermissionRule.grant(
+            Manifest.permission.READ_CALENDAR,
+            Manifest.permission.WRITE_CALENDAR
+        )
+
+        lateinit var provider: ContentProviderClient
+
+        @BeforeClass
+        @JvmStatic
+        fun connectProvider() {
+            provider = InstrumentationRegistry.getInstrumentation().targetContext.contentResolver.acquireContentProviderClient(CalendarContract.AUTHORITY)!!
+        }
+
+        @AfterClass
+        @JvmStatic
+        fun closeProvider() {
+            provider.closeCompat()
+        }
+
+        const val OPERATIONS = 10_000
+
+    }
+
+    private val testAccount = Account("ical4android.BatchOperationBenchmark", CalendarContract.ACCOUNT_TYPE_LOCAL)
+
+    @Before
+    fun prepare() {
+        Benchmark.assumeEnabled()
+    }
+
+
+    /**
+     * Creates [count] operations: inserts of events, each followed by an insert of a reminder
+     * with a back reference to the event.
+     */
+    private fun eventOperations(calendarId: Long, count: Int): List<CpoBuilder> {
+        val eventsUri = Events.CONTENT_URI.asSyncAdapter(testAccount)
+        val remindersUri = Reminders.CONTENT_URI.asSyncAdapter(testAccount)
+        val operations = ArrayList<CpoBuilder>(count)
+        for (i in 0 until count / 2) {
+            val idxEvent = operations.size
+            operations += CpoBuilder.newInsert(eventsUri)
+                .withValue(Events.CALENDAR_ID, calendarId)
+                .withValue(Events._SYNC_ID, "benchmark-$i")
+                .withValue(Events.TITLE, "Event $i")
+                .withValue(Events.DTSTART, 1_700_000_000_000L + i * 3600_000L)
+                .withValue(Events.DTEND, 1_700_000_000_000L + i * 3600_000L + 1800_000L)
+                .withValue(Events.EVENT_TIMEZONE, "Europe/Vienna")
+                .withValue(Events.ALL_DAY, 0)
+            operations += CpoBuilder.newInsert(remindersUri)
+                .withValueBackReference(Reminders.EVENT_ID, idxEvent)
+                .withValue(Reminders.METHOD, Reminders.METHOD_ALERT)
+                .withValue(Reminders.MINUTES, 15)
+        }
+        return operations
+    }
+
+    @Test
+    fun buildOperations() {
+        Benchmark.measure("BatchOperation: create and build $OPERATIONS operations", ops = OPERATIONS) {
+            for (operation in eventOperations(1, OPERATIONS))
+                operation.build()
+        }
+    }
+
+    @Test
+    fun commitOperations() {
+        var calendar: TestCalendar? = null
+        try {
+            Benchmark.measure("BatchOperation: commit $OPERATIONS operations", ops = OPERATIONS, warmUp = 1, repetitions = 3,
+                setUp = {
+                    calendar?.delete()
+                    calendar = TestCalendar.findOrCreate(testAccount, provider)
+                }
+            ) {
+                val batch = BatchOperation(provider)
+                for (operation in eventOperations(calendar!!.id, OPERATIONS))
+                    batch.enqueue(operation)
+                assertEquals(OPERATIONS, batch.commit())
+            }
+        } finally {
+            calendar?.delete()
+        }
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android.benchmark
+
+import android.os.Bundle
+import android.os.Debug
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.Assume.assumeTrue
+import java.util.Locale
+import java.util.logging.Logger
+
+/**
+ * Minimal timing/allocation harness for the instrumented benchmarks in this package.
+ *
+ * Benchmarks are skipped in normal test runs. To run them, pass the instrumentation argument
+ * `benchmark=true`, for instance:
+ *
+ * ```
+ * ./gradlew :lib:connectedDebugAndroidTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.benchmark=true \
+ *     -Pandroid.testInstrumentationRunnerArguments.package=at.bitfire.ical4android.benchmark
+ * ```
+ *
+ * Results are logged and reported as instrumentation status (`adb shell am instrument -r`). Allocations
+ * are counted with the ART allocation counters (like androidx.benchmark does), which count all
+ * threads of the process, so the numbers are only meaningful when nothing else runs in parallel.
+ * Timings of debuggable builds are not comparable to release builds; compare numbers of the same run
+ * (for instance with vs. without an optimization) instead of absolute values.
+ */
+object Benchmark {
+
+    private val logger
+        get() = Logger.getLogger(Benchmark::class.java.name)
+
+    /** instrumentation argument that enables benchmarks */
+    const val ARGUMENT = "benchmark"
+
+    /**
+     * Result of a measurement.
+     *
+     * @param name          name of the benchmark
+     * @param ops           number of operations per repetition
+     * @param nanosPerOp    median wall time per operation (ns)
+     * @param allocsPerOp   median number of allocations per operation
+     * @param bytesPerOp    median number of allocated bytes per operation
+     */
+    data class Result(
+        val name: String,
+        val ops: Int,
+        val nanosPerOp: Double,
+        val allocsPerOp: Double,
+        val bytesPerOp: Double
+    ) {
+        val opsPerSecond get() = if (nanosPerOp > 0) 1e9 / nanosPerOp else Double.POSITIVE_INFINITY
+
+        override fun toString() = String.format(Locale.ROOT,
+            "%s: %,.0f ns/op (%,.0f ops/s), %,.1f allocs/op, %,.0f bytes/op [%d ops]",
+            name, nanosPerOp, opsPerSecond, allocsPerOp, bytesPerOp, ops)
+    }
+
+
+    /**
+     * Skips the calling test unless benchmarks are enabled (see [ARGUMENT]).
+     */
+    fun assumeEnabled() {
+        assumeTrue("Benchmarks are disabled", InstrumentationRegistry.getArguments().getString(ARGUMENT).toBoolean())
+    }
+
+    /**
+     * Measures a block of code. The block is run [warmUp] times without measuring and then
+     * [repetitions] times; the median of the repetitions is reported.
+     *
+     * @param name          name of the benchmark
+     * @param ops           number of operations that [block] performs (results are per operation)
+     * @param warmUp        number of runs before measuring
+     * @param repetitions   number of measured runs
+     * @param setUp         called before every run (not measured)
+     * @param block         code to measure
+     *
+     * @return measurement result (also reported)
+     */
+    fun measure(name: String, ops: Int = 1, warmUp: Int = 2, repetitions: Int = 5, setUp: () -> Unit = {}, block: () -> Unit): Result {
+        repeat(warmUp) {
+            setUp()
+            block()
+        }
+
+        val nanos = LongArray(repetitions)
+        val allocs = LongArray(repetitions)
+        val bytes = LongArray(repetitions)
+        for (i in 0 until repetitions) {
+            setUp()
+            Runtime.getRuntime().gc()
+            val counter = AllocationCounter()
+            val start = System.nanoTime()
+            block()
+            nanos[i] = System.nanoTime() - start
+            counter.stop()
+            allocs[i] = counter.count
+            bytes[i] = counter.bytes
+        }
+
+        return Result(name, ops,
+            nanosPerOp = median(nanos) / ops,
+            allocsPerOp = median(allocs) / ops,
+            bytesPerOp = median(bytes) / ops
+        ).also { report(it) }
+    }
+
+    /**
+     * Measures a block of code exactly once, without warm-up (for cold-start measurements).
+     *
+     * @param name      name of the benchmark
+     * @param ops       number of operations that [block] performs
+     * @param block     code to measure
+     *
+     * @return measurement result (also reported)
+     */
+    fun measureOnce(name: String, ops: Int = 1, block: () -> Unit): Result =
+        measure(name, ops, warmUp = 0, repetitions = 1, block = block)
+
+    /**
+     * Measures how much heap is retained by the object returned by [create].
+     *
+     * @param name      name of the measurement
+     * @param create    creates the object to measure
+     *
+     * @return retained heap in bytes (approximately; also reported)
+     */
+    fun retainedBytes(name: String, create: () -> Any?): Long {
+        val before = usedHeap()
+        val obj = create()
+        val after = usedHeap()
+        val retained = after - before
+        logger.info(String.format(Locale.ROOT, "%s: %,d bytes retained (%s)", name, retained, obj?.javaClass?.simpleName))
+        report(name, "$retained bytes retained")
+        return retained
+    }
+
+
+    private fun usedHeap(): Long {
+        val runtime = Runtime.getRuntime()
+        repeat(3) {
+            runtime.gc()
+            System.runFinalization()
+        }
+        return runtime.totalMemory() - runtime.freeMemory()
+    }
+
+    private fun median(values: LongArray): Double {
+        val sorted = values.sorted()
+        val mid = sorted.size / 2
+        return if (sorted.size % 2 == 0)
+            (sorted[mid - 1] + sorted[mid]) / 2.0
+        else
+            sorted[mid].toDouble()
+    }
+
+    private fun report(result: Result) {
+        logger.info(result.toString())
+        report(result.name, result.toString())
+    }
+
+    private fun report(name: String, message: String) {
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, Bundle().apply {
+            putString("benchmark", name)
+            putString("stream", "$message\n")
+        })
+    }
+
+
+    @Suppress("DEPRECATION")
+    private class AllocationCounter {
+
+        var count = 0L
+            private set
+        var bytes = 0L
+            private set
+
+        init {
+            Debug.resetGlobalAllocCount()
+            Debug.resetGlobalAllocSize()
+            Debug.startAllocCounting()
+        }
+
+        fun stop() {
+            Debug.stopAllocCounting()
+            count = Debug.getGlobalAllocCount().toLong()
+            bytes = Debug.getGlobalAllocSize().toLong()
+        }
+
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android.benchmark
+
+import java.util.Locale
+
+/**
+ * Generates iCalendar feeds for benchmarks.
+ */
+object Feeds {
+
+    /** Windows time zone names like used by Outlook/Exchange */
+    val WINDOWS_TZIDS = listOf(
+        "W. Europe Standard Time",
+        "Central Europe Standard Time",
+        "Romance Standard Time",
+        "GMT Standard Time"
+    )
+
+    /**
+     * Generates a VCALENDAR with [events] VEVENTs. Every event has a DTSTART/DTEND with a TZID
+     * (taken from [tzIds] in turn) and every tenth event has a weekly RRULE with an EXDATE.
+     *
+     * @param events        number of events
+     * @param tzIds         TZIDs to use
+     * @param vTimeZones    whether VTIMEZONE definitions (with central European rules) shall be included
+     * for the TZIDs (like Outlook does for its Windows time zone names)
+     */
+    fun calendar(events: Int, tzIds: List<String> = listOf("Europe/Vienna"), vTimeZones: Boolean = false) = buildString {
+        append("BEGIN:VCALENDAR\r\nVERSION:2.0\r\nPRODID:-//ical4android//Benchmark//EN\r\n")
+        if (vTimeZones)
+            for (tzId in tzIds)
+                append(vTimeZone(tzId))
+
+        for (i in 0 until events) {
+            val tzId = tzIds[i % tzIds.size]
+            val day = 1 + i % 28
+            val month = 1 + (i / 28) % 12
+            val hour = 8 + i % 10
+            append("BEGIN:VEVENT\r\n")
+            append("UID:benchmark-$i@example.com\r\n")
+            append("DTSTAMP:20250101T000000Z\r\n")
+            append(String.format(Locale.ROOT, "DTSTART;TZID=%s:2025%02d%02dT%02d0000\r\n", tzId, month, day, hour))
+            append(String.format(Locale.ROOT, "DTEND;TZID=%s:2025%02d%02dT%02d3000\r\n", tzId, month, day, hour))
+            if (i % 10 == 0) {
+                append("RRULE:FREQ=WEEKLY;COUNT=10\r\n")
+                append(String.format(Locale.ROOT, "EXDATE;TZID=%s:2025%02d%02dT%02d0000\r\n", tzId, month, day, hour))
+            }
+            append("SUMMARY:Event $i\r\n")
+            append("END:VEVENT\r\n")
+        }
+        append("END:VCALENDAR\r\n")
+    }
+
+    private fun vTimeZone(tzId: String) =
+        "BEGIN:VTIMEZONE\r\n" +
+        "TZID:$tzId\r\n" +
+        "BEGIN:STANDARD\r\n" +
+        "DTSTART:16011028T030000\r\n" +
+        "RRULE:FREQ=YEARLY;BYDAY=-1SU;BYMONTH=10\r\n" +
+        "TZOFFSETFROM:+0200\r\n" +
+        "TZOFFSETTO:+0100\r\n" +
+        "END:STANDARD\r\n" +
+        "BEGIN:DAYLIGHT\r\n" +
+        "DTSTART:16010325T020000\r\n" +
+        "RRULE:FREQ=YEARLY;BYDAY=-1SU;BYMONTH=3\r\n" +
+        "TZOFFSETFROM:+0100\r\n" +
+        "TZOFFSETTO:+0200\r\n" +
+        "END:DAYLIGHT\r\n" +
+        "END:VTIMEZONE\r\n"
+
+}
@@ -0,0 +1,97 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android.benchmark
+
+import at.bitfire.ical4android.Event
+import at.bitfire.ical4android.InstanceExpander
+import at.bitfire.ical4android.util.DateUtils
+import net.fortuna.ical4j.model.DateTime
+import net.fortuna.ical4j.model.parameter.Value
+import net.fortuna.ical4j.model.property.DtEnd
+import net.fortuna.ical4j.model.property.DtStart
+import net.fortuna.ical4j.model.property.RRule
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.time.ZonedDateTime
+
+/**
+ * Expansion of a daily event over ten years with [InstanceExpander] compared to ical4j
+ * (`Recur.getDates`): a window at the end of the recurrence and the whole recurrence.
+ */
+class InstanceExpanderBenchmark {
+
+    companion object {
+        const val INSTANCES = 3650
+        const val WINDOW_DAYS = 30
+    }
+
+    private val tzVienna = DateUtils.ical4jTimeZone("Europe/Vienna")!!
+
+    private val event = Event(
+        dtStart = DtStart("20200101T080000", tzVienna),
+        dtEnd = DtEnd("20200101T090000", tzVienna)
+    ).apply {
+        rRules += RRule("FREQ=DAILY;COUNT=$INSTANCES")
+    }
+
+    private val recurrenceStart = ZonedDateTime.parse("2020-01-01T00:00+01:00[Europe/Vienna]").toInstant().toEpochMilli()
+    private val recurrenceEnd = ZonedDateTime.parse("2030-01-01T00:00+01:00[Europe/Vienna]").toInstant().toEpochMilli()
+
+    /** last month of the recurrence */
+    private val windowStart = ZonedDateTime.parse("2029-11-29T00:00+01:00[Europe/Vienna]").toInstant().toEpochMilli()
+    private val windowEnd = ZonedDateTime.parse("2029-12-29T00:00+01:00[Europe/Vienna]").toInstant().toEpochMilli()
+
+    @Before
+    fun prepare() {
+        Benchmark.assumeEnabled()
+    }
+
+
+    private fun ical4jDates(from: Long, to: Long) =
+        event.rRules.first.recur.getDates(
+            event.dtStart!!.date,
+            DateTime(from).apply { isUtc = true },
+            DateTime(to).apply { isUtc = true },
+            Value.DATE_TIME
+        )
+
+    @Test
+    fun window_Ical4j() {
+        Benchmark.measure("Daily for 10 years, last month: Recur.getDates") {
+            assertEquals(WINDOW_DAYS, ical4jDates(windowStart, windowEnd).size)
+        }
+    }
+
+    @Test
+    fun window_InstanceExpander() {
+        Benchmark.measure("Daily for 10 years, last month: InstanceExpander (new)") {
+            assertEquals(WINDOW_DAYS, InstanceExpander(event).instances(windowStart, windowEnd).count())
+        }
+
+        val expander = InstanceExpander(event)
+        Benchmark.measure("Daily for 10 years, last month: InstanceExpander (compiled)") {
+            assertEquals(WINDOW_DAYS, expander.instances(windowStart, windowEnd).count())
+        }
+    }
+
+    @Test
+    fun all_Ical4j() {
+        Benchmark.measure("Daily for 10 years, all instances: Recur.getDates", ops = INSTANCES) {
+            assertEquals(INSTANCES, ical4jDates(recurrenceStart, recurrenceEnd).size)
+        }
+    }
+
+    @Test
+    fun all_InstanceExpander() {
+        val expander = InstanceExpander(event)
+        Benchmark.measure("Daily for 10 years, all instances: InstanceExpander", ops = INSTANCES) {
+            assertEquals(INSTANCES, expander.instances(recurrenceStart, recurrenceEnd).count())
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android.benchmark
+
+import at.bitfire.ical4android.Event
+import at.bitfire.ical4android.InstanceIndex
+import net.fortuna.ical4j.model.DateTime
+import net.fortuna.ical4j.model.property.DtEnd
+import net.fortuna.ical4j.model.property.DtStart
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.time.ZonedDateTime
+import kotlin.random.Random
+
+/**
+ * [InstanceIndex] with 100k instances: building, week queries compared to a linear scan over
+ * the instances, and incremental updates.
+ */
+class InstanceIndexBenchmark {
+
+    companion object {
+        const val INSTANCES = 100_000
+        const val QUERIES = 100
+        const val UPDATES = 1000
+
+        const val DAY = 86400_000L
+    }
+
+    private val horizonStart = ZonedDateTime.parse("2025-01-01T00:00Z").toInstant().toEpochMilli()
+    private val horizonEnd = ZonedDateTime.parse("2026-01-01T00:00Z").toInstant().toEpochMilli()
+
+    // created lazily so that they're not created when benchmarks are disabled
+    private val events by lazy {
+        val random = Random(0)
+        List(INSTANCES) {
+            val start = horizonStart + random.nextLong(horizonEnd - horizonStart - DAY)
+            utcEvent(start, start + random.nextLong(DAY))
+        }
+    }
+    private val starts by lazy { LongArray(INSTANCES) { events[it].dtStart!!.date.time } }
+    private val ends by lazy { LongArray(INSTANCES) { events[it].dtEnd!!.date.time } }
+
+    /** week windows within the horizon */
+    private val windows by lazy {
+        val random = Random(1)
+        List(QUERIES) {
+            val start = horizonStart + random.nextLong(horizonEnd - horizonStart - 7 * DAY)
+            start to start + 7 * DAY
+        }
+    }
+
+    @Before
+    fun prepare() {
+        Benchmark.assumeEnabled()
+    }
+
+
+    private fun utcEvent(start: Long, end: Long) = Event(
+        dtStart = DtStart(DateTime(start).apply { isUtc = true }),
+        dtEnd = DtEnd(DateTime(end).apply { isUtc = true })
+    )
+
+    @Test
+    fun build() {
+        Benchmark.measure("InstanceIndex: build with $INSTANCES instances", ops = INSTANCES, warmUp = 1, repetitions = 3) {
+            assertEquals(INSTANCES, InstanceIndex.of(events, horizonStart, horizonEnd).size)
+        }
+    }
+
+    /** total number of instances in [windows] */
+    private val expectedMatches by lazy { windows.sumOf { (windowStart, windowEnd) -> scan(windowStart, windowEnd).size } }
+
+    private fun scan(windowStart: Long, windowEnd: Long): List<Int> {
+        val result = ArrayList<Int>()
+        for (i in 0 until INSTANCES)
+            if (starts[i] < windowEnd && (ends[i] > windowStart || (ends[i] == starts[i] && starts[i] >= windowStart)))
+                result += i
+        return result
+    }
+
+    @Test
+    fun query_Index() {
+        val index = InstanceIndex.of(events, horizonStart, horizonEnd)
+        Benchmark.measure("InstanceIndex: query week of $INSTANCES instances", ops = QUERIES) {
+            assertEquals(expectedMatches, windows.sumOf { (windowStart, windowEnd) -> index.query(windowStart, windowEnd).size })
+        }
+    }
+
+    @Test
+    fun query_Scan() {
+        // lower bound for scanning: only compares the (already expanded) start and end times
+        Benchmark.measure("Linear scan: query week of $INSTANCES instances", ops = QUERIES) {
+            assertEquals(expectedMatches, windows.sumOf { (windowStart, windowEnd) -> scan(windowStart, windowEnd).size })
+        }
+    }
+
+    @Test
+    fun update() {
+        val replacements = List(UPDATES) { utcEvent(starts[it] + DAY, ends[it] + DAY) }
+        var index = InstanceIndex.of(events, horizonStart, horizonEnd)
+        Benchmark.measure("InstanceIndex: put/remove in $INSTANCES instances, then query", ops = UPDATES, warmUp = 1, repetitions = 3,
+            setUp = { index = InstanceIndex.of(events, horizonStart, horizonEnd) }
+        ) {
+            for (key in 0 until UPDATES)
+                if (key % 2 == 0)
+                    index.remove(key.toLong())
+                else
+                    index.put(key.toLong(), replacements[key])
+            // pending updates are merged when needed
+            index.query(windows[0].first, windows[0].second)
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android.benchmark
+
+import android.provider.CalendarContract.Events
+import at.bitfire.ical4android.BatchOperation.CpoBuilder
+import at.bitfire.ical4android.util.LogUtils.logLazy
+import at.bitfire.ical4android.validation.ICalPreprocessor
+import net.fortuna.ical4j.data.CalendarBuilder
+import org.junit.After
+import org.junit.Assert.assertFalse
+import org.junit.Before
+import org.junit.Test
+import java.io.StringReader
+import java.util.logging.Level
+import java.util.logging.Logger
+
+/**
+ * Allocations of log statements in hot paths with logging off (level INFO).
+ */
+class LoggingBenchmark {
+
+    companion object {
+        const val OPERATIONS = 10_000
+    }
+
+    /** parent logger of all library (and benchmark) loggers */
+    private val libraryLogger = Logger.getLogger("at.bitfire.ical4android")
+    private var previousLevel: Level? = null
+
+    private val logger = Logger.getLogger(javaClass.name)
+
+    @Before
+    fun prepare() {
+        Benchmark.assumeEnabled()
+        previousLevel = libraryLogger.level
+        libraryLogger.level = Level.INFO
+        assertFalse(logger.isLoggable(Level.FINE))
+    }
+
+    @After
+    fun restore() {
+        libraryLogger.level = previousLevel
+    }
+
+
+    private fun operations() = List(OPERATIONS) { i ->
+        CpoBuilder.newInsert(Events.CONTENT_URI)
+            .withValue(Events.TITLE, "Event $i")
+            .withValue(Events.DTSTART, 1_700_000_000_000L + i)
+    }
+
+    @Test
+    fun operationLog_Eager() {
+        // the pattern that was used before: the operation is built even though the record is discarded
+        val operations = operations()
+        Benchmark.measure("Logging off: log(FINE, …, builder.build())", ops = OPERATIONS) {
+            for (operation in operations)
+                logger.log(Level.FINE, "Inserting operation", operation.build())
+        }
+    }
+
+    @Test
+    fun operationLog_Lazy() {
+        val operations = operations()
+        Benchmark.measure("Logging off: logLazy(FINE, …) { builder.build() }", ops = OPERATIONS) {
+            for (operation in operations)
+                logger.logLazy(Level.FINE, "Inserting operation") { operation.build() }
+        }
+    }
+
+    @Test
+    fun preprocessCalendar() {
+        val ical = Feeds.calendar(1000)
+        val builder = CalendarBuilder()
+        var calendar = builder.build(StringReader(ical))
+        Benchmark.measure("Logging off: ICalPreprocessor.preprocessCalendar (1000 events)", ops = 1000,
+            setUp = { calendar = builder.build(StringReader(ical)) }
+        ) {
+            ICalPreprocessor.preprocessCalendar(calendar)
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android.benchmark
+
+import at.bitfire.ical4android.Event
+import at.bitfire.ical4android.util.AndroidTimeUtils
+import at.bitfire.ical4android.util.DateUtils
+import net.fortuna.ical4j.model.property.DateProperty
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.io.StringReader
+
+/**
+ * Bulk import of an Outlook-like feed: events with Windows time zone names and VTIMEZONE
+ * definitions, so that all events of a time zone share the same (non-Android) time zone instance.
+ */
+class OutlookImportBenchmark {
+
+    companion object {
+        const val EVENTS = 1000
+    }
+
+    private val ical by lazy { Feeds.calendar(EVENTS, Feeds.WINDOWS_TZIDS, vTimeZones = true) }
+
+    @Before
+    fun prepare() {
+        Benchmark.assumeEnabled()
+    }
+
+
+    private fun parse() = Event.eventsFromReader(StringReader(ical))
+
+    private fun androidify(events: List<Event>, androidify: (DateProperty?) -> Unit) {
+        for (event in events) {
+            androidify(event.dtStart)
+            androidify(event.dtEnd)
+            for (exDate in event.exDates)
+                AndroidTimeUtils.androidifyTimeZone(exDate)
+        }
+    }
+
+    @Test
+    fun parse_Outlook() {
+        Benchmark.measure("Outlook import: parse $EVENTS events", ops = EVENTS) {
+            assertEquals(EVENTS, parse().size)
+        }
+    }
+
+    @Test
+    fun androidify_Uncached() {
+        var events = parse()
+        Benchmark.measure("Outlook import: androidify $EVENTS events (resolved per property)", ops = EVENTS,
+            setUp = { events = parse() }
+        ) {
+            // what androidifyTimeZone did before time zones were cached
+            androidify(events) { date ->
+                if (DateUtils.isDateTime(date) && date?.isUtc == false)
+                    date.timeZone = DateUtils.ical4jTimeZone(DateUtils.findAndroidTimezoneID(date.timeZone?.id))
+            }
+        }
+    }
+
+    @Test
+    fun androidify_Cached() {
+        var events = parse()
+        Benchmark.measure("Outlook import: androidify $EVENTS events (AndroidTimeUtils)", ops = EVENTS,
+            setUp = { events = parse() }
+        ) {
+            androidify(events, AndroidTimeUtils::androidifyTimeZone)
+        }
+    }
+
+    @Test
+    fun import_Outlook() {
+        Benchmark.measure("Outlook import: parse and androidify $EVENTS events", ops = EVENTS) {
+            androidify(parse(), AndroidTimeUtils::androidifyTimeZone)
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android.benchmark
+
+import at.bitfire.ical4android.util.TimeZoneInternTable
+import at.bitfire.ical4android.validation.ICalPreprocessor
+import net.fortuna.ical4j.data.CalendarBuilder
+import net.fortuna.ical4j.model.Calendar
+import org.junit.Before
+import org.junit.Test
+import java.io.StringReader
+
+/**
+ * Retained heap of a large parsed calendar with and without [TimeZoneInternTable].
+ */
+class TimeZoneInternTableBenchmark {
+
+    companion object {
+        const val EVENTS = 20_000
+    }
+
+    private val ical by lazy { Feeds.calendar(EVENTS, listOf("Europe/Vienna", "America/New_York", "Asia/Tokyo")) }
+
+    @Before
+    fun prepare() {
+        Benchmark.assumeEnabled()
+    }
+
+
+    /** parses and preprocesses the calendar like [at.bitfire.ical4android.ICalendar.fromReader] */
+    private fun parse(): Calendar {
+        val calendar = CalendarBuilder().build(StringReader(ical))
+        ICalPreprocessor.preprocessCalendar(calendar)
+        return calendar
+    }
+
+    @Test
+    fun retainedHeap_WithoutInterning() {
+        Benchmark.retainedBytes("Calendar with $EVENTS events: retained heap without interning") {
+            parse()
+        }
+    }
+
+    @Test
+    fun retainedHeap_WithInterning() {
+        Benchmark.retainedBytes("Calendar with $EVENTS events: retained heap with TimeZoneInternTable") {
+            parse().also { TimeZoneInternTable().intern(it) }
+        }
+    }
+
+    @Test
+    fun intern() {
+        var calendar = parse()
+        Benchmark.measure("TimeZoneInternTable: intern $EVENTS events", ops = EVENTS, warmUp = 1, repetitions = 3,
+            setUp = { calendar = parse() }
+        ) {
+            TimeZoneInternTable().intern(calendar)
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android.benchmark
+
+import at.bitfire.ical4android.TimeZoneSnapshot
+import net.fortuna.ical4j.model.DefaultTimeZoneRegistryFactory
+import org.junit.Assert.assertNotNull
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Loading of time zones from the bundled [TimeZoneSnapshot] compared to the ical4j resources.
+ *
+ * ical4j caches loaded time zones for the whole process, so every time zone can only be loaded
+ * once from the ical4j resources. For a fair comparison, both variants load different (but similar)
+ * time zones: every other zone of the snapshot, [ZONES] of each.
+ */
+class TimeZoneSnapshotBenchmark {
+
+    companion object {
+        const val ZONES = 50
+    }
+
+    private val ids by lazy { TimeZoneSnapshot.default!!.ids.sorted() }
+
+    @Before
+    fun prepare() {
+        Benchmark.assumeEnabled()
+    }
+
+
+    @Test
+    fun loadSnapshot() {
+        Benchmark.measure("TimeZoneSnapshot: read resource") {
+            assertNotNull(TimeZoneSnapshot.load { TimeZoneSnapshot::class.java.getResourceAsStream(TimeZoneSnapshot.RESOURCE) })
+        }
+    }
+
+    @Test
+    fun loadTimeZones() {
+        val ical4jIds = ids.filterIndexed { idx, _ -> idx % 2 == 0 }.take(ZONES)
+        val snapshotIds = ids.filterIndexed { idx, _ -> idx % 2 == 1 }.take(ZONES)
+
+        val ical4jRegistry = DefaultTimeZoneRegistryFactory().createRegistry()
+        Benchmark.measureOnce("ical4j resources: load $ZONES time zones (cold)", ops = ZONES) {
+            for (id in ical4jIds)
+                assertNotNull(ical4jRegistry.getTimeZone(id))
+        }
+
+        Benchmark.measureOnce("TimeZoneSnapshot: read resource and load $ZONES time zones (cold)", ops = ZONES) {
+            val snapshot = TimeZoneSnapshot.load { TimeZoneSnapshot::class.java.getResourceAsStream(TimeZoneSnapshot.RESOURCE) }!!
+            for (id in snapshotIds)
+                assertNotNull(snapshot.getVTimeZone(id))
+        }
+
+        // without ical4j's cache, the snapshot can be measured repeatedly
+        Benchmark.measure("TimeZoneSnapshot: read resource and load $ZONES time zones", ops = ZONES) {
+            val snapshot = TimeZoneSnapshot.load { TimeZoneSnapshot::class.java.getResourceAsStream(TimeZoneSnapshot.RESOURCE) }!!
+            for (id in snapshotIds)
+                snapshot.getVTimeZone(id)
+        }
+    }
+
+    @Test
+    fun retainedSnapshot() {
+        Benchmark.retainedBytes("TimeZoneSnapshot: retained heap") {
+            TimeZoneSnapshot.load { TimeZoneSnapshot::class.java.getResourceAsStream(TimeZoneSnapshot.RESOURCE) }
+        }
+    }
+
+}
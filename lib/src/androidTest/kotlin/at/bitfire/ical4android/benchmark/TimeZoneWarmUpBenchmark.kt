@@ -0,0 +1,61 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android.benchmark
+
+import at.bitfire.ical4android.Event
+import at.bitfire.ical4android.util.TimeZoneWarmUp
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.io.StringReader
+
+/**
+ * Cold start: latency of the first parse of a feed that uses time zones which haven't been loaded
+ * in the process yet, with and without [TimeZoneWarmUp].
+ *
+ * Every test uses its own zones because the caches live as long as the process. Other tests
+ * may have loaded ical4j and the zones already, so run this class alone for meaningful numbers:
+ * `-Pandroid.testInstrumentationRunnerArguments.class=at.bitfire.ical4android.benchmark.TimeZoneWarmUpBenchmark`
+ */
+class TimeZoneWarmUpBenchmark {
+
+    companion object {
+        const val EVENTS = 50
+    }
+
+    @Before
+    fun prepare() {
+        Benchmark.assumeEnabled()
+    }
+
+
+    private fun parse(tzIds: List<String>) {
+        val ical = Feeds.calendar(EVENTS, tzIds)
+        Benchmark.measureOnce("First parse of $EVENTS events in ${tzIds.joinToString()}", ops = EVENTS) {
+            assertEquals(EVENTS, Event.eventsFromReader(StringReader(ical)).size)
+        }
+        Benchmark.measure("Parse of $EVENTS events in ${tzIds.joinToString()} (warm)", ops = EVENTS) {
+            Event.eventsFromReader(StringReader(ical))
+        }
+    }
+
+    @Test
+    fun firstParse_WithoutWarmUp() {
+        parse(listOf("America/Chicago", "Asia/Kolkata", "Europe/Lisbon"))
+    }
+
+    @Test
+    fun firstParse_WithWarmUp() {
+        val tzIds = listOf("America/Denver", "Asia/Shanghai", "Europe/Madrid")
+        // usually done in the background at app start, so it doesn't add to the first parse
+        Benchmark.measureOnce("TimeZoneWarmUp.warmUp(${tzIds.joinToString()})") {
+            TimeZoneWarmUp.warmUp(tzIds)
+        }
+        parse(tzIds)
+    }
+
+}
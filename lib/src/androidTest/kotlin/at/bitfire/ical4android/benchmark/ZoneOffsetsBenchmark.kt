@@ -0,0 +1,91 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android.benchmark
+
+import at.bitfire.ical4android.util.ZoneOffsets
+import org.junit.Before
+import org.junit.Test
+import java.time.Instant
+import java.time.LocalDate
+import java.time.ZoneId
+import java.time.ZoneOffset
+import java.time.ZonedDateTime
+
+/**
+ * UTC ↔ local conversions with [ZoneOffsets] compared to java.time, and the cold-start cost of a transition table.
+ */
+class ZoneOffsetsBenchmark {
+
+    companion object {
+        const val CONVERSIONS = 100_000
+    }
+
+    private val zone = ZoneId.of("Europe/Vienna")
+
+    /** times between 2000 and 2030 */
+    private val millis = run {
+        val from = ZonedDateTime.parse("2000-01-01T00:00Z").toInstant().toEpochMilli()
+        val to = ZonedDateTime.parse("2030-01-01T00:00Z").toInstant().toEpochMilli()
+        LongArray(CONVERSIONS) { from + (to - from) / CONVERSIONS * it }
+    }
+
+    @Before
+    fun prepare() {
+        Benchmark.assumeEnabled()
+    }
+
+
+    @Test
+    fun toLocalDate_JavaTime() {
+        Benchmark.measure("UTC → local date: ZonedDateTime.ofInstant", ops = CONVERSIONS) {
+            for (utc in millis)
+                ZonedDateTime.ofInstant(Instant.ofEpochMilli(utc), zone).toLocalDate()
+        }
+    }
+
+    @Test
+    fun toLocalDate_ZoneOffsets() {
+        Benchmark.measure("UTC → local date: ZoneOffsets", ops = CONVERSIONS) {
+            for (utc in millis)
+                ZoneOffsets.toLocalDate(ZoneOffsets.toLocalMillis(zone, utc))
+        }
+    }
+
+    @Test
+    fun toUtc_JavaTime() {
+        Benchmark.measure("local → UTC: ZonedDateTime.of", ops = CONVERSIONS) {
+            for (local in millis)
+                ZonedDateTime.of(LocalDate.ofEpochDay(ZoneOffsets.epochDay(local)).atStartOfDay(), zone).toInstant().toEpochMilli()
+        }
+    }
+
+    @Test
+    fun toUtc_ZoneOffsets() {
+        Benchmark.measure("local → UTC: ZoneOffsets", ops = CONVERSIONS) {
+            for (local in millis)
+                ZoneOffsets.toUtcMillis(zone, ZoneOffsets.epochDay(local) * ZoneOffsets.MILLIS_PER_DAY)
+        }
+    }
+
+    @Test
+    fun table_ColdStart() {
+        // first conversion in a zone builds its table (150 years of transitions)
+        val rules = ZoneId.of("America/New_York").rules
+        val year = LocalDate.now(ZoneOffset.UTC).year
+        Benchmark.measureOnce("ZoneOffsets: build table (America/New_York, cold)") {
+            ZoneOffsets.Table(rules,
+                LocalDate.of(year - ZoneOffsets.TABLE_YEARS_BEFORE, 1, 1).toEpochDay() * ZoneOffsets.MILLIS_PER_DAY,
+                LocalDate.of(year + ZoneOffsets.TABLE_YEARS_AFTER + 1, 1, 1).toEpochDay() * ZoneOffsets.MILLIS_PER_DAY)
+        }
+        Benchmark.measure("ZoneOffsets: build table (America/New_York, warm)") {
+            ZoneOffsets.Table(rules,
+                LocalDate.of(year - ZoneOffsets.TABLE_YEARS_BEFORE, 1, 1).toEpochDay() * ZoneOffsets.MILLIS_PER_DAY,
+                LocalDate.of(year + ZoneOffsets.TABLE_YEARS_AFTER + 1, 1, 1).toEpochDay() * ZoneOffsets.MILLIS_PER_DAY)
+        }
+    }
+
+}
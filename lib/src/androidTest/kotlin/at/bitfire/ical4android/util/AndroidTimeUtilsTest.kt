@@ -19,6 +19,7 @@ import net.fortuna.ical4j.util.TimeZones
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertFalse
 import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
 import org.junit.Assert.assertTrue
 import org.junit.Test
 import java.io.StringReader
@@ -89,6 +90,21 @@ class AndroidTimeUtilsTest {
         assertFalse(dtStart.isUtc)
     }
 
+    @Test
+    fun testAndroidifyTimeZone_DateProperty_SameInstanceForSameTimeZone() {
+        // time zone instances are androidified only once and then reused
+        val dtStart1 = DtStart("20150101T031000", tzCustom)
+        val dtStart2 = DtStart("20150102T031000", tzCustom)
+        AndroidTimeUtils.androidifyTimeZone(dtStart1)
+        AndroidTimeUtils.androidifyTimeZone(dtStart2)
+        assertSame(dtStart1.timeZone, dtStart2.timeZone)
+
+        // already androidified time zone is kept
+        val tz = dtStart1.timeZone
+        AndroidTimeUtils.androidifyTimeZone(dtStart1)
+        assertSame(tz, dtStart1.timeZone)
+    }
+
     @Test
     fun testAndroidifyTimeZone_DateProperty_FloatingTime() {
         // times with floating time should be treated as system default time zone
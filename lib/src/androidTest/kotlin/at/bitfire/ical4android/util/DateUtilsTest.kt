@@ -43,6 +43,41 @@ class DateUtilsTest {
     }
 
 
+    @Test
+    fun testFindAndroidTimezoneID_SameAsLinearScan() {
+        /* reference: the previous implementation, which scanned all available zone IDs on every call */
+        fun linearScan(tzID: String?): String {
+            val availableTZs = ZoneId.getAvailableZoneIds()
+            var result: String? = null
+            if (tzID != null) {
+                result = availableTZs.firstOrNull { it.equals(tzID, true) }
+                if (result == null)
+                    for (availableTZ in availableTZs)
+                        if (availableTZ.contains(tzID) || tzID.contains(availableTZ)) {
+                            result = availableTZ
+                            break
+                        }
+            }
+            return result ?: TimeZone.getDefault().id
+        }
+
+        val ids = mutableListOf<String?>(null, "", " ", "nothing-to-be-found", "Vienna", "Something with Europe/Vienna in between",
+            // Outlook/Windows-style IDs
+            "W. Europe Standard Time", "(UTC+01:00) Amsterdam, Berlin, Bern, Rom, Stockholm, Wien",
+            "Eastern Standard Time", "(GMT-05:00) Eastern Time (US & Canada)", "Westeuropäische Sommerzeit",
+            "/mozilla.org/20050126_1/Europe/Berlin", "/softwarestudio.org/Olson_20011030_5/America/New_York",
+            // case-insensitive special characters
+            "europe/İstanbul", "AMERICA/ARGENTINA/BUENOS_AIRES", "etc/gmt+1"
+        )
+        for (id in ZoneId.getAvailableZoneIds())
+            ids += listOf(id, id.uppercase(), id.lowercase(), id.substringAfterLast('/'))
+
+        // call twice to check memoized results, too
+        for (i in 0..1)
+            for (id in ids)
+                assertEquals("Time zone ID \"$id\"", linearScan(id), DateUtils.findAndroidTimezoneID(id))
+    }
+
     @Test
     fun testGetZoneId() {
         assertNull(DateUtils.getZoneId(null))
@@ -0,0 +1,76 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android.util
+
+import android.database.MatrixCursor
+import androidx.test.filters.SmallTest
+import at.bitfire.ical4android.util.MiscUtils.toValues
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class RowReaderTest {
+
+    private fun cursor() = MatrixCursor(arrayOf("id", "text", "blank", "number", "null", "blob")).apply {
+        addRow(arrayOf(1L, "Text", "  ", "42", null, byteArrayOf(1, 2, 3)))
+        addRow(arrayOf(2L, "true", "", "0", null, null))
+    }
+
+    @Test
+    @SmallTest
+    fun testTypedGetters() {
+        val c = cursor()
+        val row = RowReader(c)
+        assertTrue(c.moveToNext())
+
+        assertEquals(1L, row.getLong("id"))
+        assertEquals("Text", row.getString("text"))
+        assertNull(row.getLong("text"))
+        assertNull(row.getString("blank"))
+        assertTrue(row.isNull("blank"))
+        assertEquals(42, row.getInt("number"))
+        assertEquals(true, row.getBoolean("number"))
+        assertNull(row.getString("null"))
+        assertNull(row.getLong("null"))
+        assertArrayEquals(byteArrayOf(1, 2, 3), row.getBlob("blob"))
+
+        // missing column
+        assertFalse(row.has("missing"))
+        assertNull(row.getString("missing"))
+        assertTrue(row.isNull("missing"))
+
+        // column indices are reused for the next row
+        assertTrue(c.moveToNext())
+        assertEquals(2L, row.getLong("id"))
+        assertEquals(true, row.getBoolean("text"))
+        assertEquals(false, row.getBoolean("number"))
+        assertNull(row.getBlob("blob"))
+    }
+
+    @Test
+    @SmallTest
+    fun testToValues_SameAsCursorToValues() {
+        val c = cursor()
+        val row = RowReader(c)
+        while (c.moveToNext()) {
+            for (removeBlankRows in arrayOf(false, true)) {
+                val expected = c.toValues(removeBlankRows)
+                val actual = row.toValues(removeBlankRows)
+                assertEquals(expected.keySet(), actual.keySet())
+                for (key in expected.keySet())
+                    if (key == "blob")
+                        assertArrayEquals(expected.getAsByteArray(key), actual.getAsByteArray(key))
+                    else
+                        assertEquals(expected.get(key), actual.get(key))
+            }
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android.util
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.time.ZoneId
+import java.util.concurrent.TimeUnit
+
+class TimeZoneWarmUpTest {
+
+    @Test
+    fun testWarmUp() {
+        assertEquals(2, TimeZoneWarmUp.warmUp(listOf("Europe/Vienna", "America/New_York", "Europe/Vienna")))
+    }
+
+    @Test
+    fun testWarmUp_FillsCaches() {
+        // zone that isn't used by other tests
+        val id = "Asia/Kathmandu"
+        val zone = ZoneId.of(id)
+        assertFalse(ZoneOffsets.isTableCached(zone))
+
+        assertEquals(1, TimeZoneWarmUp.warmUp(listOf(id)))
+
+        // ical4j registry
+        val tz = DateUtils.ical4jTimeZone(id)
+        assertNotNull(tz)
+        assertSame(tz, DateUtils.ical4jTimeZone(id))
+
+        // offset table
+        assertTrue(ZoneOffsets.isTableCached(zone))
+        val table = ZoneOffsets.table(zone)
+        assertSame(table, ZoneOffsets.table(ZoneId.of(id)))
+    }
+
+    @Test
+    fun testWarmUp_Unknown() {
+        assertEquals(1, TimeZoneWarmUp.warmUp(listOf("Asia/Tokyo", "Invalid/Time_Zone", "")))
+    }
+
+    @Test
+    fun testWarmUpInBackground() {
+        val id = "America/St_Johns"
+        val zone = ZoneId.of(id)
+        assertFalse(ZoneOffsets.isTableCached(zone))
+
+        val thread = TimeZoneWarmUp.warmUpInBackground(listOf(id))
+        thread.join(TimeUnit.SECONDS.toMillis(30))
+        assertFalse(thread.isAlive)
+
+        assertTrue(ZoneOffsets.isTableCached(zone))
+        assertSame(DateUtils.ical4jTimeZone(id), DateUtils.ical4jTimeZone(id))
+    }
+
+}
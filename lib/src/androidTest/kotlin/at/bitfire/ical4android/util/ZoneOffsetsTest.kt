@@ -0,0 +1,98 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android.util
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.time.Duration
+import java.time.Instant
+import java.time.LocalDateTime
+import java.time.ZoneId
+import java.time.ZoneOffset
+import java.time.ZonedDateTime
+
+class ZoneOffsetsTest {
+
+    private val zones = arrayOf("Europe/Vienna", "America/New_York", "Australia/Lord_Howe", "Asia/Kolkata", "Pacific/Apia", "UTC")
+
+    @Test
+    fun testZoneId_Cached() {
+        assertSame(ZoneOffsets.zoneId("Europe/Vienna"), ZoneOffsets.zoneId("Europe/Vienna"))
+    }
+
+    @Test
+    fun testTable_Cached() {
+        val zone = ZoneId.of("Europe/Vienna")
+        val table = ZoneOffsets.table(zone)
+        assertSame(table, ZoneOffsets.table(zone))
+        assertTrue(table.size > 0)
+        assertEquals(0, ZoneOffsets.table(ZoneOffset.UTC).size)
+    }
+
+    @Test
+    fun testToLocalMillis_SameAsZonedDateTime() {
+        for (id in zones) {
+            val zone = ZoneId.of(id)
+            // also covers times outside the table range
+            var instant = Instant.parse("1850-01-01T00:00:00Z")
+            val end = Instant.parse("2250-01-01T00:00:00Z")
+            while (instant.isBefore(end)) {
+                val expected = ZonedDateTime.ofInstant(instant, zone).toLocalDateTime().toInstant(ZoneOffset.UTC).toEpochMilli()
+                assertEquals("$id at $instant", expected, ZoneOffsets.toLocalMillis(zone, instant.toEpochMilli()))
+                instant += Duration.ofMinutes(1337)
+            }
+        }
+    }
+
+    @Test
+    fun testToLocalMillis_AtTransition() {
+        val zone = ZoneId.of("Europe/Vienna")
+        for (transition in zone.rules.transitions.takeLast(20)) {
+            val millis = transition.instant.toEpochMilli()
+            assertEquals(transition.offsetBefore.totalSeconds * 1000, ZoneOffsets.offsetMillis(zone, millis - 1))
+            assertEquals(transition.offsetAfter.totalSeconds * 1000, ZoneOffsets.offsetMillis(zone, millis))
+        }
+    }
+
+    @Test
+    fun testToUtcMillis_SameAsZonedDateTime() {
+        for (id in zones) {
+            val zone = ZoneId.of(id)
+            var local = LocalDateTime.of(1900, 1, 1, 0, 0)
+            val end = LocalDateTime.of(2100, 1, 1, 0, 0)
+            while (local.isBefore(end)) {
+                val expected = ZonedDateTime.of(local, zone).toInstant().toEpochMilli()
+                val localMillis = local.toInstant(ZoneOffset.UTC).toEpochMilli()
+                assertEquals("$id at $local", expected, ZoneOffsets.toUtcMillis(zone, localMillis))
+                local = local.plusMinutes(997)
+            }
+        }
+    }
+
+    @Test
+    fun testToUtcMillis_GapAndOverlap() {
+        val zone = ZoneId.of("Europe/Vienna")
+        for (local in arrayOf(
+            LocalDateTime.of(2024, 3, 31, 2, 30),       // gap
+            LocalDateTime.of(2024, 10, 27, 2, 30)       // overlap
+        )) {
+            val expected = ZonedDateTime.of(local, zone).toInstant().toEpochMilli()
+            assertEquals(expected, ZoneOffsets.toUtcMillis(zone, local.toInstant(ZoneOffset.UTC).toEpochMilli()))
+        }
+    }
+
+    @Test
+    fun testLocalFields() {
+        val localMillis = LocalDateTime.of(1969, 12, 31, 23, 59, 58).toInstant(ZoneOffset.UTC).toEpochMilli()
+        assertEquals(-1L, ZoneOffsets.epochDay(localMillis))
+        assertEquals(86_398_000L, ZoneOffsets.millisOfDay(localMillis))
+        assertEquals(localMillis, ZoneOffsets.localMillis(ZoneOffsets.toLocalDate(localMillis), ZoneOffsets.millisOfDay(localMillis)))
+    }
+
+}
@@ -10,18 +10,24 @@ import android.accounts.Account
 import android.content.ContentProviderClient
 import android.content.ContentUris
 import android.content.ContentValues
+import android.content.Entity
 import android.net.Uri
 import android.provider.CalendarContract.Attendees
 import android.provider.CalendarContract.CalendarEntity
 import android.provider.CalendarContract.Calendars
 import android.provider.CalendarContract.Colors
 import android.provider.CalendarContract.Events
+import android.provider.CalendarContract.ExtendedProperties
 import android.provider.CalendarContract.Reminders
 import androidx.annotation.CallSuper
 import at.bitfire.ical4android.util.MiscUtils.asSyncAdapter
-import at.bitfire.ical4android.util.MiscUtils.toValues
+import at.bitfire.ical4android.util.MiscUtils.queryIn
+import at.bitfire.ical4android.util.PagedQuery
+import at.bitfire.ical4android.util.RowReader
+import at.bitfire.ical4android.util.TimeZoneWarmUp
 import java.io.FileNotFoundException
 import java.util.LinkedList
+import java.util.concurrent.ConcurrentHashMap
 import java.util.logging.Level
 import java.util.logging.Logger
 
@@ -43,6 +49,18 @@ abstract class AndroidCalendar<out T: AndroidEvent>(
         
         private val logger
             get() = Logger.getLogger(AndroidCalendar::class.java.name)
+
+        /** Cached event color keys per account, see [availableColorKeys] */
+        private val colorKeys = ConcurrentHashMap<Account, Set<String>>()
+
+        /** incremented by [invalidateColorKeys], so that keys which have been queried before aren't cached anymore; guarded by [colorKeys] */
+        private var colorKeysGeneration = 0L
+
+        /** Default number of events whose data is loaded at once by [loadEvents]. */
+        const val LOAD_EVENTS_PAGE_SIZE = 250
+
+        /** Column with the event ID in [Attendees], [Reminders] and [ExtendedProperties] (all named `event_id`). */
+        private const val EVENT_ID = Attendees.EVENT_ID
         
         /**
          * Recommended initial values when creating Android [Calendars].
@@ -96,6 +114,7 @@ abstract class AndroidCalendar<out T: AndroidEvent>(
                     logger.log(Level.WARNING, "Couldn't insert event color: ${color.name}", e)
                 }
             }
+            invalidateColorKeys(account)
         }
 
         fun removeColors(provider: ContentProviderClient, account: Account) {
@@ -119,6 +138,86 @@ abstract class AndroidCalendar<out T: AndroidEvent>(
 
             // remove color entries
             provider.delete(Colors.CONTENT_URI.asSyncAdapter(account), null, null)
+            invalidateColorKeys(account)
+        }
+
+        /**
+         * Returns the keys of the event colors that are available for the given account. The keys are
+         * queried only once per account and then cached until [insertColors], [removeColors] or
+         * [invalidateColorKeys] is called. When the query fails, an empty set is returned and nothing is cached.
+         *
+         * @param provider  client for Android calendar provider
+         * @param account   account whose event colors shall be returned
+         *
+         * @return available event color keys ([Colors.COLOR_KEY]) of the account
+         */
+        fun availableColorKeys(provider: ContentProviderClient, account: Account): Set<String> {
+            colorKeys[account]?.let { return it }
+
+            val generation = synchronized(colorKeys) { colorKeysGeneration }
+            val keys = provider.query(Colors.CONTENT_URI.asSyncAdapter(account), arrayOf(Colors.COLOR_KEY),
+                    "${Colors.COLOR_TYPE}=${Colors.TYPE_EVENT}", null, null)?.use { cursor ->
+                val keys = HashSet<String>()
+                while (cursor.moveToNext())
+                    cursor.getString(0)?.let { keys += it }
+                keys
+            } ?: return emptySet()      // query failed, don't cache
+
+            synchronized(colorKeys) {
+                // don't cache keys which have been invalidated in the meantime
+                if (colorKeysGeneration == generation)
+                    colorKeys[account] = keys
+            }
+            return keys
+        }
+
+        /**
+         * Invalidates the cached event color keys (see [availableColorKeys]). Has to be called when
+         * event colors are modified without using [insertColors] or [removeColors].
+         *
+         * @param account   account whose cached color keys shall be invalidated (*null* for all accounts)
+         */
+        fun invalidateColorKeys(account: Account? = null) {
+            synchronized(colorKeys) {
+                colorKeysGeneration++
+                if (account != null)
+                    colorKeys.remove(account)
+                else
+                    colorKeys.clear()
+            }
+        }
+
+        /**
+         * Queries the time zones that are used by the calendars of an account: the calendar time zones
+         * ([Calendars.CALENDAR_TIME_ZONE]) and the time zones of the events that start after the given
+         * time ([Events.EVENT_TIMEZONE], [Events.EVENT_END_TIMEZONE]). Can be used to preload these
+         * time zones with [TimeZoneWarmUp.warmUp].
+         *
+         * @param provider  client for Android calendar provider
+         * @param account   account whose time zones shall be returned
+         * @param since     only events that start at or after this time (UTC epoch milliseconds) are taken into account
+         *
+         * @return IDs of the used time zones
+         */
+        fun usedTimeZoneIds(provider: ContentProviderClient, account: Account, since: Long): Set<String> {
+            val ids = HashSet<String>()
+            val accountWhere = "${Calendars.ACCOUNT_NAME}=? AND ${Calendars.ACCOUNT_TYPE}=?"
+
+            provider.query(Calendars.CONTENT_URI.asSyncAdapter(account), arrayOf(Calendars.CALENDAR_TIME_ZONE),
+                    accountWhere, arrayOf(account.name, account.type), null)?.use { cursor ->
+                while (cursor.moveToNext())
+                    cursor.getString(0)?.let { ids += it }
+            }
+
+            provider.query(Events.CONTENT_URI.asSyncAdapter(account), arrayOf(Events.EVENT_TIMEZONE, Events.EVENT_END_TIMEZONE),
+                    "$accountWhere AND ${Events.DTSTART}>=?", arrayOf(account.name, account.type, since.toString()), null)?.use { cursor ->
+                while (cursor.moveToNext()) {
+                    cursor.getString(0)?.let { ids += it }
+                    cursor.getString(1)?.let { ids += it }
+                }
+            }
+
+            return ids
         }
 
         fun<T: AndroidCalendar<AndroidEvent>> findByID(account: Account, provider: ContentProviderClient, factory: AndroidCalendarFactory<T>, id: Long): T {
@@ -169,6 +268,24 @@ abstract class AndroidCalendar<out T: AndroidEvent>(
 
     var syncId: String? = null
 
+    /**
+     * Index of the main events of this calendar (see [loadSyncIndex]). When set, it's updated when
+     * events are added, updated or deleted by [AndroidEvent].
+     */
+    var syncIndex: SyncIndex? = null
+
+    /**
+     * Index of the instances of the events of this calendar (see [loadInstanceIndex]). When set, it's
+     * updated when events are added, updated or deleted by [AndroidEvent].
+     */
+    var instanceIndex: InstanceIndex? = null
+
+    /**
+     * Caching policy for the [Event]s that are loaded by the [AndroidEvent]s of this calendar
+     * (see [AndroidEvent.event]). Should be set before events are queried.
+     */
+    var eventCache: DataCache<Event> = DataCache.Strong()
+
 
     /**
      * Sets the calendar properties ([name], [displayName] etc.) from the passed argument,
@@ -224,15 +341,245 @@ abstract class AndroidCalendar<out T: AndroidEvent>(
 
         val events = LinkedList<T>()
         provider.query(Events.CONTENT_URI.asSyncAdapter(account), null, where, whereArgs, null)?.use { cursor ->
+            val reader = RowReader(cursor)
             while (cursor.moveToNext())
-                events += eventFactory.fromProvider(this, cursor.toValues())
+                events += eventFactory.fromProvider(this, reader.toValues())
         }
         return events
     }
 
+    /**
+     * Queries events from this calendar lazily, page by page (see [PagedQuery]). Adds a WHERE clause
+     * that restricts the query to [Events.CALENDAR_ID] = [id].
+     *
+     * In contrast to [queryEvents], only the requested columns are queried and only one page of rows
+     * is held in memory at a time, which is useful for large calendars when only some columns
+     * (like [Events._ID], [Events._SYNC_ID] and [Events.DIRTY]) are needed.
+     *
+     * @param projection    columns to query (*null* for all columns); [Events._ID] is always queried.
+     * Passed to [AndroidEventFactory.fromProvider], so it must contain all columns the factory needs.
+     * @param _where        selection
+     * @param _whereArgs    arguments for selection
+     * @param pageSize      number of rows per page
+     *
+     * @return lazy sequence of events from this calendar which match the selection
+     */
+    fun queryEvents(projection: Array<String>?, _where: String?, _whereArgs: Array<String>?, pageSize: Int): Sequence<T> {
+        val where = "(${_where ?: "1"}) AND " + Events.CALENDAR_ID + "=?"
+        val whereArgs = (_whereArgs ?: arrayOf()) + id.toString()
+
+        return PagedQuery(provider, Events.CONTENT_URI.asSyncAdapter(account), projection, Events._ID, where, whereArgs, pageSize) { values ->
+            eventFactory.fromProvider(this, values)
+        }
+    }
+
     fun findById(id: Long) = queryEvents("${Events._ID}=?", arrayOf(id.toString())).firstOrNull()
             ?: throw FileNotFoundException()
 
+    /**
+     * Enumerates the locally changed main events of this calendar (the change set for uploading) lazily,
+     * page by page (see [PagedQuery]). Only [Events._ID], [Events.DIRTY], [Events.DELETED], the file name column
+     * and the columns of [projection] are queried; the full event is only loaded when [LocalChange.resource]
+     * is accessed.
+     *
+     * Contains
+     *
+     * - main events which are dirty or deleted,
+     * - main events which are not dirty themselves, but have dirty or deleted exceptions (as [LocalChange.Type.DIRTY]).
+     *
+     * Main events without file name are [LocalChange.Type.NEW] (unless they're deleted).
+     *
+     * @param projection        additional columns to query for the descriptors (for instance the ETag column)
+     * @param fileNameColumn    column with the file name (*null*: events are never [LocalChange.Type.NEW])
+     * @param pageSize          number of rows per page
+     *
+     * @return lazy sequence of changes
+     */
+    fun queryChanges(projection: Array<String>? = null, fileNameColumn: String? = Events._SYNC_ID, pageSize: Int = LOAD_EVENTS_PAGE_SIZE): Sequence<LocalChange<T>> = sequence {
+        val uri = Events.CONTENT_URI.asSyncAdapter(account)
+        val changeProjection = (listOfNotNull(Events._ID, Events.DIRTY, Events.DELETED, fileNameColumn) + projection.orEmpty())
+            .distinct().toTypedArray()
+        fun change(row: ContentValues) = LocalChange(LocalChange.typeOf(row, Events.DELETED, fileNameColumn), row.getAsLong(Events._ID), row) { id ->
+            queryEvents("${Events._ID}=?", arrayOf(id.toString())).firstOrNull()
+        }
+
+        // main events which are dirty or deleted
+        yieldAll(PagedQuery(provider, uri, changeProjection, Events._ID,
+            "${Events.CALENDAR_ID}=? AND ${Events.ORIGINAL_ID} IS NULL AND (${Events.DIRTY} OR ${Events.DELETED})",
+            arrayOf(id.toString()), pageSize, ::change))
+
+        // unchanged main events with dirty or deleted exceptions
+        val mainIds = mutableSetOf<Long>()
+        provider.query(uri, arrayOf(Events.ORIGINAL_ID),
+            "${Events.CALENDAR_ID}=? AND ${Events.ORIGINAL_ID} IS NOT NULL AND (${Events.DIRTY} OR ${Events.DELETED})",
+            arrayOf(id.toString()), null
+        )?.use { cursor ->
+            while (cursor.moveToNext())
+                mainIds += cursor.getLong(0)
+        }
+        if (mainIds.isNotEmpty())
+            for (row in provider.queryIn(uri, changeProjection, Events._ID, mainIds, "NOT ${Events.DIRTY} AND NOT ${Events.DELETED}", chunkSize = pageSize))
+                yield(change(row))
+    }
+
+    /**
+     * Queries the current [Events.STATUS] of the given events in bulk (using `IN (…)` queries) and passes
+     * it to [AndroidEvent.setProviderStatus]. Afterwards, [AndroidEvent.update] can decide whether an event
+     * has to be re-created without querying its status.
+     *
+     * Useful before updating many events which haven't been read from the calendar provider
+     * (events that have been read with [queryEvents] or [loadEvents] already know their status).
+     *
+     * @param events    events of this calendar (events without ID are ignored)
+     */
+    fun prefetchStatus(events: Collection<AndroidEvent>) {
+        val eventsById = events.filter { it.id != null }.associateBy { it.id!! }
+        if (eventsById.isEmpty())
+            return
+
+        for (row in provider.queryIn(Events.CONTENT_URI.asSyncAdapter(account), arrayOf(Events._ID, Events.STATUS), Events._ID, eventsById.keys))
+            eventsById[row.getAsLong(Events._ID)]?.setProviderStatus(row.getAsInteger(Events.STATUS))
+    }
+
+    /**
+     * Loads events from this calendar together with their data (attendees, reminders, extended properties
+     * and exceptions), like [queryEvents] followed by [AndroidEvent.event] for every event.
+     *
+     * However, instead of several queries per event, the data rows are queried in bulk for pages
+     * of [pageSize] events (using `IN (…)` queries), and exceptions are assigned to their main events in memory.
+     * So the number of queries only depends on the number of pages, not on the number of events.
+     *
+     * Events which can't be populated are logged and passed to [callback] without data, so that the
+     * error is thrown again when [AndroidEvent.event] is accessed (like without bulk loading).
+     *
+     * @param _where      selection (see [queryEvents])
+     * @param _whereArgs  arguments for selection
+     * @param pageSize    number of events whose data is loaded at once
+     * @param callback    called for every event (in order of [Events._ID]); [AndroidEvent.event] is already populated
+     */
+    fun loadEvents(_where: String? = null, _whereArgs: Array<String>? = null, pageSize: Int = LOAD_EVENTS_PAGE_SIZE, callback: (T) -> Unit) {
+        val where = "(${_where ?: "1"}) AND " + Events.CALENDAR_ID + "=?"
+        val whereArgs = (_whereArgs ?: arrayOf()) + id.toString()
+
+        provider.query(Events.CONTENT_URI.asSyncAdapter(account), null, where, whereArgs, Events._ID)?.use { cursor ->
+            val reader = RowReader(cursor)
+            val page = ArrayList<ContentValues>(pageSize)
+            while (cursor.moveToNext()) {
+                page += reader.toValues()
+                if (page.size >= pageSize) {
+                    loadEventsPage(page, callback)
+                    page.clear()
+                }
+            }
+            if (page.isNotEmpty())
+                loadEventsPage(page, callback)
+        }
+    }
+
+    private fun loadEventsPage(rows: List<ContentValues>, callback: (T) -> Unit) {
+        val ids = rows.map { it.getAsLong(Events._ID) }
+
+        // exceptions of the events of this page
+        val exceptionRows = provider.queryIn(Events.CONTENT_URI.asSyncAdapter(account), null, Events.ORIGINAL_ID, ids, removeBlankRows = true)
+        val exceptionsByOriginalId = exceptionRows.groupBy { it.getAsLong(Events.ORIGINAL_ID) }
+
+        // data rows of the events and their exceptions
+        val allIds = ids + exceptionRows.map { it.getAsLong(Events._ID) }
+        val subValues = mutableMapOf<Long, MutableList<Pair<Uri, ContentValues>>>()
+        for (uri in arrayOf(Attendees.CONTENT_URI, Reminders.CONTENT_URI, ExtendedProperties.CONTENT_URI))
+            for (row in provider.queryIn(uri.asSyncAdapter(account), null, EVENT_ID, allIds))
+                subValues.getOrPut(row.getAsLong(EVENT_ID)) { mutableListOf() } += Pair(uri, row)
+
+        fun entity(row: ContentValues) = Entity(row).apply {
+            subValues[row.getAsLong(Events._ID)]?.forEach { (uri, values) ->
+                addSubValue(uri, values)
+            }
+        }
+
+        for (row in rows) {
+            val id = row.getAsLong(Events._ID)
+
+            val exceptions = exceptionsByOriginalId[id].orEmpty().mapNotNull { exceptionRow ->
+                val exception = eventFactory.fromProvider(this, exceptionRow)
+                try {
+                    exception.populate(entity(exceptionRow), emptyList())
+                    exception
+                } catch (e: Exception) {
+                    logger.log(Level.WARNING, "Couldn't find exception details", e)
+                    null
+                }
+            }
+
+            val event = eventFactory.fromProvider(this, row)
+            try {
+                event.populate(entity(row), exceptions)
+            } catch (e: Exception) {
+                logger.log(Level.WARNING, "Couldn't load event #$id", e)
+            }
+            callback(event)
+        }
+    }
+
+
+    /**
+     * Loads a [SyncIndex] of the main events (not the exceptions) of this calendar with one query
+     * and sets it as [syncIndex], so that it's maintained by [AndroidEvent.add], [AndroidEvent.update]
+     * and [AndroidEvent.delete].
+     *
+     * The calendar provider has no dedicated columns for the file name, ETag and flags, so the
+     * columns the sync adapter uses for them have to be passed.
+     *
+     * @param fileNameColumn    column with the file name (*null* if not used)
+     * @param eTagColumn        column with the ETag (*null* if not used)
+     * @param flagsColumn       column with the sync flags (*null* if not used)
+     *
+     * @return the loaded index
+     */
+    fun loadSyncIndex(fileNameColumn: String? = Events._SYNC_ID, eTagColumn: String? = null, flagsColumn: String? = null): SyncIndex {
+        val columns = SyncIndex.Columns(
+            id = Events._ID,
+            uid = Events.UID_2445,
+            fileName = fileNameColumn,
+            eTag = eTagColumn,
+            dirty = Events.DIRTY,
+            deleted = Events.DELETED,
+            flags = flagsColumn
+        )
+        return SyncIndex.load(
+            provider, Events.CONTENT_URI.asSyncAdapter(account), columns,
+            "${Events.CALENDAR_ID}=? AND ${Events.ORIGINAL_ID} IS NULL", arrayOf(id.toString())
+        ).also { syncIndex = it }
+    }
+
+
+    /**
+     * Loads all main events (with exceptions) of this calendar with [loadEvents] and builds an
+     * [InstanceIndex] of their instances, keyed by [AndroidEvent.id]. The index is set as
+     * [instanceIndex], so that it's maintained by [AndroidEvent.add], [AndroidEvent.update] and
+     * [AndroidEvent.delete].
+     *
+     * @param horizonStart  start of the indexed time range (UTC epoch milliseconds, inclusive)
+     * @param horizonEnd    end of the indexed time range (UTC epoch milliseconds, exclusive)
+     *
+     * @return the loaded index
+     */
+    fun loadInstanceIndex(horizonStart: Long, horizonEnd: Long): InstanceIndex {
+        val events = HashMap<Long, Event>()
+        loadEvents("${Events.ORIGINAL_ID} IS NULL AND NOT ${Events.DELETED}", null) { androidEvent ->
+            val id = androidEvent.id ?: return@loadEvents
+            try {
+                androidEvent.event?.let { events[id] = it }
+            } catch (e: Exception) {
+                logger.log(Level.WARNING, "Couldn't load event #$id for instance index", e)
+            }
+        }
+
+        val index = InstanceIndex(horizonStart, horizonEnd)
+        index.putAll(events)
+        logger.log(Level.FINE, "Loaded instance index with ${index.size} instances of ${events.size} events")
+        return index.also { instanceIndex = it }
+    }
+
 
     fun calendarSyncURI() = ContentUris.withAppendedId(Calendars.CONTENT_URI, id).asSyncAdapter(account)
 
@@ -7,6 +7,7 @@
 package at.bitfire.ical4android
 
 import java.time.ZoneId
+import java.util.concurrent.ConcurrentHashMap
 import java.util.logging.Logger
 import net.fortuna.ical4j.model.DefaultTimeZoneRegistryFactory
 import net.fortuna.ical4j.model.Property
@@ -37,6 +38,12 @@ class AndroidCompatTimeZoneRegistry(
     private val logger
         get() = Logger.getLogger(javaClass.name)
 
+    /** time zone (or *null*) that is returned for a requested ID, see [getTimeZone] */
+    private class CachedTimeZone(val timeZone: TimeZone?)
+
+    /** resolved time zones by requested ID, including the ones that are not available at all */
+    private val cache = ConcurrentHashMap<String, CachedTimeZone>()
+
     /**
      * Gets the time zone for a given ID.
      *
@@ -47,10 +54,34 @@ class AndroidCompatTimeZoneRegistry(
      * If a time zone with the given ID doesn't exist in Android, this method returns the
      * result of its [base] method.
      *
+     * Results (including *null*) are cached per ID, so that the same [TimeZone] instance is returned
+     * for the same ID and the time zone doesn't have to be resolved (and copied) again. The cache is
+     * cleared when time zones are registered or the registry is cleared.
+     *
      * @param id
      * @return time zone
      */
-    override fun getTimeZone(id: String): TimeZone? {
+    override fun getTimeZone(id: String): TimeZone? =
+        cache.getOrPut(id) {
+            CachedTimeZone(resolveTimeZone(id))
+        }.timeZone
+
+    override fun register(timezone: TimeZone?) {
+        base.register(timezone)
+        cache.clear()
+    }
+
+    override fun register(timezone: TimeZone?, update: Boolean) {
+        base.register(timezone, update)
+        cache.clear()
+    }
+
+    override fun clear() {
+        base.clear()
+        cache.clear()
+    }
+
+    private fun resolveTimeZone(id: String): TimeZone? {
         val tz: TimeZone = base.getTimeZone(id)
             ?: return null      // ical4j doesn't know time zone, return null
 
@@ -89,11 +120,15 @@ class AndroidCompatTimeZoneRegistry(
     }
 
 
+    /**
+     * Creates registries that take the ical4j time zones from the bundled [TimeZoneSnapshot]
+     * (see [SnapshotTimeZoneRegistry]) and fall back to the default ical4j registry.
+     */
     class Factory : TimeZoneRegistryFactory() {
 
         override fun createRegistry(): AndroidCompatTimeZoneRegistry {
             val ical4jRegistry = DefaultTimeZoneRegistryFactory().createRegistry()
-            return AndroidCompatTimeZoneRegistry(ical4jRegistry)
+            return AndroidCompatTimeZoneRegistry(SnapshotTimeZoneRegistry(ical4jRegistry))
         }
 
     }
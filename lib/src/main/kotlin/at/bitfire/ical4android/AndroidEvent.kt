@@ -9,11 +9,11 @@ package at.bitfire.ical4android
 import android.content.ContentResolver
 import android.content.ContentUris
 import android.content.ContentValues
+import android.content.Entity
 import android.content.EntityIterator
 import android.net.Uri
 import android.os.RemoteException
 import android.provider.CalendarContract.Attendees
-import android.provider.CalendarContract.Colors
 import android.provider.CalendarContract.Events
 import android.provider.CalendarContract.EventsEntity
 import android.provider.CalendarContract.ExtendedProperties
@@ -23,9 +23,10 @@ import androidx.annotation.CallSuper
 import at.bitfire.ical4android.BatchOperation.CpoBuilder
 import at.bitfire.ical4android.util.AndroidTimeUtils
 import at.bitfire.ical4android.util.DateUtils
+import at.bitfire.ical4android.util.LogUtils.logLazy
 import at.bitfire.ical4android.util.MiscUtils.asSyncAdapter
 import at.bitfire.ical4android.util.MiscUtils.removeBlankStrings
-import at.bitfire.ical4android.util.MiscUtils.toValues
+import at.bitfire.ical4android.util.RowReader
 import at.bitfire.ical4android.util.TimeApiExtensions
 import at.bitfire.ical4android.util.TimeApiExtensions.requireZoneId
 import at.bitfire.ical4android.util.TimeApiExtensions.toIcal4jDate
@@ -34,6 +35,7 @@ import at.bitfire.ical4android.util.TimeApiExtensions.toLocalDate
 import at.bitfire.ical4android.util.TimeApiExtensions.toLocalTime
 import at.bitfire.ical4android.util.TimeApiExtensions.toRfc5545Duration
 import at.bitfire.ical4android.util.TimeApiExtensions.toZonedDateTime
+import at.bitfire.ical4android.util.ZoneOffsets
 import net.fortuna.ical4j.model.Date
 import net.fortuna.ical4j.model.DateList
 import net.fortuna.ical4j.model.DateTime
@@ -64,9 +66,7 @@ import java.io.FileNotFoundException
 import java.net.URI
 import java.net.URISyntaxException
 import java.time.Duration
-import java.time.Instant
 import java.time.Period
-import java.time.ZoneOffset
 import java.time.ZonedDateTime
 import java.util.Locale
 import java.util.logging.Level
@@ -89,6 +89,20 @@ abstract class AndroidEvent(
 
         const val MUTATORS_SEPARATOR = ','
 
+        /**
+         * Roughly estimates the memory used by an [Event] (including its exceptions), for instance
+         * for a [DataCache.Lru] with a byte budget.
+         *
+         * @param event     event to estimate
+         * @return estimated size in bytes
+         */
+        fun estimatedSize(event: Event): Long =
+            1024L +
+            2L * ((event.summary?.length ?: 0) + (event.location?.length ?: 0) + (event.description?.length ?: 0)) +
+            256L * (event.attendees.size + event.alarms.size + event.categories.size + event.unknownProperties.size +
+                    event.rRules.size + event.rDates.size + event.exDates.size) +
+            event.exceptions.sumOf { estimatedSize(it) }
+
         /**
          * VEVENT CATEGORIES are stored as an extended property with this [ExtendedProperties.NAME].
          *
@@ -129,6 +143,8 @@ abstract class AndroidEvent(
      */
     constructor(calendar: AndroidCalendar<AndroidEvent>, values: ContentValues) : this(calendar) {
         this.id = values.getAsLong(Events._ID)
+        if (values.containsKey(Events.STATUS))
+            setProviderStatus(values.getAsInteger(Events.STATUS))
         // derived classes process SYNC1 etc.
     }
 
@@ -140,11 +156,29 @@ abstract class AndroidEvent(
         this.event = event
     }
 
+    /** event that has been set (or is being populated); always held strongly */
     private var _event: Event? = null
 
+    /** event that has been loaded from the calendar provider; held according to [AndroidCalendar.eventCache] */
+    private var cachedEvent: DataCache.Slot<Event>? = null
+
+    /**
+     * [Events.STATUS] of the row in the calendar provider, as far as known (only valid when [providerStatusKnown]
+     * is set). Used by [update] to decide whether the event has to be re-created without querying the status.
+     */
+    private var providerStatus: Int? = null
+    private var providerStatusKnown = false
+
+    /** values of the main row that have been written by the last [addOrUpdateRows]; used to update [AndroidCalendar.syncIndex] */
+    private var writtenValues: ContentValues? = null
+
     /**
      * Returns the full event data, either from [event] or, if [event] is null, by reading event
-     * number [id] from the Android calendar storage
+     * number [id] from the Android calendar storage.
+     *
+     * Events that have been read from the calendar storage are cached according to [AndroidCalendar.eventCache]
+     * and read again when they have been evicted.
+     *
      * @throws IllegalArgumentException if event has not been saved yet
      * @throws FileNotFoundException if there's no event with [id] in the calendar storage
      * @throws RemoteException on calendar provider errors
@@ -152,14 +186,21 @@ abstract class AndroidEvent(
     var event: Event?
         private set(value) {
             _event = value
+            cachedEvent?.set(null)
+            cachedEvent = null
         }
         get() {
-            if (_event != null)
-                return _event
+            _event?.let { return it }
+            val cache = calendar.eventCache
+            cachedEvent?.get()?.let { cached ->
+                cache.metrics.hit()
+                return cached
+            }
             val id = requireNotNull(id)
 
             var iterEvents: EntityIterator? = null
             try {
+                val start = System.nanoTime()
                 iterEvents = EventsEntity.newEntityIterator(
                         calendar.provider.query(
                                 ContentUris.withAppendedId(EventsEntity.CONTENT_URI, id).asSyncAdapter(calendar.account),
@@ -168,42 +209,68 @@ abstract class AndroidEvent(
                 )
 
                 if (iterEvents.hasNext()) {
-                    val e = iterEvents.next()
-
-                    // create new Event which will be populated
-                    val newEvent = Event()
-                    _event = newEvent
-
-                    // calculate some scheduling properties
-                    val groupScheduled = e.subValues.any { it.uri == Attendees.CONTENT_URI }
-                    val isOrganizer = (e.entityValues.getAsInteger(Events.IS_ORGANIZER) ?: 0) != 0
-
-                    populateEvent(e.entityValues.removeBlankStrings(), groupScheduled)
-
-                    for (subValue in e.subValues) {
-                        val subValues = subValue.values.removeBlankStrings()
-                        when (subValue.uri) {
-                            Attendees.CONTENT_URI -> populateAttendee(subValues, isOrganizer)
-                            Reminders.CONTENT_URI -> populateReminder(subValues)
-                            ExtendedProperties.CONTENT_URI -> populateExtended(subValues)
-                        }
-                    }
-                    populateExceptions()
-                    useRetainedClassification()
+                    val reload = cachedEvent != null
+                    val newEvent = populate(iterEvents.next(), null)
+                    cache.metrics.loaded(System.nanoTime() - start, reload)
                     return newEvent
                 }
-            } catch (e: Exception) {
-                /* Populating event has been interrupted by an exception, so we reset the event to
-                avoid an inconsistent state. This also ensures that the exception will be thrown
-                again on the next get() call. */
-                _event = null
-                throw e
             } finally {
                 iterEvents?.close()
             }
             throw FileNotFoundException("Couldn't find event $id")
         }
 
+    /**
+     * Populates [event] from an already loaded event entity.
+     *
+     * @param entity        event row with attendees, reminders and extended properties as sub-values
+     * @param exceptions    already loaded exceptions of this event (will be passed to [populateExceptions]);
+     * *null* to query the exceptions from the calendar provider
+     *
+     * @return the populated event (also available as [event])
+     */
+    internal fun populate(entity: Entity, exceptions: List<AndroidEvent>?): Event {
+        // create new Event which will be populated
+        val newEvent = Event()
+        _event = newEvent
+
+        try {
+            // calculate some scheduling properties
+            val groupScheduled = entity.subValues.any { it.uri == Attendees.CONTENT_URI }
+            val isOrganizer = (entity.entityValues.getAsInteger(Events.IS_ORGANIZER) ?: 0) != 0
+
+            populateEvent(entity.entityValues.removeBlankStrings(), groupScheduled)
+
+            for (subValue in entity.subValues) {
+                val subValues = subValue.values.removeBlankStrings()
+                when (subValue.uri) {
+                    Attendees.CONTENT_URI -> populateAttendee(subValues, isOrganizer)
+                    Reminders.CONTENT_URI -> populateReminder(subValues)
+                    ExtendedProperties.CONTENT_URI -> populateExtended(subValues)
+                }
+            }
+
+            if (exceptions == null)
+                populateExceptions()
+            else
+                populateExceptions(exceptions)
+
+            useRetainedClassification()
+        } catch (e: Exception) {
+            /* Populating event has been interrupted by an exception, so we reset the event to
+            avoid an inconsistent state. This also ensures that the exception will be thrown
+            again on the next get() call. */
+            _event = null
+            throw e
+        }
+
+        // loaded event can be read again, so it may be evicted
+        _event = null
+        val slot = cachedEvent ?: calendar.eventCache.newSlot().also { cachedEvent = it }
+        slot.set(newEvent)
+        return newEvent
+    }
+
     /**
      * Reads event data from the calendar provider.
      *
@@ -240,7 +307,7 @@ abstract class AndroidEvent(
 
             if (duration != null) {
                 // Some servers have problems with DURATION, so we always generate DTEND.
-                val startDate = ZonedDateTime.ofInstant(Instant.ofEpochMilli(tsStart), ZoneOffset.UTC).toLocalDate()
+                val startDate = ZoneOffsets.toLocalDate(tsStart)
                 if (duration is Duration)
                     duration = Period.ofDays(duration.toDays().toInt())
                 tsEnd = (startDate + duration).toEpochDay() * TimeApiExtensions.MILLIS_PER_DAY
@@ -253,7 +320,7 @@ abstract class AndroidEvent(
                         logger.warning("dtEnd $tsEnd (allDay) < dtStart $tsStart (allDay), ignoring")
 
                     tsEnd == tsStart ->
-                        logger.fine("dtEnd $tsEnd (allDay) = dtStart, won't generate DTEND property")
+                        logger.logLazy(Level.FINE) { "dtEnd $tsEnd (allDay) = dtStart, won't generate DTEND property" }
 
                     else /* tsEnd > tsStart */ ->
                         event.dtEnd = DtEnd(Date(tsEnd))
@@ -353,11 +420,13 @@ abstract class AndroidEvent(
             }
 
         // status
-        when (row.getAsInteger(Events.STATUS)) {
+        val status = row.getAsInteger(Events.STATUS)
+        when (status) {
             Events.STATUS_CONFIRMED -> event.status = Status.VEVENT_CONFIRMED
             Events.STATUS_TENTATIVE -> event.status = Status.VEVENT_TENTATIVE
             Events.STATUS_CANCELED -> event.status = Status.VEVENT_CANCELLED
         }
+        setProviderStatus(status)
 
         // availability
         event.opaque = row.getAsInteger(Events.AVAILABILITY) != Events.AVAILABILITY_FREE
@@ -478,7 +547,7 @@ abstract class AndroidEvent(
     protected open fun populateExtended(row: ContentValues) {
         val name = row.getAsString(ExtendedProperties.NAME)
         val rawValue = row.getAsString(ExtendedProperties.VALUE)
-        logger.log(Level.FINE, "Read extended property from calender provider", arrayOf(name, rawValue))
+        logger.logLazy(Level.FINE) { "Read extended property from calender provider: $name = $rawValue" }
         val event = requireNotNull(event)
 
         try {
@@ -506,48 +575,80 @@ abstract class AndroidEvent(
         }
     }
 
+    /**
+     * Queries the exceptions of this event from the calendar provider and passes them to
+     * [populateExceptions].
+     */
     protected open fun populateExceptions() {
         requireNotNull(id)
-        val event = requireNotNull(event)
 
+        val exceptions = mutableListOf<AndroidEvent>()
         calendar.provider.query(Events.CONTENT_URI.asSyncAdapter(calendar.account),
                 null,
                 Events.ORIGINAL_ID + "=?", arrayOf(id.toString()), null)?.use { c ->
+            val reader = RowReader(c)
             while (c.moveToNext()) {
-                val values = c.toValues(true)
+                val values = reader.toValues(true)
                 try {
-                    val exception = calendar.eventFactory.fromProvider(calendar, values)
-                    val exceptionEvent = exception.event!!
-                    val recurrenceId = exceptionEvent.recurrenceId!!
-
-                    // generate EXDATE instead of RECURRENCE-ID exceptions for cancelled instances
-                    if (exceptionEvent.status == Status.VEVENT_CANCELLED) {
-                        val list = DateList(
-                                if (DateUtils.isDate(recurrenceId)) Value.DATE else Value.DATE_TIME,
-                                recurrenceId.timeZone
-                        )
-                        list.add(recurrenceId.date)
-                        event.exDates += ExDate(list).apply {
-                            if (DateUtils.isDateTime(recurrenceId)) {
-                                if (recurrenceId.isUtc)
-                                    setUtc(true)
-                                else
-                                    timeZone = recurrenceId.timeZone
-                            }
-                        }
-
-                    } else /* exceptionEvent.status != Status.VEVENT_CANCELLED */ {
-                        // make sure that all components have the same ORGANIZER [RFC 6638 3.1]
-                        exceptionEvent.organizer = event.organizer
-
-                        // add exception to list of exceptions
-                        event.exceptions += exceptionEvent
-                    }
+                    exceptions += calendar.eventFactory.fromProvider(calendar, values)
                 } catch (e: Exception) {
                     logger.log(Level.WARNING, "Couldn't find exception details", e)
                 }
             }
         }
+        populateExceptions(exceptions)
+    }
+
+    /**
+     * Adds the exceptions of this event to [event]. Used both when the event is read with [event]
+     * (exceptions are queried by [populateExceptions]) and when it's bulk-loaded with
+     * [AndroidCalendar.loadEvents] (exceptions have been loaded together with the main events),
+     * so subclasses that customize how exceptions are processed should override this method.
+     *
+     * @param exceptions    exceptions of this event (their [event] is loaded when required)
+     */
+    protected open fun populateExceptions(exceptions: List<AndroidEvent>) {
+        for (exception in exceptions)
+            try {
+                addException(exception.event!!)
+            } catch (e: Exception) {
+                logger.log(Level.WARNING, "Couldn't find exception details", e)
+            }
+    }
+
+    /**
+     * Adds a populated exception to [event]: cancelled instances are added as EXDATE,
+     * other exceptions are added to [Event.exceptions].
+     *
+     * @param exceptionEvent    populated exception (must have a RECURRENCE-ID)
+     */
+    private fun addException(exceptionEvent: Event) {
+        val event = requireNotNull(event)
+        val recurrenceId = exceptionEvent.recurrenceId!!
+
+        // generate EXDATE instead of RECURRENCE-ID exceptions for cancelled instances
+        if (exceptionEvent.status == Status.VEVENT_CANCELLED) {
+            val list = DateList(
+                    if (DateUtils.isDate(recurrenceId)) Value.DATE else Value.DATE_TIME,
+                    recurrenceId.timeZone
+            )
+            list.add(recurrenceId.date)
+            event.exDates += ExDate(list).apply {
+                if (DateUtils.isDateTime(recurrenceId)) {
+                    if (recurrenceId.isUtc)
+                        setUtc(true)
+                    else
+                        timeZone = recurrenceId.timeZone
+                }
+            }
+
+        } else /* exceptionEvent.status != Status.VEVENT_CANCELLED */ {
+            // make sure that all components have the same ORGANIZER [RFC 6638 3.1]
+            exceptionEvent.organizer = event.organizer
+
+            // add exception to list of exceptions
+            event.exceptions += exceptionEvent
+        }
     }
 
     private fun retainClassification() {
@@ -577,6 +678,9 @@ abstract class AndroidEvent(
         val resultUri = batch.getResult(idxEvent)?.uri
                 ?: throw CalendarStorageException("Empty result from content provider when adding event")
         id = ContentUris.parseId(resultUri)
+        setProviderStatus(providerStatusOf(event?.status))
+        updateSyncIndex(id!!)
+        updateInstanceIndex(id!!)
         return resultUri
     }
 
@@ -598,6 +702,7 @@ abstract class AndroidEvent(
         val idxEvent = if (id == null) batch.nextBackrefIdx() else null
         buildEvent(null, builder)
         batch.enqueue(builder)
+        writtenValues = builder.values
 
         // add reminders
         event.alarms.forEach { insertReminder(batch, idxEvent, it) }
@@ -701,14 +806,18 @@ abstract class AndroidEvent(
         // There are cases where the event cannot be updated, but must be completely re-created.
         // Case 1: Events.STATUS shall be updated from a non-null value (like STATUS_CONFIRMED) to null.
         var rebuild = false
-        if (event.status == null)
-            calendar.provider.query(eventSyncURI(), arrayOf(Events.STATUS), null, null, null)?.use { cursor ->
-                if (cursor.moveToNext()) {
-                    val statusIndex = cursor.getColumnIndexOrThrow(Events.STATUS)
-                    if (!cursor.isNull(statusIndex))
-                        rebuild = true
+        if (event.status == null) {
+            if (providerStatusKnown)
+                rebuild = providerStatus != null
+            else
+                calendar.provider.query(eventSyncURI(), arrayOf(Events.STATUS), null, null, null)?.use { cursor ->
+                    if (cursor.moveToNext()) {
+                        val statusIndex = cursor.getColumnIndexOrThrow(Events.STATUS)
+                        if (!cursor.isNull(statusIndex))
+                            rebuild = true
+                    }
                 }
-            }
+        }
 
         if (rebuild) {  // delete whole event and insert updated event
             delete()
@@ -740,10 +849,27 @@ abstract class AndroidEvent(
             addOrUpdateRows(batch)
             batch.commit()
 
+            // STATUS is only written when it's not null; otherwise it was (and still is) null
+            setProviderStatus(providerStatusOf(event.status))
+            updateSyncIndex(existingId)
+            updateInstanceIndex(existingId)
+
             return ContentUris.withAppendedId(Events.CONTENT_URI, existingId)
         }
     }
 
+    /**
+     * Sets the [Events.STATUS] of the row in the calendar provider, so that [update] doesn't have to
+     * query it. Called automatically when the event is read from or written to the calendar provider;
+     * can also be called after a bulk pre-fetch (see [AndroidCalendar.prefetchStatus]).
+     *
+     * @param status    current [Events.STATUS] of the row in the calendar provider
+     */
+    fun setProviderStatus(status: Int?) {
+        providerStatus = status
+        providerStatusKnown = true
+    }
+
     /**
      * Deletes an existing event from the calendar storage.
      *
@@ -758,12 +884,40 @@ abstract class AndroidEvent(
         deleteExceptions(batch)
 
         // remove event and unset known id
+        val existingId = requireNotNull(id)
         batch.enqueue(CpoBuilder.newDelete(eventSyncURI()))
         id = null
+        providerStatus = null
+        providerStatusKnown = false
+
+        return batch.commit().also {
+            calendar.syncIndex?.remove(existingId)
+            calendar.instanceIndex?.remove(existingId)
+        }
+    }
+
+    private fun updateSyncIndex(id: Long) {
+        // the index only contains main events; exception rows share the UID of their main event
+        if (!isExceptionRow())
+            writtenValues?.let { values ->
+                calendar.syncIndex?.put(id, values)
+            }
+        writtenValues = null
+    }
 
-        return batch.commit()
+    private fun updateInstanceIndex(id: Long) {
+        val index = calendar.instanceIndex ?: return
+        // the index is keyed by main event; the instances of exceptions are expanded from their main event
+        if (!isExceptionRow())
+            _event?.let { index.put(id, it) }
     }
 
+    /**
+     * Whether this object represents an exception row (with [Events.ORIGINAL_ID]) instead of a main
+     * event, for instance when it has been returned by [AndroidCalendar.queryEvents] without selection.
+     */
+    private fun isExceptionRow() = _event?.recurrenceId != null
+
     protected fun deleteExceptions(batch: BatchOperation) {
         val existingId = requireNotNull(id)
         batch.enqueue(CpoBuilder
@@ -772,6 +926,20 @@ abstract class AndroidEvent(
     }
 
 
+    /**
+     * Maps an iCalendar STATUS to the [Events.STATUS] value.
+     *
+     * @param status    iCalendar STATUS (may be *null*)
+     * @return [Events.STATUS] value (*null* if [status] is *null*)
+     */
+    private fun providerStatusOf(status: Status?): Int? =
+        when (status) {
+            null -> null
+            Status.VEVENT_CONFIRMED -> Events.STATUS_CONFIRMED
+            Status.VEVENT_CANCELLED -> Events.STATUS_CANCELED
+            else -> Events.STATUS_TENTATIVE
+        }
+
     /**
      * Builds an Android [Events] row for a given ical4android [Event].
      *
@@ -942,13 +1110,10 @@ abstract class AndroidEvent(
         val color = event.color
         if (color != null) {
             // set event color (if it's available for this account)
-            calendar.provider.query(Colors.CONTENT_URI.asSyncAdapter(calendar.account), arrayOf(Colors.COLOR_KEY),
-                    "${Colors.COLOR_KEY}=? AND ${Colors.COLOR_TYPE}=${Colors.TYPE_EVENT}", arrayOf(color.name), null)?.use { cursor ->
-                if (cursor.moveToNext())
-                    builder.withValue(Events.EVENT_COLOR_KEY, color.name)
-                else
-                    logger.fine("Ignoring event color \"${color.name}\" (not available for this account)")
-            }
+            if (AndroidCalendar.availableColorKeys(calendar.provider, calendar.account).contains(color.name))
+                builder.withValue(Events.EVENT_COLOR_KEY, color.name)
+            else
+                logger.logLazy(Level.FINE) { "Ignoring event color \"${color.name}\" (not available for this account)" }
         } else {
             // reset color index and value
             builder .withValue(Events.EVENT_COLOR_KEY, null)
@@ -978,12 +1143,7 @@ abstract class AndroidEvent(
         // Attention: don't update event with STATUS != null to STATUS = null (causes calendar provider operation to fail)!
         // In this case, the whole event must be deleted and inserted again.
         if (/* insert, not an update */ id == null || /* update, but we're not updating to null */ event.status != null)
-            builder.withValue(Events.STATUS, when (event.status) {
-                null /* not possible by if statement */ -> null
-                Status.VEVENT_CONFIRMED -> Events.STATUS_CONFIRMED
-                Status.VEVENT_CANCELLED -> Events.STATUS_CANCELED
-                else -> Events.STATUS_TENTATIVE
-            })
+            builder.withValue(Events.STATUS, providerStatusOf(event.status))
 
         builder .withValue(Events.AVAILABILITY, if (event.opaque) Events.AVAILABILITY_BUSY else Events.AVAILABILITY_FREE)
                 .withValue(Events.ACCESS_LEVEL, when (event.classification) {
@@ -1118,6 +1278,6 @@ abstract class AndroidEvent(
     }
 
     @CallSuper
-    override fun toString(): String = "AndroidEvent(calendar=$calendar, id=$id, event=$_event)"
+    override fun toString(): String = "AndroidEvent(calendar=$calendar, id=$id, event=${_event ?: cachedEvent?.get()})"
 
 }
@@ -10,11 +10,13 @@ import android.content.ContentProviderClient
 import android.content.ContentProviderOperation
 import android.content.ContentProviderResult
 import android.content.ContentUris
+import android.content.ContentValues
 import android.content.OperationApplicationException
 import android.net.Uri
 import android.os.RemoteException
 import android.os.TransactionTooLargeException
-import java.util.LinkedList
+import android.util.ArrayMap
+import at.bitfire.ical4android.util.LogUtils.logLazy
 import java.util.logging.Level
 import java.util.logging.Logger
 
@@ -28,13 +30,23 @@ class BatchOperation(
         /** Maximum number of operations per yield point in task providers that are based on SQLiteContentProvider. */
         const val TASKS_OPERATIONS_PER_YIELD_POINT = 499
 
+        /**
+         * Listener that is notified about every [commit] of every [BatchOperation] (for instance
+         * [BatchOperationMetrics]). Statistics are only collected when a listener is set.
+         */
+        @Volatile
+        var listener: Listener? = null
+
     }
 
     private val logger = Logger.getLogger(javaClass.name)
 
-    private val queue = LinkedList<CpoBuilder>()
+    private val queue = ArrayList<CpoBuilder>()
     private var results = arrayOfNulls<ContentProviderResult?>(0)
 
+    /** statistics of the currently running [commit]; only set when there's a [listener] */
+    private var stats: CommitStats.Collector? = null
+
 
     fun nextBackrefIdx() = queue.size
 
@@ -60,21 +72,38 @@ class BatchOperation(
     fun commit(): Int {
         var affected = 0
         if (!queue.isEmpty()) {
-            if (logger.isLoggable(Level.FINE)) {
-                logger.log(Level.FINE, "Committing ${queue.size} operations:")
-                for ((idx, op) in queue.withIndex())
-                    logger.log(Level.FINE, "#$idx: ${op.build()}")
+            logger.logLazy(Level.FINE) {
+                buildString {
+                    append("Committing ${queue.size} operations:")
+                    for ((idx, op) in queue.withIndex())
+                        append("\n#$idx: ").append(op.build())
+                }
             }
 
+            val listener = BatchOperation.listener
+            val stats = listener?.let { CommitStats.Collector(queue) }
+            this.stats = stats
+
             results = arrayOfNulls(queue.size)
-            runBatch(0, queue.size)
+            try {
+                runBatch(0, queue.size)
+            } catch (e: Exception) {
+                if (listener != null && stats != null)
+                    listener.onCommit(stats.finish(affected, e))
+                throw e
+            } finally {
+                this.stats = null
+            }
 
             for (result in results.filterNotNull())
                 when {
                     result.count != null -> affected += result.count ?: 0
                     result.uri != null -> affected += 1
                 }
-            logger.fine("… $affected record(s) affected")
+            logger.logLazy(Level.FINE) { "… $affected record(s) affected" }
+
+            if (listener != null && stats != null)
+                listener.onCommit(stats.finish(affected, null))
         }
 
         queue.clear()
@@ -106,7 +135,9 @@ class BatchOperation(
 
         try {
             val ops = toCPO(start, end)
+            val startTime = System.nanoTime()
             val partResults = providerClient.applyBatch(ops)
+            stats?.chunks?.add(CommitStats.Chunk(start, end, System.nanoTime() - startTime))
 
             val n = end - start
             if (partResults.size != n)
@@ -126,6 +157,7 @@ class BatchOperation(
                 throw CalendarStorageException("Can't transfer data to content provider (too large data row can't be split)", e)
 
             logger.warning("Transaction too large, splitting (losing atomicity)")
+            stats?.let { it.splits += 1 }
             val mid = start + (end - start)/2
 
             runBatch(start, mid)
@@ -136,65 +168,150 @@ class BatchOperation(
     private fun toCPO(start: Int, end: Int): ArrayList<ContentProviderOperation> {
         val cpo = ArrayList<ContentProviderOperation>(end - start)
 
-        /* Fix back references:
+        /* Back references are resolved by CpoBuilder.build() without modifying the builders:
          * 1. If a back reference points to a row between start and end,
-         *    adapt the reference.
+         *    the index is shifted by start.
          * 2. If a back reference points to a row outside of start/end,
-         *    replace it by the actual result, which has already been calculated. */
-
-        var currentIdx = 0
-        for (cpoBuilder in queue.subList(start, end)) {
-            for ((backrefKey, backref) in cpoBuilder.valueBackrefs) {
-                val originalIdx = backref.originalIndex
-                if (originalIdx < start) {
-                    // back reference is outside of the current batch, get result from previous execution ...
-                    val resultUri = results[originalIdx]?.uri ?: throw CalendarStorageException("Referenced operation didn't produce a valid result")
-                    val resultId = ContentUris.parseId(resultUri)
-                    // ... and use result directly instead of using a back reference
-                    cpoBuilder  .removeValueBackReference(backrefKey)
-                                .withValue(backrefKey, resultId)
-                } else
-                    // back reference is in current batch, shift index
-                    backref.setIndex(originalIdx - start)
-            }
+         *    it's replaced by the actual result, which has already been calculated. */
 
+        for (idx in start until end) {
             // Set a possible yield point every MAX_OPERATIONS_PER_YIELD_POINT operations for SQLiteContentProvider
-            currentIdx += 1
-            if (maxOperationsPerYieldPoint != null && currentIdx.mod(maxOperationsPerYieldPoint) == 0)
-                cpoBuilder.withYieldAllowed()
+            val currentIdx = idx - start + 1
+            val yieldAllowed = maxOperationsPerYieldPoint != null && currentIdx.mod(maxOperationsPerYieldPoint) == 0
 
-            cpo += cpoBuilder.build()
+            val operation = queue[idx].build(start, results, yieldAllowed)
+            if (operation.isYieldAllowed)
+                stats?.yieldPoints?.add(idx)
+            cpo += operation
         }
         return cpo
     }
 
 
-    class BackReference(
-        /** index of the referenced row in the original, non-splitted transaction */
-        val originalIndex: Int
-    ) {
-        /** overridden index, i.e. index within the splitted transaction */
-        private var index: Int? = null
+    /**
+     * Receives statistics about committed batch operations. Can be used by the host app to find
+     * out why synchronization is slow on some devices.
+     *
+     * Called synchronously by the thread that has committed the batch, so implementations should be fast
+     * and thread-safe.
+     */
+    fun interface Listener {
 
         /**
-         * Sets the index to use in the splitted transaction.
-         * @param newIndex index to be used instead of [originalIndex]
+         * Called after a [commit] has been finished (successfully or not).
+         *
+         * @param stats statistics of the commit
          */
-        fun setIndex(newIndex: Int) {
-            index = newIndex
-        }
+        fun onCommit(stats: CommitStats)
+
+    }
+
+    /**
+     * Statistics of a single [commit].
+     *
+     * @param operationsByType        number of operations per operation type
+     * @param operationsByUri         number of operations per target URI (see [uriKey])
+     * @param estimatedPayloadBytes   estimated size of the values of all operations (see [CpoBuilder.estimatedSize])
+     * @param splits                  number of times the transaction has been split because of a [TransactionTooLargeException]
+     * @param chunks                  transactions that have been sent to the provider with their `applyBatch` wall time
+     * @param rowsAffected            number of affected rows (like returned by [commit])
+     * @param yieldPoints             indices of the operations that allow a yield point
+     * @param error                   exception that aborted the commit (*null* if the commit was successful)
+     */
+    class CommitStats(
+        val operationsByType: Map<CpoBuilder.Type, Int>,
+        val operationsByUri: Map<String, Int>,
+        val estimatedPayloadBytes: Long,
+        val splits: Int,
+        val chunks: List<Chunk>,
+        val rowsAffected: Int,
+        val yieldPoints: List<Int>,
+        val error: Exception?
+    ) {
+
+        /** number of operations of the commit */
+        val operations get() = operationsByType.values.sum()
+
+        /** total wall time of all `applyBatch` calls in nanoseconds */
+        val applyBatchNanos get() = chunks.sumOf { it.wallTimeNanos }
 
         /**
-         * Gets the index to use in the splitted transaction.
-         * @return [index] if it has been set, [originalIndex] otherwise
+         * A transaction that has been sent to the content provider.
+         *
+         * @param start          index of the first operation (inclusive)
+         * @param end            index of the last operation (exclusive)
+         * @param wallTimeNanos  wall time of the `applyBatch` call in nanoseconds
          */
-        fun getIndex() = index ?: originalIndex
+        data class Chunk(
+            val start: Int,
+            val end: Int,
+            val wallTimeNanos: Long
+        )
+
+        override fun toString() =
+            "CommitStats(operations=$operationsByType, uris=$operationsByUri, payload≈$estimatedPayloadBytes bytes, " +
+            "splits=$splits, chunks=$chunks, affected=$rowsAffected, yieldPoints=$yieldPoints, error=$error)"
+
+
+        internal class Collector(queue: List<CpoBuilder>) {
+
+            private val operationsByType = mutableMapOf<CpoBuilder.Type, Int>()
+            private val operationsByUri = mutableMapOf<String, Int>()
+            private var estimatedPayloadBytes = 0L
+
+            var splits = 0
+            val chunks = mutableListOf<Chunk>()
+            val yieldPoints = mutableListOf<Int>()
+
+            init {
+                for (operation in queue) {
+                    operationsByType[operation.type] = (operationsByType[operation.type] ?: 0) + 1
+                    val uriKey = uriKey(operation.uri)
+                    operationsByUri[uriKey] = (operationsByUri[uriKey] ?: 0) + 1
+                    estimatedPayloadBytes += operation.estimatedSize()
+                }
+            }
+
+            fun finish(rowsAffected: Int, error: Exception?) = CommitStats(
+                operationsByType = operationsByType,
+                operationsByUri = operationsByUri,
+                estimatedPayloadBytes = estimatedPayloadBytes,
+                splits = splits,
+                chunks = chunks,
+                rowsAffected = rowsAffected,
+                yieldPoints = yieldPoints,
+                error = error
+            )
+
+        }
+
+        companion object {
+
+            /**
+             * Generates a key for grouping operations by target URI: authority and path, with
+             * numeric path segments (row IDs) replaced by `#` and without query parameters.
+             *
+             * Example: `content://com.android.calendar/events/123?caller_is_syncadapter=true` → `com.android.calendar/events/#`
+             */
+            fun uriKey(uri: Uri): String {
+                val path = uri.pathSegments.joinToString("/") { segment ->
+                    if (segment.isNotEmpty() && segment.all { it.isDigit() }) "#" else segment
+                }
+                return "${uri.authority}/$path"
+            }
+
+        }
+
     }
 
 
     /**
      * Wrapper for [ContentProviderOperation.Builder] that allows to reset previously-set
      * value back references.
+     *
+     * Values are collected in a [ContentValues] object directly, so that they don't have to be
+     * copied into another map when the operation is built. Building doesn't modify the builder,
+     * so the same builder can be committed (and, if necessary, split) multiple times.
      */
     class CpoBuilder private constructor(
         val uri: Uri,
@@ -215,8 +332,13 @@ class BatchOperation(
         private var selection: String? = null
         private var selectionArguments: Array<String>? = null
 
-        internal val values = mutableMapOf<String, Any?>()
-        internal val valueBackrefs = mutableMapOf<String, BackReference>()
+        internal val values = ContentValues()
+
+        /** value back references (key → index of the referenced operation in the original, non-splitted transaction);
+         * only allocated when required because most operations don't have back references */
+        private var backrefs: ArrayMap<String, Int>? = null
+        internal val valueBackrefs: Map<String, Int>
+            get() = backrefs ?: emptyMap()
 
         private var yieldAllowed = false
 
@@ -228,18 +350,36 @@ class BatchOperation(
         }
 
         fun withValueBackReference(key: String, index: Int): CpoBuilder {
-            valueBackrefs[key] = BackReference(index)
+            val map = backrefs ?: ArrayMap<String, Int>(2).also { backrefs = it }
+            map[key] = index
             return this
         }
 
         fun removeValueBackReference(key: String): CpoBuilder {
-            if (valueBackrefs.remove(key) == null)
+            if (backrefs?.remove(key) == null)
                 throw IllegalArgumentException("$key was not set as value back reference")
             return this
         }
 
         fun withValue(key: String, value: Any?): CpoBuilder {
-            values[key] = value
+            when (value) {
+                null -> values.putNull(key)
+                is String -> values.put(key, value)
+                is Int -> values.put(key, value)
+                is Long -> values.put(key, value)
+                is Boolean -> values.put(key, value)
+                is Double -> values.put(key, value)
+                is Float -> values.put(key, value)
+                is Short -> values.put(key, value)
+                is Byte -> values.put(key, value)
+                is ByteArray -> values.put(key, value)
+                else -> throw IllegalArgumentException("Unsupported type for $key: ${value.javaClass.name}")
+            }
+            return this
+        }
+
+        fun withValues(values: ContentValues): CpoBuilder {
+            this.values.putAll(values)
             return this
         }
 
@@ -247,8 +387,40 @@ class BatchOperation(
             yieldAllowed = true
         }
 
+        /**
+         * Estimates the size of the values of this operation (key and value sizes; UTF-16 for strings).
+         * Only meant for statistics, doesn't take the real parcel format into account.
+         */
+        fun estimatedSize(): Int {
+            var size = 0
+            for (key in values.keySet()) {
+                size += 2*key.length
+                size += when (val value = values.get(key)) {
+                    null -> 0
+                    is CharSequence -> 2*value.length
+                    is ByteArray -> value.size
+                    else -> 8
+                }
+            }
+            size += 2*(selection?.length ?: 0)
+            selectionArguments?.forEach { size += 2*it.length }
+            return size
+        }
+
 
-        fun build(): ContentProviderOperation {
+        fun build(): ContentProviderOperation = build(0, null, false)
+
+        /**
+         * Builds the operation as part of a (possibly splitted) transaction.
+         *
+         * @param start         index of the first operation of the (splitted) transaction in the original transaction
+         * @param results       results of the operations of the original transaction which have already been run
+         * (required when a back reference points to an operation before [start])
+         * @param yieldAllowed  whether a yield point shall be set (in addition to [withYieldAllowed])
+         *
+         * @throws CalendarStorageException when a back reference points to an operation which didn't produce a valid result
+         */
+        internal fun build(start: Int, results: Array<ContentProviderResult?>?, yieldAllowed: Boolean): ContentProviderOperation {
             val builder = when (type) {
                 Type.INSERT -> ContentProviderOperation.newInsert(uri)
                 Type.UPDATE -> ContentProviderOperation.newUpdate(uri)
@@ -258,12 +430,24 @@ class BatchOperation(
             if (selection != null)
                 builder.withSelection(selection, selectionArguments)
 
-            for ((key, value) in values)
-                builder.withValue(key, value)
-            for ((key, backref) in valueBackrefs)
-                builder.withValueBackReference(key, backref.getIndex())
+            if (values.size() > 0)
+                builder.withValues(values)
+
+            backrefs?.let { backrefs ->
+                for (i in 0 until backrefs.size) {
+                    val key = backrefs.keyAt(i)
+                    val originalIdx = backrefs.valueAt(i)
+                    if (originalIdx < start) {
+                        // back reference is outside of the current batch, use result of previous execution directly
+                        val resultUri = results?.get(originalIdx)?.uri ?: throw CalendarStorageException("Referenced operation didn't produce a valid result")
+                        builder.withValue(key, ContentUris.parseId(resultUri))
+                    } else
+                        // back reference is in current batch, shift index
+                        builder.withValueBackReference(key, originalIdx - start)
+                }
+            }
 
-            if (yieldAllowed)
+            if (this.yieldAllowed || yieldAllowed)
                 builder.withYieldAllowed(true)
 
             return builder.build()
@@ -271,4 +455,4 @@ class BatchOperation(
 
     }
 
-}
\ No newline at end of file
+}
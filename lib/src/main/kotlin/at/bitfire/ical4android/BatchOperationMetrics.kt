@@ -0,0 +1,190 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android
+
+import java.io.StringWriter
+
+/**
+ * Default [BatchOperation.Listener] that aggregates the statistics of all commits, so that
+ * the host app can dump them into its diagnostics (for instance a debug info screen).
+ *
+ * Usage:
+ *
+ * ```
+ * val metrics = BatchOperationMetrics()
+ * BatchOperation.listener = metrics
+ * …
+ * metrics.dump(writer)
+ * ```
+ *
+ * All methods are thread-safe.
+ */
+class BatchOperationMetrics: BatchOperation.Listener {
+
+    /** number of commits (including failed ones) */
+    var commits = 0L
+        @Synchronized get
+        private set
+
+    /** number of failed commits */
+    var failedCommits = 0L
+        @Synchronized get
+        private set
+
+    /** total number of [android.os.TransactionTooLargeException] splits */
+    var splits = 0L
+        @Synchronized get
+        private set
+
+    /** total number of affected rows */
+    var rowsAffected = 0L
+        @Synchronized get
+        private set
+
+    /** total number of yield points */
+    var yieldPoints = 0L
+        @Synchronized get
+        private set
+
+    private val operationsByType = mutableMapOf<BatchOperation.CpoBuilder.Type, Long>()
+    private val operationsByUri = sortedMapOf<String, Long>()
+
+    /** histogram of the number of operations per commit */
+    val operationsPerCommit = Histogram(longArrayOf(1, 10, 50, 100, 500, 1000, 5000))
+
+    /** histogram of the estimated payload size per commit in bytes */
+    val payloadBytes = Histogram(longArrayOf(1024, 10*1024, 100*1024, 500*1024, 1024*1024))
+
+    /** histogram of the `applyBatch` wall time per chunk in milliseconds */
+    val chunkMillis = Histogram(longArrayOf(5, 10, 50, 100, 500, 1000, 5000))
+
+
+    @Synchronized
+    override fun onCommit(stats: BatchOperation.CommitStats) {
+        commits++
+        if (stats.error != null)
+            failedCommits++
+        splits += stats.splits
+        rowsAffected += stats.rowsAffected
+        yieldPoints += stats.yieldPoints.size
+
+        for ((type, count) in stats.operationsByType)
+            operationsByType[type] = (operationsByType[type] ?: 0) + count
+        for ((uri, count) in stats.operationsByUri)
+            operationsByUri[uri] = (operationsByUri[uri] ?: 0) + count
+
+        operationsPerCommit.add(stats.operations.toLong())
+        payloadBytes.add(stats.estimatedPayloadBytes)
+        for (chunk in stats.chunks)
+            chunkMillis.add(chunk.wallTimeNanos / 1_000_000)
+    }
+
+    /**
+     * Resets all counters and histograms.
+     */
+    @Synchronized
+    fun reset() {
+        commits = 0
+        failedCommits = 0
+        splits = 0
+        rowsAffected = 0
+        yieldPoints = 0
+        operationsByType.clear()
+        operationsByUri.clear()
+        operationsPerCommit.reset()
+        payloadBytes.reset()
+        chunkMillis.reset()
+    }
+
+    /**
+     * Writes a human-readable summary of the collected metrics.
+     *
+     * @param writer where the summary is written to
+     */
+    @Synchronized
+    fun dump(writer: Appendable) {
+        writer.append("BatchOperation metrics\n")
+        writer.append("Commits: $commits ($failedCommits failed), splits: $splits, rows affected: $rowsAffected, yield points: $yieldPoints\n")
+        writer.append("Operations by type: $operationsByType\n")
+        writer.append("Operations by URI:\n")
+        for ((uri, count) in operationsByUri)
+            writer.append("  $uri: $count\n")
+        writer.append("Operations per commit: $operationsPerCommit\n")
+        writer.append("Payload bytes per commit: $payloadBytes\n")
+        writer.append("applyBatch ms per chunk: $chunkMillis\n")
+    }
+
+    override fun toString() = StringWriter().also { dump(it) }.toString()
+
+
+    /**
+     * Simple histogram with fixed bucket bounds.
+     *
+     * @param bounds  upper bounds (inclusive) of the buckets, in ascending order; values that are larger
+     * than the last bound are counted in an additional overflow bucket
+     */
+    class Histogram(private val bounds: LongArray) {
+
+        private val counts = LongArray(bounds.size + 1)
+
+        var count = 0L
+            @Synchronized get
+            private set
+        var sum = 0L
+            @Synchronized get
+            private set
+        var max = 0L
+            @Synchronized get
+            private set
+
+        @Synchronized
+        fun add(value: Long) {
+            var idx = bounds.binarySearch(value)
+            if (idx < 0)
+                idx = -idx - 1      // insertion point = first bound > value
+            counts[idx]++
+
+            count++
+            sum += value
+            if (value > max)
+                max = value
+        }
+
+        /**
+         * @param idx  bucket index (`0..bounds.size`; `bounds.size` is the overflow bucket)
+         * @return number of values in the given bucket
+         */
+        @Synchronized
+        fun bucketCount(idx: Int) = counts[idx]
+
+        @Synchronized
+        fun reset() {
+            counts.fill(0)
+            count = 0
+            sum = 0
+            max = 0
+        }
+
+        @Synchronized
+        override fun toString(): String {
+            val sb = StringBuilder()
+            sb.append("n=$count, avg=${if (count > 0) sum / count else 0}, max=$max [")
+            for (i in counts.indices) {
+                if (i > 0)
+                    sb.append(", ")
+                if (i < bounds.size)
+                    sb.append("≤${bounds[i]}: ${counts[i]}")
+                else
+                    sb.append(">${bounds.last()}: ${counts[i]}")
+            }
+            sb.append("]")
+            return sb.toString()
+        }
+
+    }
+
+}
@@ -0,0 +1,215 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android
+
+import java.lang.ref.SoftReference
+import java.util.Locale
+
+/**
+ * Caching policy for data objects which have been loaded from a content provider and can be
+ * loaded again at any time, like the [Event]s of [AndroidEvent]s (see [AndroidCalendar.eventCache])
+ * and the [Task]s of [DmfsTask]s (see [DmfsTaskList.taskCache]).
+ *
+ * Every wrapper object (like an [AndroidEvent]) holds its loaded data object in a [Slot] of the
+ * cache of its collection. When the data object has been evicted from the slot, it's transparently
+ * loaded again on the next access.
+ *
+ * Data objects which have been set by the app (for instance with the constructor that takes
+ * an [Event]) are never evicted, because they can't be loaded again.
+ *
+ * Available policies:
+ *
+ * - [Strong]: data objects are held as long as the wrapper object (default),
+ * - [Soft]: data objects are held by [SoftReference]s, so that they can be garbage-collected when memory is low,
+ * - [Lru]: the data objects of all wrappers share a byte budget; the least recently used ones are evicted first.
+ */
+abstract class DataCache<T: Any> {
+
+    /** hit/load statistics of this cache */
+    val metrics = Metrics()
+
+    /**
+     * Creates a new (empty) slot for the data object of one wrapper object.
+     */
+    abstract fun newSlot(): Slot<T>
+
+
+    /**
+     * Holds the data object of one wrapper object.
+     */
+    interface Slot<T: Any> {
+
+        /**
+         * @return the data object; *null* if there's none (anymore)
+         */
+        fun get(): T?
+
+        /**
+         * Sets or clears the data object.
+         *
+         * @param value     data object; *null* to clear the slot
+         */
+        fun set(value: T?)
+
+    }
+
+
+    /**
+     * Holds data objects strongly (like a normal field).
+     */
+    class Strong<T: Any>: DataCache<T>() {
+
+        override fun newSlot() = object: Slot<T> {
+            private var value: T? = null
+            override fun get() = value
+            override fun set(value: T?) {
+                this.value = value
+            }
+        }
+
+    }
+
+    /**
+     * Holds data objects with [SoftReference]s, so that they're garbage-collected when memory is low.
+     */
+    class Soft<T: Any>: DataCache<T>() {
+
+        override fun newSlot() = object: Slot<T> {
+            private var ref: SoftReference<T>? = null
+            override fun get() = ref?.get()
+            override fun set(value: T?) {
+                ref = value?.let { SoftReference(it) }
+            }
+        }
+
+    }
+
+    /**
+     * Holds the data objects of all slots in one LRU list with a byte budget. When the (estimated)
+     * size of all data objects exceeds [maxBytes], the least recently used data objects are evicted.
+     *
+     * @param maxBytes  byte budget
+     * @param sizeOf    estimates the size of a data object in bytes (for instance [AndroidEvent.estimatedSize])
+     */
+    class Lru<T: Any>(
+        val maxBytes: Long,
+        private val sizeOf: (T) -> Long
+    ): DataCache<T>() {
+
+        private val entries = LinkedHashMap<Slot<T>, Pair<T, Long>>(16, .75f, true)
+
+        /** estimated size of all cached data objects in bytes */
+        var bytes = 0L
+            @Synchronized get
+            private set
+
+        /** number of cached data objects */
+        val size
+            @Synchronized get() = entries.size
+
+        override fun newSlot() = object: Slot<T> {
+            override fun get() = synchronized(this@Lru) {
+                entries[this]?.first
+            }
+            override fun set(value: T?) = synchronized(this@Lru) {
+                entries.remove(this)?.let { (_, size) -> bytes -= size }
+                if (value != null) {
+                    val size = sizeOf(value)
+                    entries[this] = Pair(value, size)
+                    bytes += size
+                    trim()
+                }
+            }
+        }
+
+        private fun trim() {
+            val iter = entries.values.iterator()
+            while (bytes > maxBytes && iter.hasNext()) {
+                bytes -= iter.next().second
+                iter.remove()
+                metrics.evicted()
+            }
+        }
+
+    }
+
+
+    /**
+     * Statistics of a [DataCache]. All methods are thread-safe.
+     */
+    class Metrics {
+
+        /** number of accesses that have been served from the cache */
+        var hits = 0L
+            @Synchronized get
+            private set
+
+        /** number of data objects that have been loaded from the content provider */
+        var loads = 0L
+            @Synchronized get
+            private set
+
+        /** number of data objects that have been loaded again because they had been evicted */
+        var reloads = 0L
+            @Synchronized get
+            private set
+
+        /** total time of all reloads in nanoseconds */
+        var reloadNanos = 0L
+            @Synchronized get
+            private set
+
+        /** number of data objects that have been evicted by an [Lru] cache */
+        var evictions = 0L
+            @Synchronized get
+            private set
+
+        /** ratio of [hits] to all accesses (0 if there were no accesses) */
+        val hitRate: Double
+            @Synchronized get() = if (hits + loads > 0) hits.toDouble() / (hits + loads) else 0.0
+
+        @Synchronized
+        fun hit() {
+            hits++
+        }
+
+        /**
+         * Records a load from the content provider.
+         *
+         * @param nanos     duration of the load in nanoseconds
+         * @param reload    whether the data object had been loaded before and was evicted
+         */
+        @Synchronized
+        fun loaded(nanos: Long, reload: Boolean) {
+            loads++
+            if (reload) {
+                reloads++
+                reloadNanos += nanos
+            }
+        }
+
+        @Synchronized
+        internal fun evicted() {
+            evictions++
+        }
+
+        @Synchronized
+        fun reset() {
+            hits = 0
+            loads = 0
+            reloads = 0
+            reloadNanos = 0
+            evictions = 0
+        }
+
+        @Synchronized
+        override fun toString() =
+            "hits=$hits, loads=$loads, reloads=$reloads (${reloadNanos / 1_000_000} ms), evictions=$evictions, hit rate=${"%.2f".format(Locale.ROOT, hitRate)}"
+
+    }
+
+}
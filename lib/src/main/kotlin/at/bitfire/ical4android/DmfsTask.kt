@@ -14,7 +14,8 @@ import androidx.annotation.CallSuper
 import at.bitfire.ical4android.BatchOperation.CpoBuilder
 import at.bitfire.ical4android.util.AndroidTimeUtils
 import at.bitfire.ical4android.util.DateUtils
-import at.bitfire.ical4android.util.MiscUtils.toValues
+import at.bitfire.ical4android.util.LogUtils.logLazy
+import at.bitfire.ical4android.util.RowReader
 import net.fortuna.ical4j.model.Date
 import net.fortuna.ical4j.model.DateTime
 import net.fortuna.ical4j.model.Parameter
@@ -71,6 +72,18 @@ abstract class DmfsTask(
         const val UNKNOWN_PROPERTY_DATA = Properties.DATA0
 
         val utcTimeZone by lazy { DateUtils.ical4jTimeZone(TimeZones.UTC_ID) }
+
+        /**
+         * Roughly estimates the memory used by a [Task], for instance for a [DataCache.Lru] with a byte budget.
+         *
+         * @param task  task to estimate
+         * @return estimated size in bytes
+         */
+        fun estimatedSize(task: Task): Long =
+            1024L +
+            2L * ((task.summary?.length ?: 0) + (task.location?.length ?: 0) + (task.description?.length ?: 0) + (task.comment?.length ?: 0)) +
+            256L * (task.alarms.size + task.categories.size + task.relatedTo.size + task.unknownProperties.size +
+                    task.rDates.size + task.exDates.size)
     }
 
     protected val logger = Logger.getLogger(javaClass.name)
@@ -87,10 +100,22 @@ abstract class DmfsTask(
     }
 
 
+    /** task that has been loaded from the task provider; held according to [DmfsTaskList.taskCache] */
+    private var cachedTask: DataCache.Slot<Task>? = null
+
     var task: Task? = null
+        set(value) {
+            field = value
+            cachedTask?.set(null)
+            cachedTask = null
+        }
         /**
          * This getter returns the full task data, either from [task] or, if [task] is null, by reading task
-         * number [id] from the task provider
+         * number [id] from the task provider.
+         *
+         * Tasks that have been read from the task provider are cached according to [DmfsTaskList.taskCache]
+         * and read again when they have been evicted.
+         *
          * @throws IllegalArgumentException if task has not been saved yet
          * @throws FileNotFoundException if there's no task with [id] in the task provider
          * @throws RemoteException on task provider errors
@@ -98,63 +123,121 @@ abstract class DmfsTask(
         get() {
             if (field != null)
                 return field
+            val cache = taskList.taskCache
+            cachedTask?.get()?.let { cached ->
+                cache.metrics.hit()
+                return cached
+            }
             val id = requireNotNull(id)
 
-            try {
-                val client = taskList.provider
-                client.query(taskSyncURI(true), null, null, null, null)?.use { cursor ->
-                    if (cursor.moveToFirst()) {
-                        // create new Task which will be populated
-                        val newTask = Task()
-                        field = newTask
-
-                        val values = cursor.toValues(true)
-                        logger.log(Level.FINER, "Found task", values)
-                        populateTask(values)
-
-                        if (values.containsKey(Properties.PROPERTY_ID)) {
-                            // process the first property, which is combined with the task row
-                            populateProperty(values)
-
-                            while (cursor.moveToNext()) {
-                                // process the other properties
-                                populateProperty(cursor.toValues(true))
-                            }
-                        }
+            val client = taskList.provider
+            val start = System.nanoTime()
+            val reload = cachedTask != null
+            client.query(taskSyncURI(true), null, null, null, null)?.use { cursor ->
+                if (cursor.moveToFirst()) {
+                    val reader = RowReader(cursor)
+                    val values = reader.toValues(true)
+                    val properties = mutableListOf<ContentValues>()
+                    if (values.containsKey(Properties.PROPERTY_ID)) {
+                        // the first property is combined with the task row
+                        properties += values
+                        while (cursor.moveToNext())
+                            properties += reader.toValues(true)
+                    }
 
-                        // Special case: parent_id set, but no matching parent Relation row (like given by aCalendar+)
-                        val relatedToList = newTask.relatedTo
-                        values.getAsLong(Tasks.PARENT_ID)?.let { parentId ->
-                            val hasParentRelation = relatedToList.any { relatedTo ->
-                                val relatedType = relatedTo.getParameter<RelType>(Parameter.RELTYPE)
-                                relatedType == RelType.PARENT || relatedType == null /* RelType.PARENT is the default value */
-                            }
-                            if (!hasParentRelation) {
-                                // get UID of parent task
-                                val parentContentUri = ContentUris.withAppendedId(taskList.tasksSyncUri(), parentId)
-                                client.query(parentContentUri, arrayOf(Tasks._UID), null, null, null)?.use { cursor ->
-                                    if (cursor.moveToNext()) {
-                                        // add RelatedTo for parent task
-                                        relatedToList += RelatedTo(cursor.getString(0))
-                                    }
-                                }
-                            }
-                        }
+                    val newTask = populate(values, properties)
 
-                        field = newTask
-                        return newTask
+                    // Special case: parent_id set, but no matching parent Relation row (like given by aCalendar+).
+                    // If this throws, the task hasn't been cached, so the exception will be thrown again on the next get() call.
+                    parentIdWithoutRelation(newTask, values)?.let { parentId ->
+                        // get UID of parent task
+                        val parentContentUri = ContentUris.withAppendedId(taskList.tasksSyncUri(), parentId)
+                        client.query(parentContentUri, arrayOf(Tasks._UID), null, null, null)?.use { cursor ->
+                            if (cursor.moveToNext())
+                                addParentRelation(newTask, cursor.getString(0))
+                        }
                     }
+
+                    cacheLoaded(newTask)
+                    cache.metrics.loaded(System.nanoTime() - start, reload)
+                    return newTask
                 }
-            } catch (e: Exception) {
-                /* Populating event has been interrupted by an exception, so we reset the event to
-                avoid an inconsistent state. This also ensures that the exception will be thrown
-                again on the next get() call. */
-                field = null
-                throw e
             }
             throw FileNotFoundException("Couldn't find task #$id")
         }
 
+    /**
+     * Populates a new task from already loaded rows. The task is not cached yet, so that it can be completed
+     * (see [addParentRelation]) before it's passed to [cacheLoaded] – once it's cached, it may be evicted
+     * at any time and [task] would load it again.
+     *
+     * @param values        task row
+     * @param properties    property rows of the task (as returned by a query with [org.dmfs.tasks.contract.TaskContract.LOAD_PROPERTIES])
+     *
+     * @return the populated task
+     */
+    internal fun populate(values: ContentValues, properties: List<ContentValues>): Task {
+        // create new Task which will be populated
+        val newTask = Task()
+        task = newTask
+
+        try {
+            logger.log(Level.FINER, "Found task", values)
+            populateTask(values)
+
+            for (property in properties)
+                populateProperty(property)
+        } catch (e: Exception) {
+            /* Populating task has been interrupted by an exception, so we reset the task to
+            avoid an inconsistent state. This also ensures that the exception will be thrown
+            again on the next get() call. */
+            task = null
+            throw e
+        }
+
+        task = null
+        return newTask
+    }
+
+    /**
+     * Stores a task that has been loaded by [populate] as [task]. Loaded tasks can be read again,
+     * so they're held according to [DmfsTaskList.taskCache] and may be evicted.
+     *
+     * @param loaded    completely populated task
+     */
+    internal fun cacheLoaded(loaded: Task) {
+        task = null
+        val slot = taskList.taskCache.newSlot().also { cachedTask = it }
+        slot.set(loaded)
+    }
+
+    /**
+     * Checks whether the task has a [Tasks.PARENT_ID], but no matching parent relation (like given by aCalendar+).
+     * In this case, the relation has to be added with [addParentRelation] as soon as the UID of the parent is known.
+     *
+     * @param loaded    task that has been populated from [values]
+     * @param values    task row
+     * @return parent task ID if there's no parent relation yet; *null* otherwise
+     */
+    internal fun parentIdWithoutRelation(loaded: Task, values: ContentValues): Long? {
+        val parentId = values.getAsLong(Tasks.PARENT_ID) ?: return null
+        val hasParentRelation = loaded.relatedTo.any { relatedTo ->
+            val relatedType = relatedTo.getParameter<RelType>(Parameter.RELTYPE)
+            relatedType == RelType.PARENT || relatedType == null /* RelType.PARENT is the default value */
+        }
+        return if (hasParentRelation) null else parentId
+    }
+
+    /**
+     * Adds a RELATED-TO for the parent task.
+     *
+     * @param loaded        task that has been populated by [populate] (and not cached yet)
+     * @param parentUid     UID of the parent task
+     */
+    internal fun addParentRelation(loaded: Task, parentUid: String) {
+        loaded.relatedTo += RelatedTo(parentUid)
+    }
+
     @CallSuper
     protected open fun populateTask(values: ContentValues) {
         val task = requireNotNull(task)
@@ -345,6 +428,7 @@ abstract class DmfsTask(
 
         val resultUri = batch.getResult(0)?.uri ?: throw CalendarStorageException("Empty result from provider when adding a task")
         id = ContentUris.parseId(resultUri)
+        taskList.syncIndex?.put(id!!, builder.values)
         return resultUri
     }
 
@@ -369,6 +453,7 @@ abstract class DmfsTask(
         insertProperties(batch, null)
 
         batch.commit()
+        taskList.syncIndex?.put(existingId, builder.values)
         return ContentUris.withAppendedId(Tasks.getContentUri(taskList.providerName.authority), existingId)
     }
 
@@ -411,7 +496,7 @@ abstract class DmfsTask(
                     .withValue(Alarm.MESSAGE, alarm.description?.value ?: alarm.summary)
                     .withValue(Alarm.ALARM_TYPE, alarmType)
 
-            logger.log(Level.FINE, "Inserting alarm", builder.build())
+            logger.logLazy(Level.FINE, "Inserting alarm") { builder.build() }
             batch.enqueue(builder)
         }
     }
@@ -422,7 +507,7 @@ abstract class DmfsTask(
                     .withTaskId(Category.TASK_ID, idxTask)
                     .withValue(Category.MIMETYPE, Category.CONTENT_ITEM_TYPE)
                     .withValue(Category.CATEGORY_NAME, category)
-            logger.log(Level.FINE, "Inserting category", builder.build())
+            logger.logLazy(Level.FINE, "Inserting category") { builder.build() }
             batch.enqueue(builder)
         }
     }
@@ -433,7 +518,7 @@ abstract class DmfsTask(
             .withTaskId(Comment.TASK_ID, idxTask)
             .withValue(Comment.MIMETYPE, Comment.CONTENT_ITEM_TYPE)
             .withValue(Comment.COMMENT, comment)
-        logger.log(Level.FINE, "Inserting comment", builder.build())
+        logger.logLazy(Level.FINE, "Inserting comment") { builder.build() }
         batch.enqueue(builder)
     }
 
@@ -452,7 +537,7 @@ abstract class DmfsTask(
                     .withValue(Relation.MIMETYPE, Relation.CONTENT_ITEM_TYPE)
                     .withValue(Relation.RELATED_UID, relatedTo.value)
                     .withValue(Relation.RELATED_TYPE, relType)
-            logger.log(Level.FINE, "Inserting relation", builder.build())
+            logger.logLazy(Level.FINE, "Inserting relation") { builder.build() }
             batch.enqueue(builder)
         }
     }
@@ -468,13 +553,15 @@ abstract class DmfsTask(
                     .withTaskId(Properties.TASK_ID, idxTask)
                     .withValue(Properties.MIMETYPE, UnknownProperty.CONTENT_ITEM_TYPE)
                     .withValue(UNKNOWN_PROPERTY_DATA, UnknownProperty.toJsonString(property))
-            logger.log(Level.FINE, "Inserting unknown property", builder.build())
+            logger.logLazy(Level.FINE, "Inserting unknown property") { builder.build() }
             batch.enqueue(builder)
         }
     }
 
     fun delete(): Int {
-        return taskList.provider.delete(taskSyncURI(), null, null)
+        return taskList.provider.delete(taskSyncURI(), null, null).also {
+            id?.let { taskList.syncIndex?.remove(it) }
+        }
     }
 
     @CallSuper
@@ -559,7 +646,7 @@ abstract class DmfsTask(
                             null
                         else
                             AndroidTimeUtils.recurrenceSetsToOpenTasksString(task.exDates, if (allDay) null else getTimeZone()))
-        logger.log(Level.FINE, "Built task object", builder.build())
+        logger.logLazy(Level.FINE, "Built task object") { builder.build() }
     }
 
 
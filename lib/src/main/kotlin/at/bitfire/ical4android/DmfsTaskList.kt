@@ -13,7 +13,10 @@ import android.content.ContentValues
 import android.net.Uri
 import androidx.annotation.CallSuper
 import at.bitfire.ical4android.util.MiscUtils.asSyncAdapter
+import at.bitfire.ical4android.util.MiscUtils.queryIn
 import at.bitfire.ical4android.util.MiscUtils.toValues
+import at.bitfire.ical4android.util.PagedQuery
+import at.bitfire.ical4android.util.RowReader
 import org.dmfs.tasks.contract.TaskContract
 import org.dmfs.tasks.contract.TaskContract.Property.Relation
 import org.dmfs.tasks.contract.TaskContract.TaskLists
@@ -41,6 +44,9 @@ abstract class DmfsTaskList<out T : DmfsTask>(
         private val logger
             get() = Logger.getLogger(DmfsTaskList::class.java.name)
 
+        /** Default number of rows per page for [queryChanges]. */
+        const val QUERY_CHANGES_PAGE_SIZE = 250
+
         fun create(account: Account, provider: ContentProviderClient, providerName: TaskProvider.ProviderName, info: ContentValues): Uri {
             info.put(TaskContract.ACCOUNT_NAME, account.name)
             info.put(TaskContract.ACCOUNT_TYPE, account.type)
@@ -109,6 +115,18 @@ abstract class DmfsTaskList<out T : DmfsTask>(
     var isSynced = false
     var isVisible = false
 
+    /**
+     * Index of the tasks of this task list (see [loadSyncIndex]). When set, it's updated when
+     * tasks are added, updated or deleted by [DmfsTask].
+     */
+    var syncIndex: SyncIndex? = null
+
+    /**
+     * Caching policy for the [Task]s that are loaded by the [DmfsTask]s of this task list
+     * (see [DmfsTask.task]). Should be set before tasks are queried.
+     */
+    var taskCache: DataCache<Task> = DataCache.Strong()
+
 
     /**
      * Sets the task list properties ([syncId], [name] etc.) from the passed argument,
@@ -206,15 +224,184 @@ abstract class DmfsTaskList<out T : DmfsTask>(
             null,
             where, whereArgs, null
         )?.use { cursor ->
+            val reader = RowReader(cursor)
             while (cursor.moveToNext())
-                tasks += taskFactory.fromProvider(this, cursor.toValues())
+                tasks += taskFactory.fromProvider(this, reader.toValues())
         }
         return tasks
     }
 
+    /**
+     * Queries tasks from this task list lazily, page by page (see [PagedQuery]). Adds a WHERE clause
+     * that restricts the query to [Tasks.LIST_ID] = [id].
+     *
+     * In contrast to [queryTasks], only the requested columns are queried and only one page of rows
+     * is held in memory at a time.
+     *
+     * @param projection    columns to query (*null* for all columns); [Tasks._ID] is always queried.
+     * Passed to [DmfsTaskFactory.fromProvider], so it must contain all columns the factory needs.
+     * @param _where        selection
+     * @param _whereArgs    arguments for selection
+     * @param pageSize      number of rows per page
+     *
+     * @return lazy sequence of tasks from this task list which match the selection
+     */
+    fun queryTasks(projection: Array<String>?, _where: String?, _whereArgs: Array<String>?, pageSize: Int): Sequence<T> {
+        val where = "(${_where ?: "1"}) AND ${Tasks.LIST_ID}=?"
+        val whereArgs = (_whereArgs ?: arrayOf()) + id.toString()
+
+        return PagedQuery(provider, tasksSyncUri(), projection, Tasks._ID, where, whereArgs, pageSize) { values ->
+            taskFactory.fromProvider(this, values)
+        }
+    }
+
+    /**
+     * Enumerates the locally changed tasks of this task list (the change set for uploading) lazily,
+     * page by page (see [PagedQuery]). Only [Tasks._ID], [Tasks._DIRTY], [Tasks._DELETED], the file name column
+     * and the columns of [projection] are queried; the full task is only loaded when [LocalChange.resource]
+     * is accessed.
+     *
+     * Tasks without file name are [LocalChange.Type.NEW] (unless they're deleted).
+     *
+     * @param projection        additional columns to query for the descriptors (for instance the ETag column)
+     * @param fileNameColumn    column with the file name (*null*: tasks are never [LocalChange.Type.NEW])
+     * @param pageSize          number of rows per page
+     *
+     * @return lazy sequence of changes
+     */
+    fun queryChanges(projection: Array<String>? = null, fileNameColumn: String? = Tasks._SYNC_ID, pageSize: Int = QUERY_CHANGES_PAGE_SIZE): Sequence<LocalChange<T>> {
+        val changeProjection = (listOfNotNull(Tasks._ID, Tasks._DIRTY, Tasks._DELETED, fileNameColumn) + projection.orEmpty())
+            .distinct().toTypedArray()
+        return PagedQuery(provider, tasksSyncUri(), changeProjection, Tasks._ID,
+            "${Tasks.LIST_ID}=? AND (${Tasks._DIRTY} OR ${Tasks._DELETED})", arrayOf(id.toString()), pageSize
+        ) { row ->
+            LocalChange(LocalChange.typeOf(row, Tasks._DELETED, fileNameColumn), row.getAsLong(Tasks._ID), row) { id ->
+                queryTasks("${Tasks._ID}=?", arrayOf(id.toString())).firstOrNull()
+            }
+        }
+    }
+
     fun findById(id: Long) = queryTasks("${Tasks._ID}=?", arrayOf(id.toString())).firstOrNull()
         ?: throw FileNotFoundException()
 
+    /**
+     * Loads tasks from this task list together with their properties, like [queryTasks] followed
+     * by [DmfsTask.task] for every task.
+     *
+     * However, instead of one or two queries per task, the tasks and properties are read in a single
+     * [TaskContract.LOAD_PROPERTIES] query (ordered by task ID), and the UIDs of parent tasks (for tasks with
+     * [Tasks.PARENT_ID], but without parent relation) are taken from an in-memory ID → UID map that is built
+     * in the same pass. Only parent tasks that don't match the selection are queried afterwards (in one query).
+     *
+     * Tasks whose parent UID is not known yet when they're read are passed to [callback] after the scan.
+     * Tasks which can't be populated are logged and passed to [callback] without data, so that the
+     * error is thrown again when [DmfsTask.task] is accessed (like without bulk loading).
+     *
+     * @param _where      selection (see [queryTasks])
+     * @param _whereArgs  arguments for selection
+     * @param callback    called for every task; [DmfsTask.task] is already populated
+     */
+    fun loadTasks(_where: String? = null, _whereArgs: Array<String>? = null, callback: (T) -> Unit) {
+        val where = "(${_where ?: "1"}) AND ${Tasks.LIST_ID}=?"
+        val whereArgs = (_whereArgs ?: arrayOf()) + id.toString()
+
+        val uids = HashMap<Long, String>()
+        // populated (not yet cached) tasks with the ID of their parent
+        val waitingForParent = mutableListOf<Triple<T, Task, Long>>()
+
+        fun processTask(rows: List<ContentValues>) {
+            val values = rows.first()
+            val taskId = values.getAsLong(Tasks._ID)
+            values.getAsString(Tasks._UID)?.let { uid ->
+                uids[taskId] = uid
+            }
+
+            val task = taskFactory.fromProvider(this, values)
+            try {
+                val loaded = task.populate(values, if (values.containsKey(TaskContract.Properties.PROPERTY_ID)) rows else emptyList())
+
+                val parentId = task.parentIdWithoutRelation(loaded, values)
+                if (parentId != null) {
+                    val parentUid = uids[parentId]
+                    if (parentUid == null) {
+                        // parent task hasn't been read yet
+                        waitingForParent += Triple(task, loaded, parentId)
+                        return
+                    }
+                    task.addParentRelation(loaded, parentUid)
+                }
+                task.cacheLoaded(loaded)
+            } catch (e: Exception) {
+                logger.log(Level.WARNING, "Couldn't load task #$taskId", e)
+            }
+            callback(task)
+        }
+
+        provider.query(tasksSyncUri(true), null, where, whereArgs, Tasks._ID)?.use { cursor ->
+            // rows of the current task (task row combined with one property per row)
+            val rows = mutableListOf<ContentValues>()
+            val reader = RowReader(cursor)
+            var currentId: Long? = null
+            while (cursor.moveToNext()) {
+                val taskId = reader.getLong(Tasks._ID)
+                if (rows.isNotEmpty() && taskId != currentId) {
+                    processTask(rows)
+                    rows.clear()
+                }
+                currentId = taskId
+                rows += reader.toValues(true)
+            }
+            if (rows.isNotEmpty())
+                processTask(rows)
+        }
+
+        if (waitingForParent.isNotEmpty()) {
+            // query UIDs of parent tasks which have not been read (because they don't match the selection)
+            val missingIds = waitingForParent.map { it.third }.filterNot { uids.containsKey(it) }.toSet()
+            if (missingIds.isNotEmpty())
+                for (row in provider.queryIn(tasksSyncUri(), arrayOf(Tasks._ID, Tasks._UID), Tasks._ID, missingIds))
+                    row.getAsString(Tasks._UID)?.let { uid ->
+                        uids[row.getAsLong(Tasks._ID)] = uid
+                    }
+
+            for ((task, loaded, parentId) in waitingForParent) {
+                uids[parentId]?.let { parentUid ->
+                    task.addParentRelation(loaded, parentUid)
+                }
+                task.cacheLoaded(loaded)
+                callback(task)
+            }
+        }
+    }
+
+
+    /**
+     * Loads a [SyncIndex] of the tasks of this task list with one query and sets it as [syncIndex],
+     * so that it's maintained by [DmfsTask.add], [DmfsTask.update] and [DmfsTask.delete].
+     *
+     * The tasks provider has no dedicated columns for the file name, ETag and flags, so the
+     * columns the sync adapter uses for them have to be passed.
+     *
+     * @param fileNameColumn    column with the file name (*null* if not used)
+     * @param eTagColumn        column with the ETag (*null* if not used)
+     * @param flagsColumn       column with the sync flags (*null* if not used)
+     *
+     * @return the loaded index
+     */
+    fun loadSyncIndex(fileNameColumn: String? = Tasks._SYNC_ID, eTagColumn: String? = null, flagsColumn: String? = null): SyncIndex {
+        val columns = SyncIndex.Columns(
+            id = Tasks._ID,
+            uid = Tasks._UID,
+            fileName = fileNameColumn,
+            eTag = eTagColumn,
+            dirty = Tasks._DIRTY,
+            deleted = Tasks._DELETED,
+            flags = flagsColumn
+        )
+        return SyncIndex.load(provider, tasksSyncUri(), columns, "${Tasks.LIST_ID}=?", arrayOf(id.toString()))
+            .also { syncIndex = it }
+    }
+
 
     fun taskListSyncUri() =
         ContentUris.withAppendedId(TaskLists.getContentUri(providerName.authority), id).asSyncAdapter(account)
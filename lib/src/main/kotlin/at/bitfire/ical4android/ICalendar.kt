@@ -7,6 +7,7 @@
 package at.bitfire.ical4android
 
 import at.bitfire.ical4android.ICalendar.Companion.CALENDAR_NAME
+import at.bitfire.ical4android.util.TimeZoneInternTable
 import at.bitfire.ical4android.validation.ICalPreprocessor
 import net.fortuna.ical4j.data.CalendarBuilder
 import net.fortuna.ical4j.data.CalendarParserFactory
@@ -109,6 +110,13 @@ open class ICalendar {
                 logger.log(Level.WARNING, "Couldn't pre-process iCalendar", e)
             }
 
+            // share TZID parameters and time zones between the date properties
+            try {
+                TimeZoneInternTable().intern(calendar)
+            } catch (e: Exception) {
+                logger.log(Level.WARNING, "Couldn't intern time zones", e)
+            }
+
             // fill calendar properties
             properties?.let {
                 calendar.getProperty<Property>(CALENDAR_NAME)?.let { calName ->
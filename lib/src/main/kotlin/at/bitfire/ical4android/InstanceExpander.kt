@@ -0,0 +1,411 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android
+
+import at.bitfire.ical4android.util.TimeApiExtensions.requireZoneId
+import at.bitfire.ical4android.util.TimeApiExtensions.toLocalDate
+import at.bitfire.ical4android.util.ZoneOffsets
+import net.fortuna.ical4j.model.Date
+import net.fortuna.ical4j.model.DateTime
+import net.fortuna.ical4j.model.Recur
+import net.fortuna.ical4j.model.parameter.Value
+import net.fortuna.ical4j.model.property.DateListProperty
+import net.fortuna.ical4j.model.property.RDate
+import net.fortuna.ical4j.model.property.Status
+import java.time.Duration
+import java.time.LocalDate
+import java.time.Period
+import java.time.ZoneId
+import java.time.ZoneOffset
+import java.time.temporal.TemporalAmount
+import java.util.logging.Level
+import java.util.logging.Logger
+
+/**
+ * Expands an [Event] (with its [Event.rRules], [Event.rDates], [Event.exRules], [Event.exDates]
+ * and [Event.exceptions]) into its concrete instances within a time window.
+ *
+ * Times are handled like in [AndroidEvent]:
+ *
+ * - all-day events (DTSTART is a DATE) have their instances at UTC midnight,
+ * - other events are expanded in the time zone of DTSTART (floating times in the system default time zone),
+ * so that instances keep their local time across DST changes,
+ * - RDATE/EXDATE/RECURRENCE-ID values of the other type (DATE vs. DATE-TIME) are converted to the
+ * type of DTSTART (DATE values get the time of DTSTART; DATE-TIME values are cut to their date).
+ *
+ * The rules of the event are compiled on first use and then cached by the expander, so one expander
+ * should be used for all queries of an event. Simple rules (FREQ=DAILY/WEEKLY/MONTHLY/YEARLY with
+ * INTERVAL, COUNT and UNTIL, but without BYxxx parts) are calculated directly, so that the instances
+ * of a window are found without iterating over the instances before the window. Other rules are
+ * expanded with ical4j, but only for the requested window. When the event is modified,
+ * [invalidate] has to be called.
+ *
+ * @param event     main event (with exceptions) to expand
+ */
+class InstanceExpander(
+    val event: Event
+) {
+
+    companion object {
+
+        private val logger
+            get() = Logger.getLogger(InstanceExpander::class.java.name)
+
+        private const val MILLIS_PER_DAY = ZoneOffsets.MILLIS_PER_DAY
+
+    }
+
+    /**
+     * Concrete instance of an event.
+     *
+     * @param start         start of the instance (UTC epoch milliseconds; all-day events: UTC midnight)
+     * @param end           end of the instance (exclusive)
+     * @param originalStart start of the instance according to the recurrence rules (= RECURRENCE-ID for exceptions)
+     * @param allDay        whether the instance is an all-day instance
+     * @param event         event that describes the instance (main event or exception from [Event.exceptions])
+     */
+    data class Instance(
+        val start: Long,
+        val end: Long,
+        val originalStart: Long,
+        val allDay: Boolean,
+        val event: Event
+    )
+
+
+    private var compiled: Compiled? = null
+
+    /**
+     * Discards the compiled rules. Must be called when the event has been modified.
+     */
+    @Synchronized
+    fun invalidate() {
+        compiled = null
+    }
+
+    @Synchronized
+    private fun compiled(): Compiled? =
+        compiled ?: compile()?.also { compiled = it }
+
+
+    /**
+     * Iterates lazily over the instances that overlap with the given window, ordered by start.
+     *
+     * @param windowStart   start of the window (UTC epoch milliseconds, inclusive)
+     * @param windowEnd     end of the window (UTC epoch milliseconds, exclusive)
+     *
+     * @return instances within the window (empty if the event doesn't have a start time)
+     */
+    fun instances(windowStart: Long, windowEnd: Long): Sequence<Instance> {
+        val c = compiled() ?: return emptySequence()
+        val from = windowStart - c.maxLength
+
+        val excluded = HashSet<Long>(c.exDates)
+        for (exRule in c.exRules)
+            exRule.occurrences(from, windowEnd).forEach { excluded += it }
+
+        val starts = mergeSorted(
+            c.rRules.map { it.occurrences(from, windowEnd).iterator() } +
+            c.rDates.asSequence().filter { it in from until windowEnd }.iterator()
+        )
+        val mainInstances = starts.asSequence()
+            .filter { it !in excluded && it !in c.overridden }
+            .map { start -> Instance(start, c.endOf(start), start, c.allDay, event) }
+            .filter { overlaps(it, windowStart, windowEnd) }
+        val exceptionInstances = c.exceptions.asSequence()
+            .filter { overlaps(it, windowStart, windowEnd) }
+
+        return mergeInstances(mainInstances.iterator(), exceptionInstances.iterator()).asSequence()
+    }
+
+
+    private fun overlaps(instance: Instance, windowStart: Long, windowEnd: Long) =
+        instance.start < windowEnd && (instance.end > windowStart || (instance.end == instance.start && instance.start >= windowStart))
+
+    private fun compile(): Compiled? {
+        val dtStart = event.dtStart?.date ?: return null
+        val allDay = dtStart !is DateTime
+        val zone: ZoneId = if (dtStart is DateTime) dtStart.requireZoneId() else ZoneOffset.UTC
+        val startUtc = if (dtStart is DateTime) dtStart.time else utcMidnight(dtStart)
+        val startLocal = ZoneOffsets.toLocalMillis(zone, startUtc)
+
+        // converts RDATE/EXDATE/RECURRENCE-ID values to the type of DTSTART
+        fun normalize(date: Date): Long =
+            if (allDay)
+                utcMidnight(date)
+            else if (date is DateTime)
+                date.time
+            else
+                ZoneOffsets.toUtcMillis(zone, ZoneOffsets.localMillis(date.toLocalDate(), ZoneOffsets.millisOfDay(startLocal)))
+
+        fun dates(properties: List<DateListProperty>): List<Long> =
+            properties.flatMap { property ->
+                if (property is RDate && property.periods.isNotEmpty())
+                    property.periods.map { normalize(it.start) }
+                else
+                    property.dates.map { normalize(it) }
+            }
+
+        val length = length(event, allDay) ?: if (allDay) Period.ofDays(1) else Duration.ZERO
+        val base = Compiled(allDay, zone, length)
+
+        base.rRules += Rule.Single(startUtc)      // DTSTART is always the first instance
+        base.rRules += event.rRules.map { compileRule(it.recur, zone, startLocal, allDay, dtStart) }
+        base.exRules += event.exRules.map { compileRule(it.recur, zone, startLocal, allDay, dtStart) }
+        base.rDates += dates(event.rDates).sorted()
+        base.exDates += dates(event.exDates)
+
+        for (exception in event.exceptions) {
+            val recurrenceId = exception.recurrenceId?.date ?: continue
+            val originalStart = normalize(recurrenceId)
+            base.overridden += originalStart
+            if (exception.status == Status.VEVENT_CANCELLED)
+                continue
+
+            val exStart = exception.dtStart?.date
+            val exAllDay = if (exStart != null) exStart !is DateTime else allDay
+            val start = when {
+                exStart == null -> originalStart
+                exStart is DateTime -> exStart.time
+                else -> utcMidnight(exStart)
+            }
+            val exZone = if (exStart is DateTime) exStart.requireZoneId() else if (exStart == null) zone else ZoneOffset.UTC
+            val exLength = length(exception, exAllDay) ?: if (exStart == null) length else if (exAllDay) Period.ofDays(1) else Duration.ZERO
+            base.exceptions += Instance(start, endOf(exZone, start, exLength), originalStart, exAllDay, exception)
+        }
+        base.exceptions.sortBy { it.start }
+        return base
+    }
+
+    private fun compileRule(recur: Recur, zone: ZoneId, startLocal: Long, allDay: Boolean, seed: Date): Rule {
+        val simple = recur.frequency in arrayOf(Recur.Frequency.DAILY, Recur.Frequency.WEEKLY, Recur.Frequency.MONTHLY, Recur.Frequency.YEARLY) &&
+                recur.dayList.isEmpty() && recur.monthDayList.isEmpty() && recur.yearDayList.isEmpty() &&
+                recur.weekNoList.isEmpty() && recur.monthList.isEmpty() && recur.hourList.isEmpty() &&
+                recur.minuteList.isEmpty() && recur.secondList.isEmpty() && recur.setPosList.isEmpty()
+        if (simple) {
+            val startDate = ZoneOffsets.toLocalDate(startLocal)
+            // months without the day (like February 30th) are skipped by RFC 5545, so these can't be calculated directly
+            val skipsMonths = (recur.frequency == Recur.Frequency.MONTHLY && startDate.dayOfMonth > 28) ||
+                    (recur.frequency == Recur.Frequency.YEARLY && startDate.monthValue == 2 && startDate.dayOfMonth == 29)
+            if (!skipsMonths)
+                return Rule.Simple(recur, zone, startLocal)
+        }
+        return Rule.Ical4j(recur, seed, allDay)
+    }
+
+    /**
+     * @return length of the event from DTEND or DURATION; *null* if it has neither
+     */
+    private fun length(event: Event, allDay: Boolean): TemporalAmount? {
+        val dtStart = event.dtStart?.date ?: return null
+        event.dtEnd?.date?.let { dtEnd ->
+            return if (allDay)
+                Period.ofDays((ZoneOffsets.epochDay(utcMidnight(dtEnd)) - ZoneOffsets.epochDay(utcMidnight(dtStart))).toInt())
+            else
+                Duration.ofMillis(dtEnd.time - dtStart.time)
+        }
+        return event.duration?.duration
+    }
+
+    /**
+     * @return UTC midnight of the (local) date of a DATE or DATE-TIME value (like all-day events are stored by [AndroidEvent])
+     */
+    private fun utcMidnight(date: Date): Long =
+        // extensions are resolved statically: the DateTime overload takes the date in the DATE-TIME's own time zone
+        ZoneOffsets.localMillis((date as? DateTime)?.toLocalDate() ?: date.toLocalDate(), 0)
+
+    private fun endOf(zone: ZoneId, start: Long, length: TemporalAmount): Long =
+        when (length) {
+            is Duration -> start + length.toMillis()
+            is Period -> {
+                val startLocal = ZoneOffsets.toLocalMillis(zone, start)
+                val endDate = ZoneOffsets.toLocalDate(startLocal) + length
+                ZoneOffsets.toUtcMillis(zone, ZoneOffsets.localMillis(endDate, ZoneOffsets.millisOfDay(startLocal)))
+            }
+            else -> start + Duration.from(length).toMillis()
+        }
+
+    private fun mergeSorted(iterators: List<Iterator<Long>>): Iterator<Long> = object: Iterator<Long> {
+        val heads = arrayOfNulls<Long>(iterators.size)
+
+        init {
+            for (i in iterators.indices)
+                heads[i] = if (iterators[i].hasNext()) iterators[i].next() else null
+        }
+
+        fun advance(): Long? {
+            var min: Long? = null
+            for (head in heads)
+                if (head != null && (min == null || head < min))
+                    min = head
+            if (min != null)
+                for (i in heads.indices)
+                    while (heads[i] == min)         // also skips duplicates
+                        heads[i] = if (iterators[i].hasNext()) iterators[i].next() else null
+            return min
+        }
+
+        var next: Long? = advance()
+
+        override fun hasNext() = next != null
+        override fun next(): Long {
+            val result = next ?: throw NoSuchElementException()
+            next = advance()
+            return result
+        }
+    }
+
+    private fun mergeInstances(a: Iterator<Instance>, b: Iterator<Instance>): Iterator<Instance> = object: Iterator<Instance> {
+        var nextA: Instance? = if (a.hasNext()) a.next() else null
+        var nextB: Instance? = if (b.hasNext()) b.next() else null
+
+        override fun hasNext() = nextA != null || nextB != null
+        override fun next(): Instance {
+            val currentA = nextA
+            val currentB = nextB
+            return if (currentB == null || (currentA != null && currentA.start <= currentB.start)) {
+                nextA = if (a.hasNext()) a.next() else null
+                currentA ?: throw NoSuchElementException()
+            } else {
+                nextB = if (b.hasNext()) b.next() else null
+                currentB
+            }
+        }
+    }
+
+
+    /**
+     * Compiled event: rules, dates and exceptions in UTC epoch milliseconds.
+     */
+    private inner class Compiled(
+        val allDay: Boolean,
+        val zone: ZoneId,
+        val length: TemporalAmount
+    ) {
+        val rRules = mutableListOf<Rule>()
+        val exRules = mutableListOf<Rule>()
+        val rDates = mutableListOf<Long>()
+        val exDates = HashSet<Long>()
+        val overridden = HashSet<Long>()
+        val exceptions = mutableListOf<Instance>()
+
+        /** maximum length of an instance (so that instances which start before a window but overlap it are found) */
+        val maxLength: Long = when (length) {
+            is Period -> (length.years * 366L + length.months * 31L + length.days + 1) * MILLIS_PER_DAY
+            else -> Duration.from(length).toMillis() + 1
+        }.coerceAtLeast(MILLIS_PER_DAY)
+
+        fun endOf(start: Long) = endOf(zone, start, length)
+    }
+
+    /**
+     * Compiled recurrence rule.
+     */
+    private sealed class Rule {
+
+        /**
+         * @return starts of the occurrences (UTC epoch milliseconds, ascending) in the range
+         */
+        abstract fun occurrences(from: Long, to: Long): Sequence<Long>
+
+        /** single occurrence (DTSTART) */
+        class Single(val start: Long): Rule() {
+            override fun occurrences(from: Long, to: Long) =
+                if (start in from until to) sequenceOf(start) else emptySequence()
+        }
+
+        /**
+         * Rule without BYxxx parts: the n-th occurrence is DTSTART + n × INTERVAL units (in local time),
+         * so the first occurrence of a range can be calculated directly.
+         */
+        class Simple(
+            recur: Recur,
+            private val zone: ZoneId,
+            startLocal: Long
+        ): Rule() {
+
+            private val frequency = recur.frequency
+            private val interval = recur.interval.coerceAtLeast(1)
+            private val count = recur.count.takeIf { it > 0 }
+            private val startDate = ZoneOffsets.toLocalDate(startLocal)
+            private val startMillisOfDay = ZoneOffsets.millisOfDay(startLocal)
+
+            /** UNTIL as UTC epoch milliseconds (DATE-TIME) */
+            private val untilUtc: Long? = (recur.until as? DateTime)?.time
+
+            /** UNTIL as local date (DATE) */
+            private val untilDate: LocalDate? = recur.until?.takeIf { it !is DateTime }?.toLocalDate()
+
+            private fun dateOf(n: Long): LocalDate =
+                when (frequency) {
+                    Recur.Frequency.DAILY -> startDate.plusDays(n * interval)
+                    Recur.Frequency.WEEKLY -> startDate.plusWeeks(n * interval)
+                    Recur.Frequency.MONTHLY -> startDate.plusMonths(n * interval)
+                    else -> startDate.plusYears(n * interval)
+                }
+
+            /** index of an occurrence that is not after the given local date */
+            private fun indexBefore(date: LocalDate): Long {
+                val units = when (frequency) {
+                    Recur.Frequency.DAILY -> date.toEpochDay() - startDate.toEpochDay()
+                    Recur.Frequency.WEEKLY -> Math.floorDiv(date.toEpochDay() - startDate.toEpochDay(), 7L)
+                    Recur.Frequency.MONTHLY -> (date.year - startDate.year) * 12L + (date.monthValue - startDate.monthValue)
+                    else -> (date.year - startDate.year).toLong()
+                }
+                return (Math.floorDiv(units, interval.toLong()) - 1).coerceAtLeast(0)
+            }
+
+            override fun occurrences(from: Long, to: Long): Sequence<Long> = sequence {
+                // local date of "from" minus one day covers all time zone offsets
+                var n = indexBefore(ZoneOffsets.toLocalDate(ZoneOffsets.toLocalMillis(zone, from) - MILLIS_PER_DAY))
+                while (count == null || n < count) {
+                    val date = dateOf(n)
+                    if (untilDate != null && date > untilDate)
+                        break
+                    val start = ZoneOffsets.toUtcMillis(zone, ZoneOffsets.localMillis(date, startMillisOfDay))
+                    if (untilUtc != null && start > untilUtc)
+                        break
+                    if (start >= to)
+                        break
+                    if (start >= from)
+                        yield(start)
+                    n++
+                }
+            }
+
+        }
+
+        /**
+         * Other rules: expanded by ical4j, but only for the requested range.
+         */
+        class Ical4j(
+            private val recur: Recur,
+            private val seed: Date,
+            private val allDay: Boolean
+        ): Rule() {
+
+            override fun occurrences(from: Long, to: Long): Sequence<Long> {
+                val periodStart = DateTime(from).apply { isUtc = true }
+                val periodEnd = DateTime(to).apply { isUtc = true }
+                val dates = try {
+                    recur.getDates(seed, periodStart, periodEnd, if (allDay) Value.DATE else Value.DATE_TIME)
+                } catch (e: Exception) {
+                    logger.log(Level.WARNING, "Couldn't expand $recur", e)
+                    return emptySequence()
+                }
+                return dates
+                    .map { date -> if (allDay) ZoneOffsets.localMillis(date.toLocalDate(), 0) else date.time }     // DATE values are UTC midnight
+                    .filter { it in from until to }
+                    .sorted()
+                    .asSequence()
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,317 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android
+
+import at.bitfire.ical4android.util.ZoneOffsets
+import java.util.logging.Level
+import java.util.logging.Logger
+
+/**
+ * In-memory index of the instances of a set of events, which answers time-range (overlap) queries
+ * without expanding every event.
+ *
+ * Events are identified by a key (for instance the [AndroidEvent.id] of the main event, see
+ * [AndroidCalendar.loadInstanceIndex]). When an event is [put], its instances within the horizon
+ * ([horizonStart] … [horizonEnd]) are expanded with [InstanceExpander] and stored in an augmented
+ * sorted array (an implicit interval tree: sorted by start, every subtree knows the maximum end of its
+ * instances), so that overlap queries are fast (see [query] for the cost). Events that may have instances after the
+ * horizon (infinite or long RRULEs, later RDATEs, exceptions or events) are additionally kept as
+ * open-ended entries and expanded on demand for the part of a query window after the horizon
+ * (RRULEs with COUNT are always treated as open-ended).
+ * Instances before [horizonStart] are not indexed.
+ *
+ * Added instances are collected in a small buffer (at most [MAX_PENDING] instances, which every
+ * query scans) and merged into the sorted array when the buffer is full. Instances of removed or
+ * replaced events stay in the array as stale instances (skipped by queries) until they exceed
+ * 1/[STALE_RATIO] of the array. So [put] and [remove] don't have to rebuild the array every time.
+ *
+ * All methods are thread-safe.
+ *
+ * @param horizonStart  start of the indexed time range (UTC epoch milliseconds, inclusive)
+ * @param horizonEnd    end of the indexed time range (UTC epoch milliseconds, exclusive)
+ */
+class InstanceIndex(
+    val horizonStart: Long,
+    val horizonEnd: Long
+) {
+
+    companion object {
+
+        private val logger
+            get() = Logger.getLogger(InstanceIndex::class.java.name)
+
+        /** maximum number of added instances which are buffered before they're merged into the array */
+        private const val MAX_PENDING = 64
+
+        /** minimum number of stale instances before they're removed from the array */
+        private const val MIN_STALE = 64
+
+        /** stale instances are removed from the array when they exceed 1/[STALE_RATIO] of its instances */
+        private const val STALE_RATIO = 8
+
+        /**
+         * Builds an index of a list of (parsed) events. The key of every event is its position in the list.
+         *
+         * @param events        events to index
+         * @param horizonStart  start of the indexed time range (UTC epoch milliseconds, inclusive)
+         * @param horizonEnd    end of the indexed time range (UTC epoch milliseconds, exclusive)
+         *
+         * @return index of the events
+         */
+        fun of(events: List<Event>, horizonStart: Long, horizonEnd: Long) =
+            InstanceIndex(horizonStart, horizonEnd).apply {
+                putAll(events.withIndex().associate { (idx, event) -> idx.toLong() to event })
+            }
+
+    }
+
+    init {
+        require(horizonStart <= horizonEnd) { "Horizon must not end before it starts" }
+    }
+
+
+    /**
+     * Instance that has been found by [query].
+     *
+     * @param key       key of the event
+     * @param instance  the instance
+     */
+    data class Match(
+        val key: Long,
+        val instance: InstanceExpander.Instance
+    )
+
+    private class Item(
+        val key: Long,
+        val generation: Int,
+        val instance: InstanceExpander.Instance
+    ) {
+        /** end for the overlap test (instances without duration occupy their start) */
+        val end = if (instance.end > instance.start) instance.end else instance.start + 1
+    }
+
+
+    // implicit interval tree: subtree of [lo, hi) has its root at (lo + hi) / 2
+    private var items = emptyArray<Item>()
+    private var maxEnds = LongArray(0)
+
+    /** items which have been added since the last rebuild (unsorted, at most [MAX_PENDING] after every update) */
+    private val pending = ArrayList<Item>()
+
+    /** number of items in [items] which belong to removed or replaced events */
+    private var staleItems = 0
+
+    /** current generation per key; items of other generations are stale */
+    private val generations = HashMap<Long, Int>()
+    private var nextGeneration = 0
+
+    /** number of instances per key */
+    private val instanceCounts = HashMap<Long, Int>()
+
+    /** events which may have instances after [horizonEnd] */
+    private val openEnded = HashMap<Long, InstanceExpander>()
+
+    /** number of indexed instances (within the horizon) */
+    val size
+        @Synchronized get() = instanceCounts.values.sum()
+
+    /** number of open-ended entries */
+    val openEndedSize
+        @Synchronized get() = openEnded.size
+
+
+    /**
+     * Adds an event to the index or replaces the indexed instances of the event with the given key.
+     *
+     * @param key       key of the event
+     * @param event     event (with exceptions) to index
+     */
+    @Synchronized
+    fun put(key: Long, event: Event) {
+        index(key, event)
+        rebuildIfNeeded()
+    }
+
+    /**
+     * Adds or replaces multiple events and then rebuilds the index once.
+     *
+     * @param events    events to index (key → event)
+     */
+    @Synchronized
+    fun putAll(events: Map<Long, Event>) {
+        for ((key, event) in events)
+            index(key, event)
+        rebuild()
+    }
+
+    /**
+     * Removes an event from the index.
+     *
+     * @param key   key of the event
+     * @return whether the event was indexed
+     */
+    @Synchronized
+    fun remove(key: Long): Boolean {
+        val removed = unlink(key)
+        rebuildIfNeeded()
+        return removed
+    }
+
+    @Synchronized
+    fun clear() {
+        items = emptyArray()
+        maxEnds = LongArray(0)
+        pending.clear()
+        staleItems = 0
+        generations.clear()
+        instanceCounts.clear()
+        openEnded.clear()
+    }
+
+
+    /**
+     * Finds the instances which overlap with a time window. Instances without duration overlap
+     * when they start within the window.
+     *
+     * Takes O(log n + k + s + p) for n indexed instances and k matches, where s is the number of
+     * stale instances (of removed or replaced events, at most 1/[STALE_RATIO] of the array) that
+     * overlap with the window and p ≤ [MAX_PENDING] is the number of buffered instances. When the
+     * window extends after [horizonEnd], the open-ended events are expanded for that part in addition.
+     *
+     * @param windowStart   start of the window (UTC epoch milliseconds, inclusive)
+     * @param windowEnd     end of the window (UTC epoch milliseconds, exclusive)
+     *
+     * @return matching instances, ordered by start
+     */
+    @Synchronized
+    fun query(windowStart: Long, windowEnd: Long): List<Match> {
+        val result = ArrayList<Match>()
+        if (windowStart >= windowEnd)
+            return result
+        collect(0, items.size, windowStart, windowEnd, result)
+
+        val sorted = result.size
+        for (item in pending)
+            if (isCurrent(item) && item.instance.start < windowEnd && item.end > windowStart)
+                result += Match(item.key, item.instance)
+
+        // open-ended events after the horizon (instances which start before horizonEnd are already indexed)
+        if (windowEnd > horizonEnd)
+            for ((key, expander) in openEnded)
+                for (instance in expander.instances(maxOf(windowStart, horizonEnd), windowEnd))
+                    if (instance.start >= horizonEnd)
+                        result += Match(key, instance)
+
+        if (result.size > sorted)
+            result.sortBy { it.instance.start }
+        return result
+    }
+
+
+    private fun collect(lo: Int, hi: Int, windowStart: Long, windowEnd: Long, result: MutableList<Match>) {
+        if (lo >= hi)
+            return
+        val mid = (lo + hi) ushr 1
+        if (maxEnds[mid] <= windowStart)
+            return      // no instance of this subtree ends after the window start
+
+        collect(lo, mid, windowStart, windowEnd, result)
+        val item = items[mid]
+        if (item.instance.start < windowEnd) {
+            if (item.end > windowStart && isCurrent(item))
+                result += Match(item.key, item.instance)
+            collect(mid + 1, hi, windowStart, windowEnd, result)
+        }
+    }
+
+    private fun index(key: Long, event: Event) {
+        unlink(key)
+
+        val generation = nextGeneration++
+        generations[key] = generation
+
+        val expander = InstanceExpander(event)
+        var count = 0
+        try {
+            for (instance in expander.instances(horizonStart, horizonEnd)) {
+                pending += Item(key, generation, instance)
+                count++
+            }
+        } catch (e: Exception) {
+            logger.log(Level.WARNING, "Couldn't expand event $key", e)
+        }
+        instanceCounts[key] = count
+
+        if (mayEndAfterHorizon(event))
+            openEnded[key] = expander
+    }
+
+    private fun isCurrent(item: Item) = generations[item.key] == item.generation
+
+    private fun unlink(key: Long): Boolean {
+        val generation = generations.remove(key) ?: return false
+        val count = instanceCounts.remove(key) ?: 0
+        openEnded.remove(key)
+
+        // the instances of an event are either all pending or all in the array, where they become stale
+        if (!pending.removeAll { it.key == key && it.generation == generation })
+            staleItems += count
+        return true
+    }
+
+    private fun mayEndAfterHorizon(event: Event): Boolean {
+        val dtStart = event.dtStart?.date ?: return false
+        // one day of tolerance for DATE and floating values; the number of instances of a COUNT rule is not checked
+        val limit = horizonEnd - ZoneOffsets.MILLIS_PER_DAY
+        return dtStart.time >= limit ||
+                event.rRules.any { it.recur.count > 0 || it.recur.until == null || it.recur.until.time >= limit } ||
+                event.rDates.any { rDate -> rDate.dates.any { it.time >= limit } || rDate.periods.any { it.start.time >= limit } } ||
+                event.exceptions.any { (it.dtStart?.date?.time ?: Long.MIN_VALUE) >= limit }
+    }
+
+    private fun rebuildIfNeeded() {
+        if (pending.size > MAX_PENDING || staleItems > maxOf(MIN_STALE, items.size / STALE_RATIO))
+            rebuild()
+    }
+
+    /**
+     * Merges the (sorted) buffered items into the array and removes stale items. Takes O(n + p log p)
+     * because the array is already sorted.
+     */
+    private fun rebuild() {
+        pending.sortBy { it.instance.start }
+
+        val all = ArrayList<Item>(items.size - staleItems + pending.size)
+        var idxPending = 0
+        for (item in items) {
+            if (!isCurrent(item))
+                continue
+            while (idxPending < pending.size && pending[idxPending].instance.start < item.instance.start)
+                all += pending[idxPending++]
+            all += item
+        }
+        while (idxPending < pending.size)
+            all += pending[idxPending++]
+
+        items = all.toTypedArray()
+        maxEnds = LongArray(items.size)
+        computeMaxEnds(0, items.size)
+        pending.clear()
+        staleItems = 0
+        logger.fine("Rebuilt instance index with ${items.size} instances")
+    }
+
+    private fun computeMaxEnds(lo: Int, hi: Int): Long {
+        if (lo >= hi)
+            return Long.MIN_VALUE
+        val mid = (lo + hi) ushr 1
+        val max = maxOf(items[mid].end, computeMaxEnds(lo, mid), computeMaxEnds(mid + 1, hi))
+        maxEnds[mid] = max
+        return max
+    }
+
+}
@@ -12,7 +12,10 @@ import android.content.ContentUris
 import android.content.ContentValues
 import android.content.Context
 import android.net.Uri
+import at.bitfire.ical4android.util.LogUtils.logLazy
+import at.bitfire.ical4android.util.MiscUtils.queryIn
 import at.bitfire.ical4android.util.MiscUtils.toValues
+import at.bitfire.ical4android.util.RowReader
 import at.techbee.jtx.JtxContract
 import at.techbee.jtx.JtxContract.asSyncAdapter
 import net.fortuna.ical4j.model.Calendar
@@ -33,6 +36,12 @@ open class JtxCollection<out T: JtxICalObject>(val account: Account,
         private val logger
             get() = Logger.getLogger(JtxCollection::class.java.name)
 
+        /** Number of operations after which [addAll] commits its batch. */
+        const val MAX_OPERATIONS_PER_BATCH = 500
+
+        /** Default number of objects whose list properties are loaded at once by [loadICalObjects]. */
+        const val LOAD_ICALOBJECTS_PAGE_SIZE = 250
+
         fun create(account: Account, client: ContentProviderClient, values: ContentValues): Uri {
             logger.log(Level.FINE, "Creating jtx Board collection", values)
             return client.insert(JtxContract.JtxCollection.CONTENT_URI.asSyncAdapter(account), values)
@@ -66,6 +75,12 @@ open class JtxCollection<out T: JtxICalObject>(val account: Account,
 
     var context: Context? = null
 
+    /**
+     * Index of the JtxICalObjects of this collection (see [loadSyncIndex]). When set, it's updated when
+     * objects are added, updated or deleted by [JtxICalObject] and by the bulk operations of this class.
+     */
+    var syncIndex: SyncIndex? = null
+
 
     fun delete(): Boolean {
         logger.log(Level.FINE, "Deleting jtx Board collection (#$id)")
@@ -107,6 +122,40 @@ open class JtxCollection<out T: JtxICalObject>(val account: Account,
             .build()
 
 
+    /**
+     * Adds multiple JtxICalObjects to this collection. Instead of one batch per object, the objects
+     * share batch operations of up to [maxOperationsPerBatch] operations (an object is never split
+     * across batches). This reduces the number of provider calls for bulk imports considerably.
+     *
+     * @param iCalObjects            objects to add (must belong to this collection)
+     * @param maxOperationsPerBatch  number of operations after which a batch is committed
+     *
+     * @return content URIs of the inserted objects, in the same order as [iCalObjects]
+     */
+    fun addAll(iCalObjects: List<JtxICalObject>, maxOperationsPerBatch: Int = MAX_OPERATIONS_PER_BATCH): List<Uri> {
+        val uris = ArrayList<Uri>(iCalObjects.size)
+        val pending = LinkedList<Pair<JtxICalObject, Int>>()
+        val batch = BatchOperation(client)
+
+        fun commitPending() {
+            batch.commit()
+            for ((iCalObject, idx) in pending)
+                uris += iCalObject.processAddResult(batch, idx)
+            pending.clear()
+        }
+
+        for (iCalObject in iCalObjects) {
+            pending += Pair(iCalObject, iCalObject.addRows(batch))
+            if (batch.nextBackrefIdx() >= maxOperationsPerBatch)
+                commitPending()
+        }
+        commitPending()
+
+        logger.logLazy(Level.FINE) { "addAll: added ${uris.size} records to ${account.name}" }
+        return uris
+    }
+
+
     /**
      * @return a list of content values of the deleted jtxICalObjects
      */
@@ -118,7 +167,7 @@ open class JtxCollection<out T: JtxICalObject>(val account: Account,
             "${JtxContract.JtxICalObject.ICALOBJECT_COLLECTIONID} = ? AND ${JtxContract.JtxICalObject.DELETED} = ? AND ${JtxContract.JtxICalObject.RECURID} IS NULL", arrayOf(id.toString(), "1"),
             null
         ).use { cursor ->
-            logger.fine("findDeleted: found ${cursor?.count} deleted records in ${account.name}")
+            logger.logLazy(Level.FINE) { "findDeleted: found ${cursor?.count} deleted records in ${account.name}" }
             while (cursor?.moveToNext() == true) {
                 values.add(cursor.toValues())
             }
@@ -138,7 +187,7 @@ open class JtxCollection<out T: JtxICalObject>(val account: Account,
             "${JtxContract.JtxICalObject.ICALOBJECT_COLLECTIONID} = ? AND ${JtxContract.JtxICalObject.DIRTY} = ? AND ${JtxContract.JtxICalObject.RECURID} IS NULL", arrayOf(id.toString(), "1"),
             null
         ).use { cursor ->
-            logger.fine("findDirty: found ${cursor?.count} dirty records in ${account.name}")
+            logger.logLazy(Level.FINE) { "findDirty: found ${cursor?.count} dirty records in ${account.name}" }
             while (cursor?.moveToNext() == true) {
                 values.add(cursor.toValues())
             }
@@ -157,7 +206,7 @@ open class JtxCollection<out T: JtxICalObject>(val account: Account,
             "${JtxContract.JtxICalObject.ICALOBJECT_COLLECTIONID} = ? AND ${JtxContract.JtxICalObject.FILENAME} = ? AND ${JtxContract.JtxICalObject.RECURID} IS NULL", arrayOf(id.toString(), filename),
             null
         ).use { cursor ->
-            logger.fine("queryByFilename: found ${cursor?.count} records in ${account.name}")
+            logger.logLazy(Level.FINE) { "queryByFilename: found ${cursor?.count} records in ${account.name}" }
             if (cursor?.count != 1)
                 return null
             cursor.moveToFirst()
@@ -172,7 +221,7 @@ open class JtxCollection<out T: JtxICalObject>(val account: Account,
      */
     fun queryByUID(uid: String): ContentValues? {
         client.query(JtxContract.JtxICalObject.CONTENT_URI.asSyncAdapter(account), null, "${JtxContract.JtxICalObject.UID} = ?", arrayOf(uid), null).use { cursor ->
-            logger.fine("queryByUID: found ${cursor?.count} records in ${account.name}")
+            logger.logLazy(Level.FINE) { "queryByUID: found ${cursor?.count} records in ${account.name}" }
             if (cursor?.count != 1)
                 return null
             cursor.moveToFirst()
@@ -195,7 +244,7 @@ open class JtxCollection<out T: JtxICalObject>(val account: Account,
             arrayOf(uid, recurid),
             null
         ).use { cursor ->
-            logger.fine("queryRecur: found ${cursor?.count} records in ${account.name}")
+            logger.logLazy(Level.FINE) { "queryRecur: found ${cursor?.count} records in ${account.name}" }
             if (cursor?.count != 1)
                 return null
             cursor.moveToFirst()
@@ -216,7 +265,9 @@ open class JtxCollection<out T: JtxICalObject>(val account: Account,
             values,
             "${JtxContract.JtxICalObject.ICALOBJECT_COLLECTIONID} = ? AND ${JtxContract.JtxICalObject.DIRTY} = ?",
             arrayOf(id.toString(), "0")
-        )
+        ).also {
+            syncIndex?.putAll(values) { !it.dirty }
+        }
     }
 
     /**
@@ -225,7 +276,9 @@ open class JtxCollection<out T: JtxICalObject>(val account: Account,
      * @return the number of deleted records
      */
     fun deleteByFlags(flags: Int) =
-        client.delete(JtxContract.JtxICalObject.CONTENT_URI.asSyncAdapter(account), "${JtxContract.JtxICalObject.DIRTY} = ? AND ${JtxContract.JtxICalObject.FLAGS} = ? ", arrayOf("0", flags.toString()))
+        client.delete(JtxContract.JtxICalObject.CONTENT_URI.asSyncAdapter(account), "${JtxContract.JtxICalObject.DIRTY} = ? AND ${JtxContract.JtxICalObject.FLAGS} = ? ", arrayOf("0", flags.toString())).also {
+            syncIndex?.removeAll { !it.dirty && it.flags == flags }
+        }
 
     /**
      * Updates the eTag value of all entries within a collection to the given eTag
@@ -238,6 +291,33 @@ open class JtxCollection<out T: JtxICalObject>(val account: Account,
         else
             values.put(JtxContract.JtxICalObject.ETAG, eTag)
         client.update(JtxContract.JtxICalObject.CONTENT_URI.asSyncAdapter(account), values, "${JtxContract.JtxICalObject.ICALOBJECT_COLLECTIONID} = ?", arrayOf(id.toString()))
+        syncIndex?.putAll(values) { true }
+    }
+
+    /**
+     * Loads a [SyncIndex] of the JtxICalObjects of this collection with one query and sets it as [syncIndex].
+     * Afterwards, the objects can be resolved by UID and file name in memory instead of using [queryByUID]
+     * and [queryByFilename] for every object.
+     *
+     * Only main objects are indexed (no recurring instances, which share the UID of their main object).
+     * In contrast to [queryByUID], the index only contains objects of this collection.
+     *
+     * @return the loaded index
+     */
+    fun loadSyncIndex(): SyncIndex {
+        val columns = SyncIndex.Columns(
+            id = JtxContract.JtxICalObject.ID,
+            uid = JtxContract.JtxICalObject.UID,
+            fileName = JtxContract.JtxICalObject.FILENAME,
+            eTag = JtxContract.JtxICalObject.ETAG,
+            dirty = JtxContract.JtxICalObject.DIRTY,
+            deleted = JtxContract.JtxICalObject.DELETED,
+            flags = JtxContract.JtxICalObject.FLAGS
+        )
+        return SyncIndex.load(
+            client, JtxContract.JtxICalObject.CONTENT_URI.asSyncAdapter(account), columns,
+            "${JtxContract.JtxICalObject.ICALOBJECT_COLLECTIONID} = ? AND ${JtxContract.JtxICalObject.RECURID} IS NULL", arrayOf(id.toString())
+        ).also { syncIndex = it }
     }
 
 
@@ -245,29 +325,101 @@ open class JtxCollection<out T: JtxICalObject>(val account: Account,
      * @return a string with all JtxICalObjects within the collection as iCalendar
      */
     fun getICSForCollection(): String {
-        client.query(
-            JtxContract.JtxICalObject.CONTENT_URI.asSyncAdapter(account),
-            null,
-            "${JtxContract.JtxICalObject.ICALOBJECT_COLLECTIONID} = ? AND ${JtxContract.JtxICalObject.DELETED} = ? AND ${JtxContract.JtxICalObject.RECURID} IS NULL",
-            arrayOf(id.toString(), "0"),
-            null
-        ).use { cursor ->
-            logger.fine("getICSForCollection: found ${cursor?.count} records in ${account.name}")
+        val ical = Calendar()
+        ical.properties += Version.VERSION_2_0
+        ical.properties += ICalendar.prodId
+
+        var count = 0
+        loadICalObjects(
+            "${JtxContract.JtxICalObject.DELETED} = ? AND ${JtxContract.JtxICalObject.RECURID} IS NULL", arrayOf("0"),
+            create = { JtxICalObject(this) }
+        ) { jtxIcalObject ->
+            count++
+            val singleICS = jtxIcalObject.getICalendarFormat()
+            singleICS?.components?.forEach { component ->
+                if(component is VToDo || component is VJournal)
+                    ical.components += component
+            }
+        }
+        logger.logLazy(Level.FINE) { "getICSForCollection: found $count records in ${account.name}" }
 
-            val ical = Calendar()
-            ical.properties += Version.VERSION_2_0
-            ical.properties += ICalendar.prodId
+        return ical.toString()
+    }
 
-            while (cursor?.moveToNext() == true) {
-                val jtxIcalObject = JtxICalObject(this)
-                jtxIcalObject.populateFromContentValues(cursor.toValues())
-                val singleICS = jtxIcalObject.getICalendarFormat()
-                singleICS?.components?.forEach { component ->
-                    if(component is VToDo || component is VJournal)
-                        ical.components += component
+    /**
+     * Loads JtxICalObjects from this collection together with their list properties (categories, comments,
+     * attendees etc.) and recurring instances, like querying them and calling
+     * [JtxICalObject.populateFromContentValues] for every object.
+     *
+     * However, instead of about ten queries per object, every list property table is queried only once per
+     * page of [pageSize] objects (using `IN (…)` queries) and the rows are assigned to their objects in memory.
+     *
+     * @param _where      selection (restricted to this collection)
+     * @param _whereArgs  arguments for selection
+     * @param pageSize    number of objects whose list properties are loaded at once
+     * @param callback    called for every populated object (in order of [JtxContract.JtxICalObject.ID])
+     */
+    fun loadICalObjects(_where: String? = null, _whereArgs: Array<String>? = null, pageSize: Int = LOAD_ICALOBJECTS_PAGE_SIZE, callback: (JtxICalObject) -> Unit) =
+        loadICalObjects(_where, _whereArgs, pageSize, { values -> iCalObjectFactory.fromProvider(this, values) }, callback)
+
+    private fun loadICalObjects(
+        _where: String?,
+        _whereArgs: Array<String>?,
+        pageSize: Int = LOAD_ICALOBJECTS_PAGE_SIZE,
+        create: (ContentValues) -> JtxICalObject,
+        callback: (JtxICalObject) -> Unit
+    ) {
+        val where = "(${_where ?: "1"}) AND ${JtxContract.JtxICalObject.ICALOBJECT_COLLECTIONID} = ?"
+        val whereArgs = (_whereArgs ?: arrayOf()) + id.toString()
+
+        client.query(JtxContract.JtxICalObject.CONTENT_URI.asSyncAdapter(account), null, where, whereArgs, JtxContract.JtxICalObject.ID)?.use { cursor ->
+            val reader = RowReader(cursor)
+            val page = ArrayList<ContentValues>(pageSize)
+            while (cursor.moveToNext()) {
+                page += reader.toValues()
+                if (page.size >= pageSize) {
+                    loadICalObjectsPage(page, create, callback)
+                    page.clear()
                 }
             }
-            return ical.toString()
+            if (page.isNotEmpty())
+                loadICalObjectsPage(page, create, callback)
+        }
+    }
+
+    private fun loadICalObjectsPage(rows: List<ContentValues>, create: (ContentValues) -> JtxICalObject, callback: (JtxICalObject) -> Unit) {
+        // recurring instances of the recurring objects of this page
+        val recurringUids = rows
+            .filter { it.getAsString(JtxContract.JtxICalObject.RRULE)?.isNotEmpty() == true }
+            .mapNotNull { it.getAsString(JtxContract.JtxICalObject.UID) }
+            .toSet()
+        val recurInstances =
+            if (recurringUids.isNotEmpty())
+                client.queryIn(JtxContract.JtxICalObject.CONTENT_URI.asSyncAdapter(account), null,
+                    JtxContract.JtxICalObject.UID, recurringUids, JtxICalObject.RECUR_INSTANCES_SELECTION)
+            else
+                emptyList()
+        val recurInstancesByUid = recurInstances.groupBy { it.getAsString(JtxContract.JtxICalObject.UID) }
+
+        // list properties of the objects and their recurring instances: table → (iCalObjectId → rows)
+        val ids = (rows + recurInstances).map { it.getAsLong(JtxContract.JtxICalObject.ID) }
+        val listProperties = JtxICalObject.LIST_PROPERTY_TABLES.associate { (table, iCalObjectIdColumn) ->
+            table to client.queryIn(table.asSyncAdapter(account), null, iCalObjectIdColumn, ids)
+                .groupBy { it.getAsLong(iCalObjectIdColumn) }
+        }
+
+        for (row in rows) {
+            val iCalObject = create(row)
+            iCalObject.populateFromContentValues(
+                row,
+                listPropertyRows = { table, _, iCalObjectId ->
+                    listProperties[table]?.get(iCalObjectId).orEmpty()
+                },
+                recurInstanceRows = { uid ->
+                    recurInstancesByUid[uid].orEmpty()
+                }
+            )
+            callback(iCalObject)
         }
     }
 
@@ -169,6 +169,9 @@ open class JtxICalObject(
 
     private var recurInstances: MutableList<JtxICalObject> = mutableListOf()
 
+    /** attachments whose binary content has to be written after an [addRows] batch has been committed */
+    private var pendingAttachmentBinaries: List<Pair<Int, Attachment>> = emptyList()
+
 
 
 
@@ -273,6 +276,25 @@ open class JtxICalObject(
         const val X_PROP_XSTATUS = "X-STATUS"   // used to define an extended status (additionally to standard status)
         const val X_PROP_GEOFENCE_RADIUS = "X-GEOFENCE-RADIUS"   // used to define a Geofence-Radius to notifiy the user when close
 
+        /**
+         * Tables with list properties of a JtxICalObject, together with the column that references
+         * the JtxICalObject ([JtxContract.JtxICalObject.ID]).
+         */
+        internal val LIST_PROPERTY_TABLES = listOf(
+            Pair(JtxContract.JtxCategory.CONTENT_URI, JtxContract.JtxCategory.ICALOBJECT_ID),
+            Pair(JtxContract.JtxComment.CONTENT_URI, JtxContract.JtxComment.ICALOBJECT_ID),
+            Pair(JtxContract.JtxResource.CONTENT_URI, JtxContract.JtxResource.ICALOBJECT_ID),
+            Pair(JtxContract.JtxRelatedto.CONTENT_URI, JtxContract.JtxRelatedto.ICALOBJECT_ID),
+            Pair(JtxContract.JtxAttendee.CONTENT_URI, JtxContract.JtxAttendee.ICALOBJECT_ID),
+            Pair(JtxContract.JtxOrganizer.CONTENT_URI, JtxContract.JtxOrganizer.ICALOBJECT_ID),
+            Pair(JtxContract.JtxAttachment.CONTENT_URI, JtxContract.JtxAttachment.ICALOBJECT_ID),
+            Pair(JtxContract.JtxAlarm.CONTENT_URI, JtxContract.JtxAlarm.ICALOBJECT_ID),
+            Pair(JtxContract.JtxUnknown.CONTENT_URI, JtxContract.JtxUnknown.ICALOBJECT_ID)
+        )
+
+        /** Selection for the recurring instances (exceptions) of a recurring JtxICalObject, in addition to its UID. */
+        internal val RECUR_INSTANCES_SELECTION = "${JtxContract.JtxICalObject.RECURID} IS NOT NULL AND ${JtxContract.JtxICalObject.SEQUENCE} > 0"
+
         /**
          * Parses an iCalendar resource and extracts the VTODOs and/or VJOURNALS.
          *
@@ -1159,6 +1181,7 @@ duration?.let(props::add)
         values.put(JtxContract.JtxICalObject.DIRTY, false)
 
         collection.client.update(updateUri, values, null, null)
+        updateSyncIndex(values)
     }
 
     /**
@@ -1174,28 +1197,74 @@ duration?.let(props::add)
         values.put(JtxContract.JtxICalObject.FLAGS, flags)
         collection.client.update(updateUri, values, null, null)
         this.flags = flags
+        updateSyncIndex(values)
     }
 
     /**
      * adds the current JtxICalObject in the jtx DB through the provider
+     *
+     * The main row and all list properties are inserted in one [BatchOperation]. To add many
+     * objects at once, use [JtxCollection.addAll].
+     *
      * @return the Content [Uri] of the inserted object
      */
     fun add(): Uri {
-        val values = this.toContentValues()
+        val batch = BatchOperation(collection.client)
+        val idxICalObject = addRows(batch)
+        batch.commit()
 
-        val newUri = collection.client.insert(
-            JtxContract.JtxICalObject.CONTENT_URI.asSyncAdapter(collection.account),
-            values
-        ) ?: return Uri.EMPTY
-        this.id = newUri.lastPathSegment?.toLong() ?: return Uri.EMPTY
+        return processAddResult(batch, idxICalObject)
+    }
 
-        insertOrUpdateListProperties(false)
+    /**
+     * Enqueues the insert operations for the main row and all list properties of this object.
+     * The list properties reference the main row by back reference, so that no ID is needed
+     * before the batch is committed. After the batch has been committed, [processAddResult]
+     * must be called.
+     *
+     * @param batch batch operation to enqueue the operations into (will not be committed by this method)
+     * @return index of the main row insert operation within [batch]
+     */
+    fun addRows(batch: BatchOperation): Int {
+        val idxICalObject = batch.nextBackrefIdx()
+        batch.enqueue(
+            BatchOperation.CpoBuilder
+                .newInsert(JtxContract.JtxICalObject.CONTENT_URI.asSyncAdapter(collection.account))
+                .withValues(this.toContentValues())
+        )
 
-        return newUri
+        pendingAttachmentBinaries = insertOrUpdateListProperties(batch, idxICalObject)
+        return idxICalObject
+    }
+
+    /**
+     * Takes the [id] of this object from the result of a committed [addRows] batch and writes
+     * the binary content of attachments.
+     *
+     * @param batch          committed batch operation
+     * @param idxICalObject  index of the main row insert operation, as returned by [addRows]
+     * @return the Content [Uri] of the inserted object ([Uri.EMPTY] if the provider didn't return a result)
+     */
+    fun processAddResult(batch: BatchOperation, idxICalObject: Int): Uri {
+        try {
+            val newUri = batch.getResult(idxICalObject)?.uri ?: return Uri.EMPTY
+            this.id = newUri.lastPathSegment?.toLong() ?: return Uri.EMPTY
+            updateSyncIndex(toContentValues())
+
+            writeAttachmentBinaries(batch, pendingAttachmentBinaries)
+            return newUri
+        } finally {
+            // the attachments belong to this batch only
+            pendingAttachmentBinaries = emptyList()
+        }
     }
 
     /**
-     * Updates the current JtxICalObject with the given data
+     * Updates the current JtxICalObject with the given data.
+     *
+     * The main row and all changed list properties are written in one [BatchOperation], so that
+     * the update is applied atomically (unless the transaction is too large and has to be split).
+     *
      * @param [data] The JtxICalObject with the information that should be applied to this object and updated in the provider
      * @return [Uri] of the updated entry
      */
@@ -1206,216 +1275,307 @@ duration?.let(props::add)
 
         var updateUri = JtxContract.JtxICalObject.CONTENT_URI.asSyncAdapter(collection.account)
         updateUri = Uri.withAppendedPath(updateUri, this.id.toString())
-        collection.client.update(
-            updateUri,
-            values,
-            "${JtxContract.JtxICalObject.ID} = ?",
-            arrayOf(this.id.toString())
-        )
 
-        insertOrUpdateListProperties(true)
+        val batch = BatchOperation(collection.client)
+        batch.enqueue(
+            BatchOperation.CpoBuilder
+                .newUpdate(updateUri)
+                .withSelection("${JtxContract.JtxICalObject.ID} = ?", arrayOf(this.id.toString()))
+                .withValues(values)
+        )
+        val attachmentBinaries = insertOrUpdateListProperties(batch, null)
+        batch.commit()
+        writeAttachmentBinaries(batch, attachmentBinaries)
+        updateSyncIndex(values)
 
         return updateUri
     }
 
 
     /**
-     * This function takes care of all list properties and inserts them in the DB through the provider
-     * @param isUpdate if true then the list properties are deleted through the provider before they are inserted
+     * This function takes care of all list properties and enqueues the required operations into the given batch.
+     *
+     * @param batch          batch operation to enqueue the operations into (will not be committed by this method)
+     * @param idxICalObject  index of the main row insert operation within [batch] (new object; list properties will
+     * reference it by back reference) or *null* for an existing object with [id]. For existing objects, the list
+     * properties which are already stored in the provider are compared to the current values: unchanged rows are
+     * kept, obsolete rows are deleted and only new/changed rows are inserted.
+     *
+     * @return list of (batch index, attachment) pairs for attachments whose binary content has to be
+     * written with [writeAttachmentBinaries] after the batch has been committed
      */
-    private fun insertOrUpdateListProperties(isUpdate: Boolean) {
-
-        // delete the categories, attendees, ... and insert them again after. Only relevant for Update, for an insert there will be no entries
-        if (isUpdate) {
-            val deleteBatch = BatchOperation(collection.client)
-
-            deleteBatch.enqueue(
-                BatchOperation.CpoBuilder
-                    .newDelete(JtxContract.JtxCategory.CONTENT_URI.asSyncAdapter(collection.account))
-                    .withSelection("${JtxContract.JtxCategory.ICALOBJECT_ID} = ?", arrayOf(this.id.toString()))
-            )
-
-            deleteBatch.enqueue(
-                BatchOperation.CpoBuilder
-                    .newDelete(JtxContract.JtxComment.CONTENT_URI.asSyncAdapter(collection.account))
-                    .withSelection("${JtxContract.JtxComment.ICALOBJECT_ID} = ?", arrayOf(this.id.toString()))
-            )
-
-            deleteBatch.enqueue(
-                BatchOperation.CpoBuilder
-                    .newDelete(JtxContract.JtxResource.CONTENT_URI.asSyncAdapter(collection.account))
-                    .withSelection("${JtxContract.JtxResource.ICALOBJECT_ID} = ?", arrayOf(this.id.toString()))
-            )
-
-            deleteBatch.enqueue(
-                BatchOperation.CpoBuilder
-                    .newDelete(JtxContract.JtxRelatedto.CONTENT_URI.asSyncAdapter(collection.account))
-                    .withSelection("${JtxContract.JtxRelatedto.ICALOBJECT_ID} = ?", arrayOf(this.id.toString()))
-            )
+    private fun insertOrUpdateListProperties(batch: BatchOperation, idxICalObject: Int?): List<Pair<Int, Attachment>> {
+        enqueueListProperty(
+            batch, idxICalObject,
+            JtxContract.JtxCategory.CONTENT_URI.asSyncAdapter(collection.account),
+            JtxContract.JtxCategory.ID, JtxContract.JtxCategory.ICALOBJECT_ID,
+            categories.map { category ->
+                ContentValues().apply {
+                    put(JtxContract.JtxCategory.TEXT, category.text)
+                    put(JtxContract.JtxCategory.ID, category.categoryId)
+                    put(JtxContract.JtxCategory.LANGUAGE, category.language)
+                    put(JtxContract.JtxCategory.OTHER, category.other)
+                }
+            }
+        )
 
-            deleteBatch.enqueue(
-                BatchOperation.CpoBuilder
-                    .newDelete(JtxContract.JtxAttendee.CONTENT_URI.asSyncAdapter(collection.account))
-                    .withSelection("${JtxContract.JtxAttendee.ICALOBJECT_ID} = ?", arrayOf(this.id.toString()))
-            )
+        enqueueListProperty(
+            batch, idxICalObject,
+            JtxContract.JtxComment.CONTENT_URI.asSyncAdapter(collection.account),
+            JtxContract.JtxComment.ID, JtxContract.JtxComment.ICALOBJECT_ID,
+            comments.map { comment ->
+                ContentValues().apply {
+                    put(JtxContract.JtxComment.ID, comment.commentId)
+                    put(JtxContract.JtxComment.TEXT, comment.text)
+                    put(JtxContract.JtxComment.LANGUAGE, comment.language)
+                    put(JtxContract.JtxComment.OTHER, comment.other)
+                }
+            }
+        )
 
-            deleteBatch.enqueue(
-                BatchOperation.CpoBuilder
-                    .newDelete(JtxContract.JtxOrganizer.CONTENT_URI.asSyncAdapter(collection.account))
-                    .withSelection("${JtxContract.JtxOrganizer.ICALOBJECT_ID} = ?", arrayOf(this.id.toString()))
-            )
+        enqueueListProperty(
+            batch, idxICalObject,
+            JtxContract.JtxResource.CONTENT_URI.asSyncAdapter(collection.account),
+            JtxContract.JtxResource.ID, JtxContract.JtxResource.ICALOBJECT_ID,
+            resources.map { resource ->
+                ContentValues().apply {
+                    put(JtxContract.JtxResource.ID, resource.resourceId)
+                    put(JtxContract.JtxResource.TEXT, resource.text)
+                    put(JtxContract.JtxResource.LANGUAGE, resource.language)
+                    put(JtxContract.JtxResource.OTHER, resource.other)
+                }
+            }
+        )
 
-            deleteBatch.enqueue(
-                BatchOperation.CpoBuilder
-                    .newDelete(JtxContract.JtxAttachment.CONTENT_URI.asSyncAdapter(collection.account))
-                    .withSelection("${JtxContract.JtxAttachment.ICALOBJECT_ID} = ?", arrayOf(this.id.toString()))
-            )
+        enqueueListProperty(
+            batch, idxICalObject,
+            JtxContract.JtxRelatedto.CONTENT_URI.asSyncAdapter(collection.account),
+            JtxContract.JtxRelatedto.ID, JtxContract.JtxRelatedto.ICALOBJECT_ID,
+            relatedTo.map { related ->
+                ContentValues().apply {
+                    put(JtxContract.JtxRelatedto.TEXT, related.text)
+                    put(JtxContract.JtxRelatedto.RELTYPE, related.reltype)
+                    put(JtxContract.JtxRelatedto.OTHER, related.other)
+                }
+            }
+        )
 
-            deleteBatch.enqueue(
-                BatchOperation.CpoBuilder
-                    .newDelete(JtxContract.JtxAlarm.CONTENT_URI.asSyncAdapter(collection.account))
-                    .withSelection("${JtxContract.JtxAlarm.ICALOBJECT_ID} = ?", arrayOf(this.id.toString()))
-            )
+        enqueueListProperty(
+            batch, idxICalObject,
+            JtxContract.JtxAttendee.CONTENT_URI.asSyncAdapter(collection.account),
+            JtxContract.JtxAttendee.ID, JtxContract.JtxAttendee.ICALOBJECT_ID,
+            attendees.map { attendee ->
+                ContentValues().apply {
+                    put(JtxContract.JtxAttendee.CALADDRESS, attendee.caladdress)
+                    put(JtxContract.JtxAttendee.CN, attendee.cn)
+                    put(JtxContract.JtxAttendee.CUTYPE, attendee.cutype)
+                    put(JtxContract.JtxAttendee.DELEGATEDFROM, attendee.delegatedfrom)
+                    put(JtxContract.JtxAttendee.DELEGATEDTO, attendee.delegatedto)
+                    put(JtxContract.JtxAttendee.DIR, attendee.dir)
+                    put(JtxContract.JtxAttendee.LANGUAGE, attendee.language)
+                    put(JtxContract.JtxAttendee.MEMBER, attendee.member)
+                    put(JtxContract.JtxAttendee.PARTSTAT, attendee.partstat)
+                    put(JtxContract.JtxAttendee.ROLE, attendee.role)
+                    put(JtxContract.JtxAttendee.RSVP, attendee.rsvp)
+                    put(JtxContract.JtxAttendee.SENTBY, attendee.sentby)
+                    put(JtxContract.JtxAttendee.OTHER, attendee.other)
+                }
+            }
+        )
 
-            deleteBatch.enqueue(
-                BatchOperation.CpoBuilder
-                    .newDelete(JtxContract.JtxUnknown.CONTENT_URI.asSyncAdapter(collection.account))
-                    .withSelection("${JtxContract.JtxUnknown.ICALOBJECT_ID} = ?", arrayOf(this.id.toString()))
-            )
+        enqueueListProperty(
+            batch, idxICalObject,
+            JtxContract.JtxOrganizer.CONTENT_URI.asSyncAdapter(collection.account),
+            JtxContract.JtxOrganizer.ID, JtxContract.JtxOrganizer.ICALOBJECT_ID,
+            listOfNotNull(organizer).map { organizer ->
+                ContentValues().apply {
+                    put(JtxContract.JtxOrganizer.CALADDRESS, organizer.caladdress)
+                    put(JtxContract.JtxOrganizer.CN, organizer.cn)
+                    put(JtxContract.JtxOrganizer.DIR, organizer.dir)
+                    put(JtxContract.JtxOrganizer.LANGUAGE, organizer.language)
+                    put(JtxContract.JtxOrganizer.SENTBY, organizer.sentby)
+                    put(JtxContract.JtxOrganizer.OTHER, organizer.other)
+                }
+            }
+        )
 
-            deleteBatch.commit()
-        }
+        val attachmentIdx = enqueueListProperty(
+            batch, idxICalObject,
+            JtxContract.JtxAttachment.CONTENT_URI.asSyncAdapter(collection.account),
+            JtxContract.JtxAttachment.ID, JtxContract.JtxAttachment.ICALOBJECT_ID,
+            attachments.map { attachment ->
+                ContentValues().apply {
+                    put(JtxContract.JtxAttachment.URI, attachment.uri)
+                    put(JtxContract.JtxAttachment.FMTTYPE, attachment.fmttype)
+                    put(JtxContract.JtxAttachment.OTHER, attachment.other)
+                    put(JtxContract.JtxAttachment.FILENAME, attachment.filename)
+                }
+            },
+            // the binary content is stored in a file and can't be compared, so binary attachments are always replaced
+            alwaysReplace = { i -> hasBinaryContent(attachments[i]) }
+        )
 
-        val insertBatch = BatchOperation(collection.client)
+        enqueueListProperty(
+            batch, idxICalObject,
+            JtxContract.JtxAlarm.CONTENT_URI.asSyncAdapter(collection.account),
+            JtxContract.JtxAlarm.ID, JtxContract.JtxAlarm.ICALOBJECT_ID,
+            alarms.map { alarm ->
+                ContentValues().apply {
+                    put(JtxContract.JtxAlarm.ACTION, alarm.action)
+                    put(JtxContract.JtxAlarm.ATTACH, alarm.attach)
+                    //put(JtxContract.JtxAlarm.ATTENDEE, alarm.attendee)
+                    put(JtxContract.JtxAlarm.DESCRIPTION, alarm.description)
+                    put(JtxContract.JtxAlarm.DURATION, alarm.duration)
+                    put(JtxContract.JtxAlarm.REPEAT, alarm.repeat)
+                    put(JtxContract.JtxAlarm.SUMMARY, alarm.summary)
+                    put(JtxContract.JtxAlarm.TRIGGER_RELATIVE_TO, alarm.triggerRelativeTo)
+                    put(JtxContract.JtxAlarm.TRIGGER_RELATIVE_DURATION, alarm.triggerRelativeDuration)
+                    put(JtxContract.JtxAlarm.TRIGGER_TIME, alarm.triggerTime)
+                    put(JtxContract.JtxAlarm.TRIGGER_TIMEZONE, alarm.triggerTimezone)
+                    put(JtxContract.JtxAlarm.OTHER, alarm.other)
+                }
+            }
+        )
 
-        this.categories.forEach { category ->
-            insertBatch.enqueue(
-                BatchOperation.CpoBuilder
-                    .newInsert(JtxContract.JtxCategory.CONTENT_URI.asSyncAdapter(collection.account))
-                    .withValue(JtxContract.JtxCategory.ICALOBJECT_ID, id)
-                    .withValue(JtxContract.JtxCategory.TEXT, category.text)
-                    .withValue(JtxContract.JtxCategory.ID, category.categoryId)
-                    .withValue(JtxContract.JtxCategory.LANGUAGE, category.language)
-                    .withValue(JtxContract.JtxCategory.OTHER, category.other)
-            )
-        }
+        enqueueListProperty(
+            batch, idxICalObject,
+            JtxContract.JtxUnknown.CONTENT_URI.asSyncAdapter(collection.account),
+            JtxContract.JtxUnknown.ID, JtxContract.JtxUnknown.ICALOBJECT_ID,
+            unknown.map { unknown ->
+                ContentValues().apply {
+                    put(JtxContract.JtxUnknown.UNKNOWN_VALUE, unknown.value)
+                }
+            }
+        )
 
-        this.comments.forEach { comment ->
-            insertBatch.enqueue(
-                BatchOperation.CpoBuilder
-                    .newInsert(JtxContract.JtxComment.CONTENT_URI.asSyncAdapter(collection.account))
-                    .withValue(JtxContract.JtxComment.ICALOBJECT_ID, id)
-                    .withValue(JtxContract.JtxComment.ID, comment.commentId)
-                    .withValue(JtxContract.JtxComment.TEXT, comment.text)
-                    .withValue(JtxContract.JtxComment.LANGUAGE, comment.language)
-                    .withValue(JtxContract.JtxComment.OTHER, comment.other)
-            )
+        // attachments without URI have their binary content written into the file of the new row
+        val attachmentBinaries = mutableListOf<Pair<Int, Attachment>>()
+        attachments.forEachIndexed { i, attachment ->
+            val idx = attachmentIdx[i]
+            if (idx != null && hasBinaryContent(attachment))
+                attachmentBinaries += Pair(idx, attachment)
         }
+        return attachmentBinaries
+    }
 
+    /**
+     * @return whether the attachment has binary content which has to be written with [writeAttachmentBinaries]
+     */
+    private fun hasBinaryContent(attachment: Attachment) =
+        attachment.uri.isNullOrEmpty() && attachment.binary != null
 
-        this.resources.forEach { resource ->
-            insertBatch.enqueue(
-                BatchOperation.CpoBuilder
-                    .newInsert(JtxContract.JtxResource.CONTENT_URI.asSyncAdapter(collection.account))
-                    .withValue(JtxContract.JtxResource.ICALOBJECT_ID, id)
-                    .withValue(JtxContract.JtxResource.ID, resource.resourceId)
-                    .withValue(JtxContract.JtxResource.TEXT, resource.text)
-                    .withValue(JtxContract.JtxResource.LANGUAGE, resource.language)
-                    .withValue(JtxContract.JtxResource.OTHER, resource.other)
-            )
-        }
+    /**
+     * Enqueues the operations for one list property table (categories, comments, …) of this object.
+     *
+     * For existing objects, the rows which are currently stored for this object are queried and compared to [rows]
+     * (ignoring [idColumn]). Rows that are already stored as they are won't be touched, obsolete rows are deleted
+     * in a single operation and only the remaining [rows] are inserted. Rows for which [alwaysReplace] returns
+     * *true* are never considered as already stored.
+     *
+     * @param batch           batch operation to enqueue the operations into
+     * @param idxICalObject   index of the main row insert operation within [batch]; *null* if the object already exists
+     * @param uri             content URI of the list property table
+     * @param idColumn        name of the ID column of the list property table
+     * @param iCalObjectIdColumn  name of the column that references the [JtxContract.JtxICalObject.ID]
+     * @param rows            values of the rows that shall be stored for this object
+     * @param alwaysReplace   whether the row with the given index within [rows] shall be inserted again, even if it's already stored
+     *
+     * @return for every row of [rows], the index of its insert operation within [batch] (*null* if the row was already stored)
+     */
+    private fun enqueueListProperty(
+        batch: BatchOperation,
+        idxICalObject: Int?,
+        uri: Uri,
+        idColumn: String,
+        iCalObjectIdColumn: String,
+        rows: List<ContentValues>,
+        alwaysReplace: (Int) -> Boolean = { false }
+    ): Array<Int?> {
+        val stored = BooleanArray(rows.size)
+
+        if (idxICalObject == null) {
+            val projection = (rows.flatMap { it.keySet() } + idColumn).distinct().toTypedArray()
+            val obsoleteIds = mutableListOf<String>()
+            collection.client.query(uri, projection, "$iCalObjectIdColumn = ?", arrayOf(this.id.toString()), null)?.use { cursor ->
+                while (cursor.moveToNext()) {
+                    val existing = cursor.toValues()
+                    val match = rows.indices.firstOrNull { i -> !stored[i] && !alwaysReplace(i) && isSameListPropertyRow(existing, rows[i], idColumn) }
+                    if (match != null)
+                        stored[match] = true
+                    else
+                        obsoleteIds += existing.getAsString(idColumn)
+                }
+            }
 
-        this.relatedTo.forEach { related ->
-            insertBatch.enqueue(
-                BatchOperation.CpoBuilder
-                    .newInsert(JtxContract.JtxRelatedto.CONTENT_URI.asSyncAdapter(collection.account))
-                    .withValue(JtxContract.JtxRelatedto.ICALOBJECT_ID, id)
-                    .withValue(JtxContract.JtxRelatedto.TEXT, related.text)
-                    .withValue(JtxContract.JtxRelatedto.RELTYPE, related.reltype)
-                    .withValue(JtxContract.JtxRelatedto.OTHER, related.other)
-            )
+            if (obsoleteIds.isNotEmpty())
+                batch.enqueue(
+                    BatchOperation.CpoBuilder
+                        .newDelete(uri)
+                        .withSelection(
+                            "$iCalObjectIdColumn = ? AND $idColumn IN (${obsoleteIds.joinToString(",") { "?" }})",
+                            arrayOf(this.id.toString()) + obsoleteIds
+                        )
+                )
         }
 
-        this.attendees.forEach { attendee ->
-            insertBatch.enqueue(
-                BatchOperation.CpoBuilder
-                .newInsert(JtxContract.JtxAttendee.CONTENT_URI.asSyncAdapter(collection.account))
-                .withValue(JtxContract.JtxAttendee.ICALOBJECT_ID, id)
-                .withValue(JtxContract.JtxAttendee.CALADDRESS, attendee.caladdress)
-                .withValue(JtxContract.JtxAttendee.CN, attendee.cn)
-                .withValue(JtxContract.JtxAttendee.CUTYPE, attendee.cutype)
-                .withValue(JtxContract.JtxAttendee.DELEGATEDFROM, attendee.delegatedfrom)
-                .withValue(JtxContract.JtxAttendee.DELEGATEDTO, attendee.delegatedto)
-                .withValue(JtxContract.JtxAttendee.DIR, attendee.dir)
-                .withValue(JtxContract.JtxAttendee.LANGUAGE, attendee.language)
-                .withValue(JtxContract.JtxAttendee.MEMBER, attendee.member)
-                .withValue(JtxContract.JtxAttendee.PARTSTAT, attendee.partstat)
-                .withValue(JtxContract.JtxAttendee.ROLE, attendee.role)
-                .withValue(JtxContract.JtxAttendee.RSVP, attendee.rsvp)
-                .withValue(JtxContract.JtxAttendee.SENTBY, attendee.sentby)
-                .withValue(JtxContract.JtxAttendee.OTHER, attendee.other)
-            )
-        }
+        val insertIdx = arrayOfNulls<Int>(rows.size)
+        rows.forEachIndexed { i, row ->
+            if (stored[i])
+                return@forEachIndexed
 
-        this.organizer?.let { organizer ->
-            insertBatch.enqueue(
+            insertIdx[i] = batch.nextBackrefIdx()
+            batch.enqueue(
                 BatchOperation.CpoBuilder
-                    .newInsert(JtxContract.JtxOrganizer.CONTENT_URI.asSyncAdapter(collection.account))
-                    .withValue(JtxContract.JtxOrganizer.ICALOBJECT_ID, id)
-                    .withValue(JtxContract.JtxOrganizer.CALADDRESS, organizer.caladdress)
-                    .withValue(JtxContract.JtxOrganizer.CN, organizer.cn)
-                    .withValue(JtxContract.JtxOrganizer.DIR, organizer.dir)
-                    .withValue(JtxContract.JtxOrganizer.LANGUAGE, organizer.language)
-                    .withValue(JtxContract.JtxOrganizer.SENTBY, organizer.sentby)
-                    .withValue(JtxContract.JtxOrganizer.OTHER, organizer.other)
+                    .newInsert(uri)
+                    .withICalObjectId(iCalObjectIdColumn, idxICalObject)
+                    .withValues(row)
             )
         }
+        return insertIdx
+    }
 
-        this.attachments.forEach { attachment ->
-            val attachmentContentValues = ContentValues().apply {
-                put(JtxContract.JtxAttachment.ICALOBJECT_ID, id)
-                put(JtxContract.JtxAttachment.URI, attachment.uri)
-                put(JtxContract.JtxAttachment.FMTTYPE, attachment.fmttype)
-                put(JtxContract.JtxAttachment.OTHER, attachment.other)
-                put(JtxContract.JtxAttachment.FILENAME, attachment.filename)
-            }
-            val newAttachment = collection.client.insert(JtxContract.JtxAttachment.CONTENT_URI.asSyncAdapter(collection.account), attachmentContentValues)
-            if(attachment.uri.isNullOrEmpty() && newAttachment != null) {
-                val attachmentPFD = collection.client.openFile(newAttachment, "w")
-                ParcelFileDescriptor.AutoCloseOutputStream(attachmentPFD).write(Base64.decode(attachment.binary, Base64.DEFAULT))
+    /**
+     * Compares a list property row from the provider with the values that shall be stored.
+     *
+     * @param existing  row as queried from the provider (values are Strings)
+     * @param new       values that shall be stored
+     * @param idColumn  name of the ID column, which is not compared
+     *
+     * @return whether all values of [new] (except [idColumn]) are equal to the values of [existing]
+     */
+    private fun isSameListPropertyRow(existing: ContentValues, new: ContentValues, idColumn: String) =
+        new.keySet().all { key ->
+            if (key == idColumn)
+                return@all true
+            val newValue = when (val value = new.get(key)) {
+                is Boolean -> if (value) "1" else "0"
+                else -> value?.toString()
             }
+            existing.getAsString(key) == newValue
         }
 
-        this.alarms.forEach { alarm ->
-            insertBatch.enqueue(
-                BatchOperation.CpoBuilder
-                    .newInsert(JtxContract.JtxAlarm.CONTENT_URI.asSyncAdapter(collection.account))
-                    .withValue(JtxContract.JtxAlarm.ICALOBJECT_ID, id)
-                    .withValue(JtxContract.JtxAlarm.ACTION, alarm.action)
-                    .withValue(JtxContract.JtxAlarm.ATTACH, alarm.attach)
-                    //.withValue(JtxContract.JtxAlarm.ATTENDEE, alarm.attendee)
-                    .withValue(JtxContract.JtxAlarm.DESCRIPTION, alarm.description)
-                    .withValue(JtxContract.JtxAlarm.DURATION, alarm.duration)
-                    .withValue(JtxContract.JtxAlarm.REPEAT, alarm.repeat)
-                    .withValue(JtxContract.JtxAlarm.SUMMARY, alarm.summary)
-                    .withValue(JtxContract.JtxAlarm.TRIGGER_RELATIVE_TO, alarm.triggerRelativeTo)
-                    .withValue(JtxContract.JtxAlarm.TRIGGER_RELATIVE_DURATION, alarm.triggerRelativeDuration)
-                    .withValue(JtxContract.JtxAlarm.TRIGGER_TIME, alarm.triggerTime)
-                    .withValue(JtxContract.JtxAlarm.TRIGGER_TIMEZONE, alarm.triggerTimezone)
-                    .withValue(JtxContract.JtxAlarm.OTHER, alarm.other)
-            )
-        }
-
-        this.unknown.forEach { unknown ->
-            insertBatch.enqueue(
-                BatchOperation.CpoBuilder
-                    .newInsert(JtxContract.JtxUnknown.CONTENT_URI.asSyncAdapter(collection.account))
-                    .withValue(JtxContract.JtxUnknown.ICALOBJECT_ID, id)
-                    .withValue(JtxContract.JtxUnknown.UNKNOWN_VALUE, unknown.value)
-            )
+    /**
+     * Writes the binary content of newly inserted attachments to their files in the provider.
+     *
+     * @param batch        committed batch operation that contains the attachment insert operations
+     * @param attachments  (batch index, attachment) pairs as returned by [insertOrUpdateListProperties]
+     */
+    private fun writeAttachmentBinaries(batch: BatchOperation, attachments: List<Pair<Int, Attachment>>) {
+        for ((idx, attachment) in attachments) {
+            val attachmentUri = batch.getResult(idx)?.uri ?: continue
+            val attachmentPFD = collection.client.openFile(attachmentUri, "w")
+            ParcelFileDescriptor.AutoCloseOutputStream(attachmentPFD).use { os ->
+                os.write(Base64.decode(attachment.binary, Base64.DEFAULT))
+            }
         }
+    }
 
-        insertBatch.commit()
+    private fun BatchOperation.CpoBuilder.withICalObjectId(column: String, idxICalObject: Int?): BatchOperation.CpoBuilder {
+        if (idxICalObject != null)
+            withValueBackReference(column, idxICalObject)
+        else
+            withValue(column, id)
+        return this
     }
 
     /**
@@ -1427,7 +1587,20 @@ duration?.let(props::add)
             JtxContract.JtxICalObject.CONTENT_URI.asSyncAdapter(collection.account),
             id.toString()
         )
-        return collection.client.delete(uri, null, null)
+        return collection.client.delete(uri, null, null).also {
+            collection.syncIndex?.remove(id)
+        }
+    }
+
+    /**
+     * Updates the [JtxCollection.syncIndex] (if there is one) with the given values of this object.
+     * Recurring instances are not indexed.
+     *
+     * @param values    (changed) values of this object
+     */
+    private fun updateSyncIndex(values: ContentValues) {
+        if (recurid == null)
+            collection.syncIndex?.put(id, values)
     }
 
 
@@ -1491,7 +1664,40 @@ duration?.let(props::add)
      * Takes Content Values, applies them on the current JtxICalObject and retrieves all further list properties from the content provier and adds them.
      * @param [values] The Content Values with the information about the JtxICalObject
      */
-    fun populateFromContentValues(values: ContentValues) {
+    fun populateFromContentValues(values: ContentValues) =
+        populateFromContentValues(
+            values,
+            listPropertyRows = { table, iCalObjectIdColumn, iCalObjectId ->
+                getAsContentValues(
+                    uri = table.asSyncAdapter(collection.account),
+                    selection = "$iCalObjectIdColumn = ?",
+                    selectionArgs = arrayOf(iCalObjectId.toString())
+                )
+            },
+            recurInstanceRows = { uid ->
+                getAsContentValues(
+                    uri = JtxContract.JtxICalObject.CONTENT_URI.asSyncAdapter(collection.account),
+                    selection = "${JtxContract.JtxICalObject.UID} = ? AND $RECUR_INSTANCES_SELECTION",
+                    selectionArgs = arrayOf(uid)
+                )
+            }
+        )
+
+    /**
+     * Takes Content Values, applies them on the current JtxICalObject and adds the list properties and
+     * recurring instances from the given rows. Used for bulk loading (see [JtxCollection.loadICalObjects]),
+     * where the rows of all objects have already been queried at once.
+     *
+     * @param values             the Content Values with the information about the JtxICalObject
+     * @param listPropertyRows   provides the rows of a list property table (table URI as in [LIST_PROPERTY_TABLES],
+     * column that references the JtxICalObject, ID of the JtxICalObject)
+     * @param recurInstanceRows  provides the rows of the recurring instances for a given UID (see [RECUR_INSTANCES_SELECTION])
+     */
+    internal fun populateFromContentValues(
+        values: ContentValues,
+        listPropertyRows: (table: Uri, iCalObjectIdColumn: String, iCalObjectId: Long) -> List<ContentValues>,
+        recurInstanceRows: (uid: String) -> List<ContentValues>
+    ) {
         values.getAsLong(JtxContract.JtxICalObject.ID)?.let { id -> this.id = id }
 
         values.getAsString(JtxContract.JtxICalObject.COMPONENT)?.let { component -> this.component = component }
@@ -1542,11 +1748,7 @@ duration?.let(props::add)
 
 
         // Take care of categories
-        getAsContentValues(
-            uri = JtxContract.JtxCategory.CONTENT_URI.asSyncAdapter(collection.account),
-            selection = "${JtxContract.JtxCategory.ICALOBJECT_ID} = ?",
-            selectionArgs = arrayOf(this.id.toString())
-        ).forEach { catValues ->
+        listPropertyRows(JtxContract.JtxCategory.CONTENT_URI, JtxContract.JtxCategory.ICALOBJECT_ID, id).forEach { catValues ->
             val category = Category().apply {
                 catValues.getAsLong(JtxContract.JtxCategory.ID)?.let { id -> this.categoryId = id }
                 catValues.getAsString(JtxContract.JtxCategory.TEXT)?.let { text -> this.text = text }
@@ -1557,11 +1759,7 @@ duration?.let(props::add)
         }
 
         // Take care of comments
-        getAsContentValues(
-            uri = JtxContract.JtxComment.CONTENT_URI.asSyncAdapter(collection.account),
-            selection = "${JtxContract.JtxComment.ICALOBJECT_ID} = ?",
-            selectionArgs = arrayOf(this.id.toString())
-        ).forEach { commentValues ->
+        listPropertyRows(JtxContract.JtxComment.CONTENT_URI, JtxContract.JtxComment.ICALOBJECT_ID, id).forEach { commentValues ->
             val comment = Comment().apply {
                 commentValues.getAsLong(JtxContract.JtxComment.ID)?.let { id -> this.commentId = id }
                 commentValues.getAsString(JtxContract.JtxComment.TEXT)?.let { text -> this.text = text }
@@ -1572,11 +1770,7 @@ duration?.let(props::add)
         }
 
         // Take care of resources
-        getAsContentValues(
-            uri = JtxContract.JtxResource.CONTENT_URI.asSyncAdapter(collection.account),
-            selection = "${JtxContract.JtxResource.ICALOBJECT_ID} = ?",
-            selectionArgs = arrayOf(this.id.toString())
-        ).forEach { resourceValues ->
+        listPropertyRows(JtxContract.JtxResource.CONTENT_URI, JtxContract.JtxResource.ICALOBJECT_ID, id).forEach { resourceValues ->
             val resource = Resource().apply {
                 resourceValues.getAsLong(JtxContract.JtxResource.ID)?.let { id -> this.resourceId = id }
                 resourceValues.getAsString(JtxContract.JtxResource.TEXT)?.let { text -> this.text = text }
@@ -1588,11 +1782,9 @@ duration?.let(props::add)
 
 
         // Take care of related-to
-        getAsContentValues(
-            uri = JtxContract.JtxRelatedto.CONTENT_URI.asSyncAdapter(collection.account),
-            selection = "${JtxContract.JtxRelatedto.ICALOBJECT_ID} = ? AND ${JtxContract.JtxRelatedto.RELTYPE} = ?",
-            selectionArgs = arrayOf(this.id.toString(), JtxContract.JtxRelatedto.Reltype.PARENT.name)
-        ).forEach { relatedToValues ->
+        listPropertyRows(JtxContract.JtxRelatedto.CONTENT_URI, JtxContract.JtxRelatedto.ICALOBJECT_ID, id).filter { relatedToValues ->
+            relatedToValues.getAsString(JtxContract.JtxRelatedto.RELTYPE) == JtxContract.JtxRelatedto.Reltype.PARENT.name
+        }.forEach { relatedToValues ->
             val relTo = RelatedTo().apply {
                 relatedToValues.getAsLong(JtxContract.JtxRelatedto.ID)?.let { id -> this.relatedtoId = id }
                 relatedToValues.getAsString(JtxContract.JtxRelatedto.TEXT)?.let { text -> this.text = text }
@@ -1604,11 +1796,7 @@ duration?.let(props::add)
         }
 
         // Take care of attendees
-        getAsContentValues(
-            uri = JtxContract.JtxAttendee.CONTENT_URI.asSyncAdapter(collection.account),
-            selection = "${JtxContract.JtxAttendee.ICALOBJECT_ID} = ?",
-            selectionArgs = arrayOf(this.id.toString())
-        ).forEach { attendeeValues ->
+        listPropertyRows(JtxContract.JtxAttendee.CONTENT_URI, JtxContract.JtxAttendee.ICALOBJECT_ID, id).forEach { attendeeValues ->
             val attendee = Attendee().apply {
                 attendeeValues.getAsLong(JtxContract.JtxAttendee.ID)?.let { id -> this.attendeeId = id }
                 attendeeValues.getAsString(JtxContract.JtxAttendee.CALADDRESS)?.let { caladdress -> this.caladdress = caladdress }
@@ -1629,11 +1817,7 @@ duration?.let(props::add)
         }
 
         // Take care of organizer
-        getAsContentValues(
-            uri = JtxContract.JtxOrganizer.CONTENT_URI.asSyncAdapter(collection.account),
-            selection = "${JtxContract.JtxOrganizer.ICALOBJECT_ID} = ?",
-            selectionArgs = arrayOf(this.id.toString())
-        ).firstOrNull()?.let { organizerContentValues ->
+        listPropertyRows(JtxContract.JtxOrganizer.CONTENT_URI, JtxContract.JtxOrganizer.ICALOBJECT_ID, id).firstOrNull()?.let { organizerContentValues ->
             val orgnzr = Organizer().apply {
                 organizerId = organizerContentValues.getAsLong(JtxContract.JtxOrganizer.ID) ?: 0L
                 caladdress = organizerContentValues.getAsString(JtxContract.JtxOrganizer.CALADDRESS)
@@ -1648,11 +1832,7 @@ duration?.let(props::add)
         }
 
         // Take care of attachments
-        getAsContentValues(
-            uri = JtxContract.JtxAttachment.CONTENT_URI.asSyncAdapter(collection.account),
-            selection = "${JtxContract.JtxAttachment.ICALOBJECT_ID} = ?",
-            selectionArgs = arrayOf(this.id.toString())
-        ).forEach { attachmentValues ->
+        listPropertyRows(JtxContract.JtxAttachment.CONTENT_URI, JtxContract.JtxAttachment.ICALOBJECT_ID, id).forEach { attachmentValues ->
             val attachment = Attachment().apply {
                 attachmentValues.getAsLong(JtxContract.JtxAttachment.ID)?.let { id -> this.attachmentId = id }
                 attachmentValues.getAsString(JtxContract.JtxAttachment.URI)?.let { uri -> this.uri = uri }
@@ -1665,11 +1845,7 @@ duration?.let(props::add)
         }
 
         // Take care of alarms
-        getAsContentValues(
-            uri = JtxContract.JtxAlarm.CONTENT_URI.asSyncAdapter(collection.account),
-            selection = "${JtxContract.JtxAlarm.ICALOBJECT_ID} = ?",
-            selectionArgs = arrayOf(this.id.toString())
-        ).forEach { alarmValues ->
+        listPropertyRows(JtxContract.JtxAlarm.CONTENT_URI, JtxContract.JtxAlarm.ICALOBJECT_ID, id).forEach { alarmValues ->
             val alarm = Alarm().apply {
                 alarmValues.getAsLong(JtxContract.JtxAlarm.ID)?.let { id -> this.alarmId = id }
                 alarmValues.getAsString(JtxContract.JtxAlarm.ACTION)?.let { action -> this.action = action }
@@ -1689,11 +1865,7 @@ duration?.let(props::add)
 
 
         // Take care of unknown properties
-        getAsContentValues(
-            uri = JtxContract.JtxUnknown.CONTENT_URI.asSyncAdapter(collection.account),
-            selection = "${JtxContract.JtxUnknown.ICALOBJECT_ID} = ?",
-            selectionArgs = arrayOf(this.id.toString()),
-        ).forEach { unknownValues ->
+        listPropertyRows(JtxContract.JtxUnknown.CONTENT_URI, JtxContract.JtxUnknown.ICALOBJECT_ID, id).forEach { unknownValues ->
             val unknwn = Unknown().apply {
                 unknownValues.getAsLong(JtxContract.JtxUnknown.ID)?.let { id -> this.unknownId = id }
                 unknownValues.getAsString(JtxContract.JtxUnknown.UNKNOWN_VALUE)?.let { value -> this.value = value }
@@ -1703,13 +1875,9 @@ duration?.let(props::add)
 
 
         if(rrule?.isNotEmpty() == true) {
-            getAsContentValues(
-                uri = JtxContract.JtxICalObject.CONTENT_URI.asSyncAdapter(collection.account),
-                selection = "${JtxContract.JtxICalObject.UID} = ? AND ${JtxContract.JtxICalObject.RECURID} IS NOT NULL AND ${JtxContract.JtxICalObject.SEQUENCE} > 0",
-                selectionArgs = arrayOf(uid)
-            ).forEach { recurInstanceValues ->
+            recurInstanceRows(uid).forEach { recurInstanceValues ->
                 recurInstances.add(
-                    JtxICalObject(collection).apply { populateFromContentValues(recurInstanceValues) }
+                    JtxICalObject(collection).apply { populateFromContentValues(recurInstanceValues, listPropertyRows, recurInstanceRows) }
                 )
             }
         }
@@ -0,0 +1,63 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android
+
+import android.content.ContentValues
+
+/**
+ * Lightweight descriptor of a locally changed row (see [AndroidCalendar.queryChanges] and
+ * [DmfsTaskList.queryChanges]).
+ *
+ * Only contains the columns that have been requested for the change set. The full object
+ * (with all columns) is only queried when [resource] is accessed, so that rows which are not
+ * uploaded (for instance because they're skipped by the sync adapter) don't have to be loaded.
+ *
+ * @param type      type of the change
+ * @param id        ID of the changed row
+ * @param values    requested columns of the changed row
+ * @param loader    loads the full object (*null* if the row doesn't exist anymore)
+ */
+class LocalChange<out T>(
+    val type: Type,
+    val id: Long,
+    val values: ContentValues,
+    loader: (Long) -> T?
+) {
+
+    companion object {
+
+        /**
+         * Determines the type of a change from a dirty or deleted row.
+         *
+         * @param row               row values
+         * @param deletedColumn     name of the "deleted" column
+         * @param fileNameColumn    name of the file name column (*null*: row is never [Type.NEW])
+         */
+        internal fun typeOf(row: ContentValues, deletedColumn: String, fileNameColumn: String?) =
+            when {
+                row.getAsBoolean(deletedColumn) == true -> Type.DELETED
+                fileNameColumn != null && row.getAsString(fileNameColumn).isNullOrBlank() -> Type.NEW
+                else -> Type.DIRTY
+            }
+
+    }
+
+    enum class Type {
+        /** row has been created locally and was never uploaded (no file name yet) */
+        NEW,
+        /** row (or one of its exceptions) has been modified locally */
+        DIRTY,
+        /** row has been deleted locally */
+        DELETED
+    }
+
+    /** full object, loaded on first access; *null* if the row doesn't exist anymore */
+    val resource: T? by lazy { loader(id) }
+
+    override fun toString() = "LocalChange(type=$type, id=$id)"
+
+}
@@ -0,0 +1,53 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android
+
+import net.fortuna.ical4j.model.TimeZone
+import net.fortuna.ical4j.model.TimeZoneRegistry
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * [TimeZoneRegistry] that loads the ical4j time zones from a [TimeZoneSnapshot] instead of the
+ * single `.ics` resources. Time zones that are not in the snapshot (or if there's no snapshot)
+ * are taken from the [fallback] registry.
+ *
+ * Used as base registry of [AndroidCompatTimeZoneRegistry], which applies the Android naming rules.
+ *
+ * @param fallback  registry for time zones that are not in the snapshot (usually the default ical4j registry)
+ * @param snapshot  time zone snapshot
+ */
+class SnapshotTimeZoneRegistry(
+    private val fallback: TimeZoneRegistry,
+    private val snapshot: TimeZoneSnapshot? = TimeZoneSnapshot.default
+): TimeZoneRegistry by fallback {
+
+    /** time zones that have been registered with [register] */
+    private val registered = ConcurrentHashMap<String, TimeZone>()
+
+    override fun getTimeZone(id: String): TimeZone? {
+        registered[id]?.let { return it }
+
+        val vTimeZone = snapshot?.let { it.getVTimeZone(it.resolveAlias(id)) }
+            ?: return fallback.getTimeZone(id)
+        return TimeZone(vTimeZone)
+    }
+
+    override fun register(timezone: TimeZone) {
+        register(timezone, false)
+    }
+
+    override fun register(timezone: TimeZone, update: Boolean) {
+        fallback.register(timezone, update)
+        registered[timezone.id] = fallback.getTimeZone(timezone.id) ?: timezone
+    }
+
+    override fun clear() {
+        fallback.clear()
+        registered.clear()
+    }
+
+}
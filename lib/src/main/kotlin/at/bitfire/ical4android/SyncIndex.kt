@@ -0,0 +1,228 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android
+
+import android.content.ContentProviderClient
+import android.content.ContentValues
+import android.net.Uri
+import at.bitfire.ical4android.util.RowReader
+import java.util.logging.Level
+import java.util.logging.Logger
+
+/**
+ * In-memory index of the sync-relevant columns (ID, UID, file name, ETag, dirty/deleted flags and
+ * sync flags) of all rows of a collection, so that sync code can resolve remote resources to local
+ * rows without one query per resource.
+ *
+ * The index is loaded with one projected query (see [AndroidCalendar.loadSyncIndex],
+ * [DmfsTaskList.loadSyncIndex] and [JtxCollection.loadSyncIndex]) and then maintained incrementally:
+ * the library updates it when it adds, updates or deletes rows of a collection that has an index.
+ * Changes that are done directly over the content provider (for instance setting the ETag of a row
+ * after upload) have to be reported with [put] and [remove].
+ *
+ * All methods are thread-safe.
+ *
+ * @param columns   names of the indexed columns
+ */
+class SyncIndex(
+    val columns: Columns
+) {
+
+    companion object {
+
+        private val logger
+            get() = Logger.getLogger(SyncIndex::class.java.name)
+
+        /**
+         * Loads an index of all rows that match the selection with one query.
+         *
+         * @param provider      content provider client to query
+         * @param uri           URI to query
+         * @param columns       names of the indexed columns
+         * @param where         selection
+         * @param whereArgs     arguments for selection
+         *
+         * @return index of the matching rows
+         */
+        fun load(provider: ContentProviderClient, uri: Uri, columns: Columns, where: String?, whereArgs: Array<String>?): SyncIndex {
+            val index = SyncIndex(columns)
+            provider.query(uri, columns.projection(), where, whereArgs, null)?.use { cursor ->
+                val row = RowReader(cursor)
+                while (cursor.moveToNext()) {
+                    val id = row.getLong(columns.id) ?: continue
+                    index.add(Entry(
+                        id = id,
+                        uid = columns.uid?.let { row.getString(it) },
+                        fileName = columns.fileName?.let { row.getString(it) },
+                        eTag = columns.eTag?.let { row.getString(it) },
+                        dirty = columns.dirty?.let { row.getBoolean(it) } ?: false,
+                        deleted = columns.deleted?.let { row.getBoolean(it) } ?: false,
+                        flags = columns.flags?.let { row.getInt(it) } ?: 0
+                    ))
+                }
+            }
+            logger.log(Level.FINE, "Loaded sync index with ${index.size} rows from $uri")
+            return index
+        }
+
+    }
+
+
+    /**
+     * Names of the indexed columns. Columns which are *null* are not indexed (for instance because
+     * the collection doesn't have an ETag column).
+     */
+    class Columns(
+        val id: String,
+        val uid: String?,
+        val fileName: String?,
+        val eTag: String?,
+        val dirty: String?,
+        val deleted: String?,
+        val flags: String?
+    ) {
+
+        fun projection() =
+            listOfNotNull(id, uid, fileName, eTag, dirty, deleted, flags).distinct().toTypedArray()
+
+    }
+
+    /**
+     * Indexed values of one row.
+     */
+    data class Entry(
+        val id: Long,
+        val uid: String?,
+        val fileName: String?,
+        val eTag: String?,
+        val dirty: Boolean,
+        val deleted: Boolean,
+        val flags: Int
+    )
+
+
+    private val byId = HashMap<Long, Entry>()
+    private val byUid = HashMap<String, Entry>()
+    private val byFileName = HashMap<String, Entry>()
+
+    /** number of indexed rows */
+    val size
+        @Synchronized get() = byId.size
+
+    /**
+     * @return snapshot of all indexed rows
+     */
+    @Synchronized
+    fun entries(): List<Entry> = ArrayList(byId.values)
+
+    @Synchronized
+    fun findById(id: Long): Entry? = byId[id]
+
+    @Synchronized
+    fun findByUid(uid: String): Entry? = byUid[uid]
+
+    @Synchronized
+    fun findByFileName(fileName: String): Entry? = byFileName[fileName]
+
+
+    /**
+     * Adds a row to the index or updates an indexed row. Only the indexed columns which are
+     * contained in [values] are changed, so [values] may be the values of an update operation.
+     * For new rows, missing columns are *null* / `false` / `0`.
+     *
+     * @param id        ID of the row
+     * @param values    (changed) values of the row
+     *
+     * @return the new index entry
+     */
+    @Synchronized
+    fun put(id: Long, values: ContentValues): Entry {
+        val old = byId[id]
+        val entry = Entry(
+            id = id,
+            uid = stringValue(values, columns.uid, old?.uid),
+            fileName = stringValue(values, columns.fileName, old?.fileName),
+            eTag = stringValue(values, columns.eTag, old?.eTag),
+            dirty = if (columns.dirty != null && values.containsKey(columns.dirty)) values.getAsBoolean(columns.dirty) ?: false else old?.dirty ?: false,
+            deleted = if (columns.deleted != null && values.containsKey(columns.deleted)) values.getAsBoolean(columns.deleted) ?: false else old?.deleted ?: false,
+            flags = if (columns.flags != null && values.containsKey(columns.flags)) values.getAsInteger(columns.flags) ?: 0 else old?.flags ?: 0
+        )
+
+        if (old != null)
+            unlink(old)
+        add(entry)
+        return entry
+    }
+
+    /**
+     * Applies the same (changed) values to all indexed rows that match a condition, for instance
+     * after an update operation with a selection.
+     *
+     * @param values    changed values (see [put])
+     * @param predicate which rows to update
+     */
+    @Synchronized
+    fun putAll(values: ContentValues, predicate: (Entry) -> Boolean) {
+        for (entry in byId.values.filter(predicate))
+            put(entry.id, values)
+    }
+
+    /**
+     * Removes a row from the index.
+     *
+     * @param id    ID of the row
+     * @return the removed index entry (*null* if there was no entry for the given ID)
+     */
+    @Synchronized
+    fun remove(id: Long): Entry? =
+        byId.remove(id)?.also { unlink(it) }
+
+    /**
+     * Removes all rows that match a condition from the index, for instance after a delete
+     * operation with a selection.
+     *
+     * @param predicate which rows to remove
+     */
+    @Synchronized
+    fun removeAll(predicate: (Entry) -> Boolean) {
+        for (entry in byId.values.filter(predicate))
+            remove(entry.id)
+    }
+
+    @Synchronized
+    fun clear() {
+        byId.clear()
+        byUid.clear()
+        byFileName.clear()
+    }
+
+
+    private fun add(entry: Entry) {
+        byId[entry.id] = entry
+        entry.uid?.let { byUid[it] = entry }
+        entry.fileName?.let { byFileName[it] = entry }
+    }
+
+    private fun stringValue(values: ContentValues, column: String?, oldValue: String?): String? =
+        if (column != null && values.containsKey(column))
+            values.getAsString(column)?.takeIf { it.isNotEmpty() }
+        else
+            oldValue
+
+    private fun unlink(entry: Entry) {
+        // only remove the UID/file name mappings if they still point to this row
+        entry.uid?.let { uid ->
+            if (byUid[uid]?.id == entry.id)
+                byUid.remove(uid)
+        }
+        entry.fileName?.let { fileName ->
+            if (byFileName[fileName]?.id == entry.id)
+                byFileName.remove(fileName)
+        }
+    }
+
+}
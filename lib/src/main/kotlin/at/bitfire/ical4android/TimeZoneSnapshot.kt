@@ -0,0 +1,145 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android
+
+import net.fortuna.ical4j.data.CalendarBuilder
+import net.fortuna.ical4j.model.component.VTimeZone
+import java.io.ByteArrayInputStream
+import java.io.DataInputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.StringReader
+import java.util.concurrent.ConcurrentHashMap
+import java.util.logging.Level
+import java.util.logging.Logger
+
+/**
+ * Snapshot of the VTIMEZONE definitions and time zone aliases of ical4j, which is compiled at build
+ * time (Gradle task `compileTimeZoneSnapshot`) into one resource file ([RESOURCE]).
+ *
+ * ical4j loads every time zone from its own `.ics` resource. The snapshot is read with a single pass
+ * over one resource instead. Java resources are stored compressed in the APK, so seeking to a
+ * definition would inflate everything before it again. Instead, the data section is kept in memory
+ * as bytes (as large as the uncompressed definitions) and a definition is only parsed when its time
+ * zone is requested.
+ *
+ * Format (see [DataInputStream]):
+ *
+ * - magic ([MAGIC], int), length of the index in bytes (int),
+ * - index: number of aliases (int), for every alias: alias (UTF), time zone ID (UTF);
+ *   number of time zones (int), for every time zone: time zone ID (UTF), offset (int) and length (int) of the definition in the data section,
+ * - data section: VTIMEZONE definitions (UTF-8, unfolded, lines terminated by CRLF).
+ *
+ * @param aliases   time zone aliases (alias → time zone ID), like in ical4j `tz.alias`
+ * @param index     position of the definitions in [data] (time zone ID → offset, length)
+ * @param data      data section of the snapshot
+ */
+class TimeZoneSnapshot private constructor(
+    private val aliases: Map<String, String>,
+    private val index: Map<String, Pair<Int, Int>>,
+    private val data: ByteArray
+) {
+
+    companion object {
+
+        private val logger
+            get() = Logger.getLogger(TimeZoneSnapshot::class.java.name)
+
+        /** resource name of the snapshot which is created by the build */
+        const val RESOURCE = "/at/bitfire/ical4android/timezones.snapshot"
+
+        /** "TZS1" */
+        const val MAGIC = 0x545A5331
+
+        /** snapshot that is bundled with the library; *null* if it's not available */
+        val default: TimeZoneSnapshot? by lazy {
+            load { TimeZoneSnapshot::class.java.getResourceAsStream(RESOURCE) }
+        }
+
+        /**
+         * Reads a snapshot.
+         *
+         * @param open  opens the snapshot (called once)
+         * @return snapshot, or *null* if it isn't available or invalid
+         */
+        fun load(open: () -> InputStream?): TimeZoneSnapshot? =
+            try {
+                open()?.use { stream ->
+                    val input = DataInputStream(stream.buffered())
+                    if (input.readInt() != MAGIC)
+                        throw IOException("Invalid time zone snapshot")
+                    val indexBytes = ByteArray(input.readInt())
+                    input.readFully(indexBytes)
+
+                    val indexData = DataInputStream(ByteArrayInputStream(indexBytes))
+                    val aliases = HashMap<String, String>()
+                    repeat(indexData.readInt()) {
+                        aliases[indexData.readUTF()] = indexData.readUTF()
+                    }
+                    val index = HashMap<String, Pair<Int, Int>>()
+                    repeat(indexData.readInt()) {
+                        index[indexData.readUTF()] = Pair(indexData.readInt(), indexData.readInt())
+                    }
+
+                    val data = input.readBytes()
+                    for ((id, position) in index)
+                        if (position.first < 0 || position.second < 0 || position.second > data.size - position.first)
+                            throw IOException("Invalid position of time zone $id in snapshot")
+
+                    logger.fine("Loaded time zone snapshot with ${index.size} time zones and ${aliases.size} aliases (${data.size} bytes)")
+                    TimeZoneSnapshot(aliases, index, data)
+                }
+            } catch (e: IOException) {
+                logger.log(Level.WARNING, "Couldn't load time zone snapshot", e)
+                null
+            }
+
+    }
+
+    /** parsed definitions (time zone ID → VTIMEZONE) */
+    private val vTimeZones = ConcurrentHashMap<String, VTimeZone>()
+
+    /** IDs of all time zones in the snapshot (without aliases) */
+    val ids: Set<String>
+        get() = index.keys
+
+
+    /**
+     * Resolves an alias (like `US/Eastern`) to the time zone ID.
+     *
+     * @param id    time zone ID or alias
+     * @return time zone ID (the given ID if it's not an alias)
+     */
+    fun resolveAlias(id: String): String = aliases[id] ?: id
+
+    /**
+     * Gets the VTIMEZONE definition of a time zone (not of aliases, see [resolveAlias]). Parsed
+     * definitions are cached, so they must not be modified.
+     *
+     * @param id    time zone ID
+     * @return VTIMEZONE of the time zone, or *null* if the time zone is not in the snapshot
+     */
+    fun getVTimeZone(id: String): VTimeZone? {
+        vTimeZones[id]?.let { return it }
+
+        val definition = readDefinition(id) ?: return null
+        val vTimeZone = try {
+            val calendar = CalendarBuilder().build(StringReader("BEGIN:VCALENDAR\r\nVERSION:2.0\r\n${definition}END:VCALENDAR\r\n"))
+            calendar.getComponent(VTimeZone.VTIMEZONE) as VTimeZone
+        } catch (e: Exception) {
+            logger.log(Level.WARNING, "Couldn't parse time zone $id from snapshot", e)
+            return null
+        }
+        return vTimeZones.putIfAbsent(id, vTimeZone) ?: vTimeZone
+    }
+
+    private fun readDefinition(id: String): String? {
+        val (offset, length) = index[id] ?: return null
+        return String(data, offset, length, Charsets.UTF_8)
+    }
+
+}
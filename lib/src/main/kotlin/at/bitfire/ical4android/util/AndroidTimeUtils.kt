@@ -11,8 +11,9 @@ package at.bitfire.ical4android.util
 import android.text.format.Time
 import at.bitfire.ical4android.util.AndroidTimeUtils.androidifyTimeZone
 import at.bitfire.ical4android.util.AndroidTimeUtils.storageTzId
+import at.bitfire.ical4android.util.TimeApiExtensions.requireZoneId
 import at.bitfire.ical4android.util.TimeApiExtensions.toLocalDate
-import at.bitfire.ical4android.util.TimeApiExtensions.toZonedDateTime
+import at.bitfire.ical4android.util.TimeApiExtensions.toLocalMillis
 import net.fortuna.ical4j.model.Date
 import net.fortuna.ical4j.model.DateList
 import net.fortuna.ical4j.model.DateTime
@@ -27,11 +28,12 @@ import net.fortuna.ical4j.util.TimeZones
 import java.text.ParseException
 import java.text.SimpleDateFormat
 import java.time.Duration
+import java.time.Instant
 import java.time.Period
 import java.time.ZoneOffset
-import java.time.ZonedDateTime
 import java.time.format.DateTimeFormatter
 import java.time.temporal.TemporalAmount
+import java.util.IdentityHashMap
 import java.util.LinkedList
 import java.util.Locale
 import java.util.logging.Logger
@@ -55,6 +57,22 @@ object AndroidTimeUtils {
     private val logger
         get() = Logger.getLogger(javaClass.name)
 
+    /** maximum number of entries in [androidifiedTimeZones] before it's cleared */
+    private const val MAX_ANDROIDIFIED_TIME_ZONES = 100
+
+    /**
+     * Androidified time zones (see [androidifiedTimeZone]), keyed by identity of the original time zone
+     * because [TimeZone.equals] compares the whole VTIMEZONE. Synchronized on itself.
+     */
+    private val androidifiedTimeZones = IdentityHashMap<TimeZone, AndroidifiedTimeZone>()
+
+    /**
+     * @param timeZone      androidified time zone
+     * @param defaultTzId   if the time zone is not known and has been mapped to the system default time zone:
+     *                      ID of the system default time zone at that time (so that the entry can be discarded when it changes)
+     */
+    private class AndroidifiedTimeZone(val timeZone: TimeZone?, val defaultTzId: String?)
+
 
     /**
      * Ensures that a given [DateProperty] either
@@ -69,8 +87,9 @@ object AndroidTimeUtils {
      */
     fun androidifyTimeZone(date: DateProperty?) {
         if (DateUtils.isDateTime(date) && date?.isUtc == false) {
-            val tzID = DateUtils.findAndroidTimezoneID(date.timeZone?.id)
-            date.timeZone = DateUtils.ical4jTimeZone(tzID)
+            val tz = androidifiedTimeZone(date.timeZone)
+            if (date.timeZone !== tz)
+                date.timeZone = tz
         }
     }
 
@@ -86,11 +105,12 @@ object AndroidTimeUtils {
         // periods (RDate only)
         val periods = (dateList as? RDate)?.periods
         if (periods != null && periods.size > 0 && !periods.isUtc) {
-            val tzID = DateUtils.findAndroidTimezoneID(periods.timeZone?.id)
+            val tz = androidifiedTimeZone(periods.timeZone)
 
             // Setting the time zone won't work until resolved in ical4j (https://github.com/ical4j/ical4j/discussions/568)
             // DateListProperty.setTimeZone() does not set the timeZone property when the DateList has PERIODs
-            dateList.timeZone = DateUtils.ical4jTimeZone(tzID)
+            if (dateList.timeZone !== tz)
+                dateList.timeZone = tz
 
             return //  RDate can only contain periods OR dates - not both, bail out fast
         }
@@ -99,12 +119,52 @@ object AndroidTimeUtils {
         val dates = dateList.dates
         if (dates != null && dates.size > 0) {
             if (dates.type == Value.DATE_TIME && !dates.isUtc) {
-                val tzID = DateUtils.findAndroidTimezoneID(dates.timeZone?.id)
-                dateList.timeZone = DateUtils.ical4jTimeZone(tzID)
+                val tz = androidifiedTimeZone(dates.timeZone)
+                if (dateList.timeZone !== tz)
+                    dateList.timeZone = tz
             }
         }
     }
 
+    /**
+     * Finds the time zone with an ID that is available in Android for a given time zone
+     * (see [DateUtils.findAndroidTimezoneID]).
+     *
+     * Results are cached per time zone instance, so that the time zones of a calendar (which are
+     * usually the same instances for all events, like for events with Windows time zone names from
+     * Outlook) are only resolved once. When the time zone is already the registry time zone
+     * with an Android ID, the same instance is returned.
+     *
+     * @param timeZone  time zone to androidify; *null* for floating time (system default time zone, not cached)
+     * @return time zone with Android ID (*null* if the time zone couldn't be loaded)
+     */
+    private fun androidifiedTimeZone(timeZone: TimeZone?): TimeZone? {
+        if (timeZone == null)
+            return DateUtils.ical4jTimeZone(DateUtils.findAndroidTimezoneID(null))
+
+        val defaultTzId = java.util.TimeZone.getDefault().id
+        synchronized(androidifiedTimeZones) {
+            androidifiedTimeZones[timeZone]?.let { cached ->
+                if (cached.defaultTzId == null || cached.defaultTzId == defaultTzId)
+                    return cached.timeZone
+            }
+        }
+
+        val tzID = DateUtils.findAndroidTimezoneID(timeZone.id)
+        val androidified = AndroidifiedTimeZone(
+            DateUtils.ical4jTimeZone(tzID),
+            // unknown time zones are mapped to the system default time zone, which may change
+            defaultTzId.takeIf { tzID == it && tzID != timeZone.id }
+        )
+
+        synchronized(androidifiedTimeZones) {
+            if (androidifiedTimeZones.size >= MAX_ANDROIDIFIED_TIME_ZONES)
+                androidifiedTimeZones.clear()
+            androidifiedTimeZones[timeZone] = androidified
+        }
+        return androidified.timeZone
+    }
+
     /**
      * Returns the time-zone ID for a given date or date-time that should be used to store it
      * in the Android calendar provider.
@@ -199,18 +259,14 @@ object AndroidTimeUtils {
                         }
                     } else {
                         // DTSTART is DATE-TIME; amend DATE-TIME with clock time from dtStart
+                        val dtStartZone = (dtStart as DateTime).requireZoneId()
+                        val dtStartTime = ZoneOffsets.millisOfDay(dtStart.toLocalMillis())
+                        val dateFormatUtc = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'", Locale.ROOT)
                         dateListProp.dates.mapTo(strDates) { date ->
                             // take time (including time zone) from dtStart and date from date
-                            val dtStartTime = (dtStart as DateTime).toZonedDateTime()
-                            val localDate = date.toLocalDate()
-                            val dtStartTimeUtc = ZonedDateTime.of(
-                                localDate,
-                                dtStartTime.toLocalTime(),
-                                dtStartTime.zone
-                            ).withZoneSameInstant(ZoneOffset.UTC)
-
-                            val dateFormatUtc = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'", Locale.ROOT)
-                            dtStartTimeUtc.format(dateFormatUtc)
+                            val localMillis = ZoneOffsets.localMillis(date.toLocalDate(), dtStartTime)
+                            val dtStartTimeUtc = Instant.ofEpochMilli(ZoneOffsets.toUtcMillis(dtStartZone, localMillis))
+                            dateFormatUtc.format(dtStartTimeUtc.atOffset(ZoneOffset.UTC))
                         }
                     }
             }
@@ -15,6 +15,7 @@ import net.fortuna.ical4j.model.component.VTimeZone
 import net.fortuna.ical4j.model.property.DateProperty
 import java.io.StringReader
 import java.time.ZoneId
+import java.util.concurrent.ConcurrentHashMap
 import java.util.logging.Logger
 
 /**
@@ -48,32 +49,83 @@ object DateUtils {
      *    case-insensitive, because that would for instance return "EST" for "Westeuropäische Sommerzeit".
      * 3. If nothing can be found or [tzId] is `null`, return the system default time zone.
      *
+     * The available zone IDs are indexed once, and the results of partial matches (including
+     * "no match") are memoized, so that repeated calls don't have to scan all zone IDs.
+     *
      * @param tzID time zone ID to be converted into Android time zone ID
      *
      * @return best matching Android time zone ID
      */
     fun findAndroidTimezoneID(tzID: String?): String {
-        val availableTZs = ZoneId.getAvailableZoneIds()
         var result: String? = null
 
         if (tzID != null) {
             // first, try to find an exact match (case insensitive)
-            result = availableTZs.firstOrNull { it.equals(tzID, true) }
+            result = zoneIdIndex.byKey[caseInsensitiveKey(tzID)]
 
             // if that doesn't work, try to find something else that matches
-            if (result == null)
-                for (availableTZ in availableTZs)
-                    if (availableTZ.contains(tzID) || tzID.contains(availableTZ)) {
-                        result = availableTZ
-                        logger.warning("Couldn't find system time zone \"$tzID\", assuming $result")
-                        break
-                    }
+            if (result == null) {
+                val match = fuzzyZoneIds.getOrPut(tzID) {
+                    if (fuzzyZoneIds.size >= MAX_FUZZY_ZONE_IDS)
+                        fuzzyZoneIds.clear()
+                    findFuzzyZoneId(tzID) ?: NO_ZONE_ID
+                }
+                if (match != NO_ZONE_ID)
+                    result = match
+            }
         }
 
         // if that doesn't work, use device default as fallback
         return result ?: TimeZone.getDefault().id
     }
 
+    /**
+     * Available zone IDs (in the iteration order of [ZoneId.getAvailableZoneIds]) and a
+     * case-insensitive index of them (see [caseInsensitiveKey]). If there are several
+     * IDs with the same key, the first one is used.
+     */
+    private class ZoneIdIndex(
+        val ids: Array<String>,
+        val byKey: Map<String, String>
+    )
+
+    private val zoneIdIndex by lazy {
+        val ids = ZoneId.getAvailableZoneIds().toTypedArray()
+        val byKey = HashMap<String, String>(ids.size * 2)
+        for (id in ids)
+            byKey.putIfAbsent(caseInsensitiveKey(id), id)
+        ZoneIdIndex(ids, byKey)
+    }
+
+    /** Maximum number of memoized results of partial matches before the memo is cleared. */
+    private const val MAX_FUZZY_ZONE_IDS = 1000
+
+    /** Memoized marker for "no partial match". */
+    private const val NO_ZONE_ID = ""
+
+    /** Memoized results of partial matches ([NO_ZONE_ID] when there's no match) */
+    private val fuzzyZoneIds = ConcurrentHashMap<String, String>()
+
+    /**
+     * Maps a string to a key so that two strings have the same key exactly if they're
+     * equal according to [String.equals] with `ignoreCase = true`.
+     */
+    private fun caseInsensitiveKey(s: String): String {
+        val chars = CharArray(s.length)
+        for (i in s.indices)
+            chars[i] = s[i].uppercaseChar().lowercaseChar()
+        return String(chars)
+    }
+
+    private fun findFuzzyZoneId(tzID: String): String? {
+        for (availableTZ in zoneIdIndex.ids)
+            if (availableTZ.contains(tzID) || tzID.contains(availableTZ)) {
+                logger.warning("Couldn't find system time zone \"$tzID\", assuming $availableTZ")
+                return availableTZ
+            }
+        return null
+    }
+
     /**
      * Gets a [ZoneId] from a given ID string. In opposite to [ZoneId.of],
      * this methods returns null when the zone is not available.
@@ -0,0 +1,48 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android.util
+
+import java.util.logging.Level
+import java.util.logging.Logger
+
+/**
+ * Level-guarded logging with lazily built messages and parameters.
+ *
+ * Messages and parameters are only built when the [Logger] is loggable at the given level,
+ * so that expensive objects (like [android.content.ContentProviderOperation]s or string
+ * representations of whole rows) are not created for log records that would be discarded anyway.
+ *
+ * The `Supplier` variants of [Logger] can't be used because they're only available
+ * since Android 7 (API level 24).
+ */
+object LogUtils {
+
+    /**
+     * Logs a message that is only built when [level] is loggable.
+     *
+     * @param level     log level
+     * @param thrown    optional [Throwable] to log
+     * @param message   builds the message
+     */
+    inline fun Logger.logLazy(level: Level, thrown: Throwable? = null, message: () -> String) {
+        if (isLoggable(level))
+            log(level, message(), thrown)
+    }
+
+    /**
+     * Logs a message with a parameter that is only built when [level] is loggable.
+     *
+     * @param level     log level
+     * @param message   message
+     * @param param     builds the parameter (for instance a row or an operation)
+     */
+    inline fun Logger.logLazy(level: Level, message: String, param: () -> Any?) {
+        if (isLoggable(level))
+            log(level, message, param())
+    }
+
+}
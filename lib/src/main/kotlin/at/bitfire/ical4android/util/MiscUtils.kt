@@ -17,6 +17,9 @@ import android.provider.CalendarContract
 
 object MiscUtils {
 
+    /** Maximum number of values per query in [queryIn] (SQLite allows at most 999 variables per statement on older Android versions). */
+    const val MAX_IDS_PER_QUERY = 500
+
     // various extension methods
 
     fun ContentProviderClient.closeCompat() {
@@ -42,9 +45,50 @@ object MiscUtils {
         return this
     }
 
+    /**
+     * Queries all rows whose [column] is one of the given [values] (usually IDs). The values are split into chunks
+     * (one query per chunk) so that the number of SQL variables stays below the SQLite limit.
+     *
+     * @param uri              URI to query
+     * @param projection       columns to query (*null* for all columns)
+     * @param column           column to match against [values] (like `event_id`)
+     * @param values           values to match
+     * @param selection        additional selection (*null* for none)
+     * @param selectionArgs    arguments for the additional selection
+     * @param removeBlankRows  whether blank values should be removed from the rows (see [toValues])
+     * @param chunkSize        maximum number of values per query
+     *
+     * @return all matching rows
+     */
+    fun ContentProviderClient.queryIn(
+        uri: Uri,
+        projection: Array<String>?,
+        column: String,
+        values: Collection<Any>,
+        selection: String? = null,
+        selectionArgs: Array<String>? = null,
+        removeBlankRows: Boolean = false,
+        chunkSize: Int = MAX_IDS_PER_QUERY
+    ): List<ContentValues> {
+        val rows = mutableListOf<ContentValues>()
+        for (chunk in values.chunked(chunkSize)) {
+            val placeholders = chunk.joinToString(",") { "?" }
+            val where = if (selection != null) "($selection) AND $column IN ($placeholders)" else "$column IN ($placeholders)"
+            val whereArgs = (selectionArgs ?: arrayOf()) + chunk.map { it.toString() }
+            query(uri, projection, where, whereArgs, null)?.use { cursor ->
+                val reader = RowReader(cursor)
+                while (cursor.moveToNext())
+                    rows += reader.toValues(removeBlankRows)
+            }
+        }
+        return rows
+    }
+
     /**
      * Returns the entire contents of the current row as a [ContentValues] object.
      *
+     * When many rows of the same cursor are read, [RowReader] should be used instead.
+     *
      * @param  removeBlankRows  whether rows with blank values should be removed
      * @return entire contents of the current row
      */
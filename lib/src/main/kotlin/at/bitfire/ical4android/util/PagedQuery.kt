@@ -0,0 +1,91 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android.util
+
+import android.content.ContentProviderClient
+import android.content.ContentValues
+import android.net.Uri
+
+/**
+ * Lazy query that pages through the matching rows by ID ranges, so that only one page of rows
+ * is held in memory at a time.
+ *
+ * Every iteration first queries the IDs of all matching rows (only the ID column) and then queries
+ * the requested columns for ranges of [pageSize] IDs. No cursor stays open between pages, so the
+ * sequence doesn't have to be closed and may be abandoned at any time.
+ *
+ * Rows that are inserted while iterating may or may not be returned; rows that are deleted while
+ * iterating are skipped.
+ *
+ * @param provider      content provider client to query
+ * @param uri           URI to query
+ * @param projection    columns to query (*null* for all columns); [idColumn] is added if it's missing
+ * @param idColumn      column with the (numeric, unique) row ID
+ * @param where         selection
+ * @param whereArgs     arguments for selection
+ * @param pageSize      number of rows per page
+ * @param transform     creates the resulting object from a row (only contains the columns of [projection])
+ */
+class PagedQuery<out T>(
+    private val provider: ContentProviderClient,
+    private val uri: Uri,
+    projection: Array<String>?,
+    private val idColumn: String,
+    private val where: String?,
+    private val whereArgs: Array<String>?,
+    private val pageSize: Int,
+    private val transform: (ContentValues) -> T
+): Sequence<T> {
+
+    private val projection =
+        if (projection == null || projection.contains(idColumn))
+            projection
+        else
+            projection + idColumn
+
+    init {
+        require(pageSize > 0) { "Page size must be positive" }
+    }
+
+    override fun iterator(): Iterator<T> = sequence {
+        val ids = queryIds()
+        var start = 0
+        while (start < ids.size) {
+            val end = minOf(start + pageSize, ids.size)
+            for (row in queryRange(ids[start], ids[end - 1]))
+                yield(transform(row))
+            start = end
+        }
+    }.iterator()
+
+    private fun queryIds(): LongArray {
+        val ids = mutableListOf<Long>()
+        provider.query(uri, arrayOf(idColumn), where, whereArgs, idColumn)?.use { cursor ->
+            while (cursor.moveToNext())
+                ids += cursor.getLong(0)
+        }
+        return ids.toLongArray()
+    }
+
+    private fun queryRange(first: Long, last: Long): List<ContentValues> {
+        val rangeWhere = "($idColumn BETWEEN ? AND ?)"
+        val rangeWhereArgs = arrayOf(first.toString(), last.toString())
+        val rows = ArrayList<ContentValues>(pageSize)
+        provider.query(
+            uri, projection,
+            if (where != null) "($where) AND $rangeWhere" else rangeWhere,
+            (whereArgs ?: arrayOf()) + rangeWhereArgs,
+            idColumn
+        )?.use { cursor ->
+            val reader = RowReader(cursor)
+            while (cursor.moveToNext())
+                rows += reader.toValues()
+        }
+        return rows
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android.util
+
+import android.content.ContentValues
+import android.database.Cursor
+
+/**
+ * Typed reader for the rows of a [Cursor]. The column indices are resolved once per cursor
+ * (and not once per row and column like with [MiscUtils.toValues] and [ContentValues] lookups),
+ * and values are read directly from the cursor without boxing the whole row.
+ *
+ * Usage:
+ *
+ * ```
+ * provider.query(…)?.use { cursor ->
+ *     val row = RowReader(cursor)
+ *     while (cursor.moveToNext()) {
+ *         val id = row.getLong(Events._ID)
+ *         …
+ *     }
+ * }
+ * ```
+ *
+ * Blank (empty or only white-space) strings are treated as *null* by all getters.
+ *
+ * The `populate…` methods of [at.bitfire.ical4android.AndroidEvent], [at.bitfire.ical4android.DmfsTask]
+ * and [at.bitfire.ical4android.JtxICalObject] are overridable and take rows as [ContentValues]
+ * (events are also read as [android.content.Entity], which only provides [ContentValues]), so they
+ * still read boxed values; [toValues] only makes building these rows cheaper.
+ *
+ * @param cursor    cursor to read from; the reader always reads the current row
+ */
+class RowReader(
+    val cursor: Cursor
+) {
+
+    private val columnNames: Array<String> = cursor.columnNames
+    private val indices = HashMap<String, Int>(columnNames.size * 2).apply {
+        columnNames.forEachIndexed { idx, name -> put(name, idx) }
+    }
+
+    /**
+     * @param column    column name
+     * @return index of the given column (-1 if the column doesn't exist)
+     */
+    fun index(column: String): Int = indices[column] ?: -1
+
+    /**
+     * @param column    column name
+     * @return whether the cursor has the given column
+     */
+    fun has(column: String) = indices.containsKey(column)
+
+    /**
+     * @param column    column name
+     * @return whether the value of the given column is *null* or blank (or the column doesn't exist)
+     */
+    fun isNull(column: String): Boolean {
+        val idx = index(column)
+        if (idx == -1 || cursor.isNull(idx))
+            return true
+        return cursor.getType(idx) == Cursor.FIELD_TYPE_STRING && cursor.getString(idx).isBlank()
+    }
+
+    /**
+     * @param column    column name
+     * @return value of the given column; *null* if the value is *null*, blank or not a number, or if the column doesn't exist
+     */
+    fun getLong(column: String): Long? {
+        val idx = index(column)
+        if (idx == -1)
+            return null
+        return when (cursor.getType(idx)) {
+            Cursor.FIELD_TYPE_INTEGER -> cursor.getLong(idx)
+            Cursor.FIELD_TYPE_FLOAT -> cursor.getDouble(idx).toLong()
+            Cursor.FIELD_TYPE_STRING -> cursor.getString(idx).trim().toLongOrNull()
+            else -> null
+        }
+    }
+
+    /**
+     * @param column    column name
+     * @return value of the given column; *null* if the value is *null*, blank or not a number, or if the column doesn't exist
+     */
+    fun getInt(column: String): Int? = getLong(column)?.toInt()
+
+    /**
+     * @param column    column name
+     * @return value of the given column interpreted as boolean (numbers other than 0 and `"true"` are *true*);
+     * *null* if the value is *null* or blank, or if the column doesn't exist
+     */
+    fun getBoolean(column: String): Boolean? {
+        val idx = index(column)
+        if (idx == -1)
+            return null
+        return when (cursor.getType(idx)) {
+            Cursor.FIELD_TYPE_INTEGER -> cursor.getLong(idx) != 0L
+            Cursor.FIELD_TYPE_FLOAT -> cursor.getDouble(idx) != 0.0
+            Cursor.FIELD_TYPE_STRING -> {
+                val value = cursor.getString(idx).trim()
+                when {
+                    value.isEmpty() -> null
+                    value.equals("true", true) -> true
+                    else -> (value.toLongOrNull() ?: 0L) != 0L
+                }
+            }
+            else -> null
+        }
+    }
+
+    /**
+     * @param column    column name
+     * @return value of the given column; *null* if the value is *null* or blank, or if the column doesn't exist
+     */
+    fun getString(column: String): String? {
+        val idx = index(column)
+        if (idx == -1 || cursor.isNull(idx))
+            return null
+        return cursor.getString(idx).takeUnless { it.isBlank() }
+    }
+
+    /**
+     * @param column    column name
+     * @return value of the given column; *null* if the value is *null* or the column doesn't exist
+     */
+    fun getBlob(column: String): ByteArray? {
+        val idx = index(column)
+        if (idx == -1 || cursor.isNull(idx))
+            return null
+        return cursor.getBlob(idx)
+    }
+
+    /**
+     * Returns the entire contents of the current row as a [ContentValues] object, with the same
+     * value types as [MiscUtils.toValues] (BLOBs as byte arrays, all other values as [String]s),
+     * so that it can be passed to methods which expect rows as [ContentValues].
+     *
+     * @param removeBlankRows   whether blank values should be left out (like [MiscUtils.removeBlankStrings])
+     * @return entire contents of the current row
+     */
+    fun toValues(removeBlankRows: Boolean = false): ContentValues {
+        val values = ContentValues(columnNames.size)
+        for (idx in columnNames.indices) {
+            val name = columnNames[idx]
+            if (cursor.getType(idx) == Cursor.FIELD_TYPE_BLOB)
+                values.put(name, cursor.getBlob(idx))
+            else {
+                val value = cursor.getString(idx)
+                if (removeBlankRows && value != null && value.isBlank())
+                    continue
+                values.put(name, value)
+            }
+        }
+        return values
+    }
+
+}
@@ -47,16 +47,14 @@ object TimeApiExtensions {
         return if (this == TimeZones.getUtcTimeZone())
             ZoneOffset.UTC
         else
-            ZoneId.of(id)
+            ZoneOffsets.zoneId(id)
     }
 
 
     /***** Dates *****/
 
-    fun Date.toLocalDate(): LocalDate {
-        val utcDateTime = ZonedDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneOffset.UTC)
-        return utcDateTime.toLocalDate()
-    }
+    fun Date.toLocalDate(): LocalDate =
+        ZoneOffsets.toLocalDate(time)
 
     fun DateTime.requireTimeZone(): TimeZone =
             if (isUtc)
@@ -70,11 +68,17 @@ object TimeApiExtensions {
             else
                 timeZone?.toZoneIdCompat() ?: ZoneId.systemDefault()
 
+    /**
+     * @return local milliseconds (see [ZoneOffsets]) of this date-time in its time zone
+     */
+    fun DateTime.toLocalMillis(): Long =
+            ZoneOffsets.toLocalMillis(requireZoneId(), time)
+
     fun DateTime.toLocalDate(): LocalDate =
-            toZonedDateTime().toLocalDate()
+            ZoneOffsets.toLocalDate(toLocalMillis())
 
     fun DateTime.toLocalTime(): LocalTime =
-            toZonedDateTime().toLocalTime()
+            ZoneOffsets.toLocalTime(toLocalMillis())
 
     fun DateTime.toZonedDateTime(): ZonedDateTime =
             ZonedDateTime.ofInstant(Instant.ofEpochMilli(time), requireZoneId())
@@ -0,0 +1,116 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android.util
+
+import net.fortuna.ical4j.model.Calendar
+import net.fortuna.ical4j.model.Component
+import net.fortuna.ical4j.model.Parameter
+import net.fortuna.ical4j.model.Property
+import net.fortuna.ical4j.model.TimeZone
+import net.fortuna.ical4j.model.parameter.TzId
+import net.fortuna.ical4j.model.parameter.Value
+import net.fortuna.ical4j.model.property.DateListProperty
+import net.fortuna.ical4j.model.property.DateProperty
+import java.util.IdentityHashMap
+
+/**
+ * Intern table for the time zone references of one parsed iCalendar (see [at.bitfire.ical4android.ICalendar.fromReader]).
+ *
+ * In large calendars, every DTSTART/DTEND/RDATE/EXDATE has its own `TZID` parameter (and
+ * the ical4j rules of [at.bitfire.ical4android.validation.ICalPreprocessor] create new ones), so
+ * that there are many equal [TzId] objects and TZID strings. This table makes all date properties
+ * with the same TZID share
+ *
+ * - one [TzId] parameter (and thus one TZID string) and
+ * - one [TimeZone] instance – but only if the time zones are equal, so that the represented times don't change.
+ *
+ * Not thread-safe; use one table per parsed iCalendar.
+ */
+class TimeZoneInternTable {
+
+    /** shared TZID parameters by value */
+    private val tzIds = HashMap<String, TzId>()
+
+    /** first seen time zone per ID */
+    private val timeZones = HashMap<String, TimeZone>()
+
+    /** time zone instance → shared time zone instance (itself if it's not equal to the shared one) */
+    private val sharedTimeZones = IdentityHashMap<TimeZone, TimeZone>()
+
+    /** number of [TzId] parameters that have been replaced by a shared one */
+    var internedTzIds = 0
+        private set
+
+    /** number of time zone references that have been replaced by a shared one */
+    var internedTimeZones = 0
+        private set
+
+
+    /**
+     * Interns the time zone references of the date properties of all components of a calendar.
+     *
+     * @param calendar  calendar to process (will be modified)
+     */
+    fun intern(calendar: Calendar) {
+        for (component in calendar.components)
+            intern(component)
+    }
+
+    /**
+     * Interns the time zone references of the date properties of a component.
+     *
+     * @param component     component to process (will be modified)
+     */
+    fun intern(component: Component) {
+        for (property in component.properties)
+            when (property) {
+                is DateProperty -> {
+                    val timeZone = property.timeZone
+                    if (timeZone != null) {
+                        val shared = sharedTimeZone(timeZone)
+                        if (shared !== timeZone) {
+                            property.timeZone = shared
+                            internedTimeZones++
+                        }
+                    }
+                    internTzId(property)
+                }
+                is DateListProperty -> {
+                    val dates = property.dates
+                    val timeZone = dates?.timeZone
+                    if (timeZone != null && dates.type == Value.DATE_TIME) {
+                        val shared = sharedTimeZone(timeZone)
+                        if (shared !== timeZone) {
+                            property.timeZone = shared
+                            internedTimeZones++
+                        }
+                    }
+                    internTzId(property)
+                }
+            }
+    }
+
+
+    private fun sharedTimeZone(timeZone: TimeZone): TimeZone =
+        sharedTimeZones.getOrPut(timeZone) {
+            val first = timeZones.getOrPut(timeZone.id) { timeZone }
+            if (first === timeZone || first == timeZone)
+                first
+            else
+                timeZone        // same ID, but other definition: keep it
+        }
+
+    private fun internTzId(property: Property) {
+        val tzId = property.getParameter<TzId>(Parameter.TZID) ?: return
+        val shared = tzIds.getOrPut(tzId.value) { tzId }
+        if (shared !== tzId) {
+            property.parameters.replace(shared)
+            internedTzIds++
+        }
+    }
+
+}
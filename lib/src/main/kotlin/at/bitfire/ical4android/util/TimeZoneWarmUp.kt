@@ -0,0 +1,78 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android.util
+
+import at.bitfire.ical4android.AndroidCalendar
+import java.util.logging.Level
+import java.util.logging.Logger
+import kotlin.concurrent.thread
+
+/**
+ * Preloading of time zones.
+ *
+ * When a time zone is used for the first time after process start, ical4j has to load its
+ * configuration and parse the VTIMEZONE definition of the time zone from its resources. Because
+ * Android may kill the sync process often, this happens again and again. Apps can call [warmUp]
+ * (or [warmUpInBackground]) with the time zones that are used by an account (see
+ * [AndroidCalendar.usedTimeZoneIds]) at startup, so that the first sync doesn't have to wait for it.
+ *
+ * Like [DateUtils], the calling thread's contextClassLoader must be set to an Android
+ * Context.classLoader before the first call.
+ */
+object TimeZoneWarmUp {
+
+    private val logger
+        get() = Logger.getLogger(javaClass.name)
+
+
+    /**
+     * Loads the given time zones into the caches that are used for parsing and mapping:
+     *
+     * - the ical4j time zone registry (including the VTIMEZONE definitions loaded by ical4j),
+     * - the Android time zone ID lookup ([DateUtils.findAndroidTimezoneID]),
+     * - the offset tables of [ZoneOffsets].
+     *
+     * @param ids   time zone IDs (for instance from [AndroidCalendar.usedTimeZoneIds])
+     * @return number of given time zones that are known to ical4j
+     */
+    fun warmUp(ids: Iterable<String>): Int {
+        val start = System.nanoTime()
+        var loaded = 0
+        for (id in ids.toSet())
+            try {
+                if (DateUtils.ical4jTimeZone(id) != null)
+                    loaded++
+
+                // time zone that will be used when the event is stored in/read from the calendar provider
+                val androidId = DateUtils.findAndroidTimezoneID(id)
+                if (androidId != id)
+                    DateUtils.ical4jTimeZone(androidId)
+                DateUtils.getZoneId(androidId)?.let { ZoneOffsets.table(it) }
+            } catch (e: Exception) {
+                logger.log(Level.WARNING, "Couldn't preload time zone $id", e)
+            }
+        logger.fine("Preloaded $loaded time zone(s) in ${(System.nanoTime() - start) / 1_000_000} ms")
+        return loaded
+    }
+
+    /**
+     * Calls [warmUp] on a new background thread.
+     *
+     * @param ids   time zone IDs
+     * @return the started thread (can be used to wait for the warm-up)
+     */
+    fun warmUpInBackground(ids: Iterable<String>): Thread =
+        thread(
+            name = "TimeZoneWarmUp",
+            isDaemon = true,
+            contextClassLoader = Thread.currentThread().contextClassLoader,
+            priority = Thread.MIN_PRIORITY
+        ) {
+            warmUp(ids)
+        }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android.util
+
+import androidx.annotation.VisibleForTesting
+import java.time.Instant
+import java.time.LocalDate
+import java.time.LocalTime
+import java.time.Year
+import java.time.ZoneId
+import java.time.ZoneOffset
+import java.time.zone.ZoneRules
+import java.util.Arrays
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Shared conversion between UTC and local time (both as epoch milliseconds) for the mapping code.
+ *
+ * For every zone, a [Table] with the offset transitions of the years around the current year
+ * (see [TABLE_YEARS_BEFORE] and [TABLE_YEARS_AFTER]) is calculated once and then cached, so that
+ * conversions within that range are a binary search over a primitive array and don't allocate
+ * any objects. Times outside the range are converted with the [ZoneRules] of the zone.
+ *
+ * "Local milliseconds" are the milliseconds since 1970-01-01T00:00 local time, so the local date
+ * and time can be taken from them with [epochDay] and [millisOfDay].
+ */
+object ZoneOffsets {
+
+    /** number of years before the current year that are covered by the transition tables */
+    const val TABLE_YEARS_BEFORE = 100
+
+    /** number of years after the current year that are covered by the transition tables */
+    const val TABLE_YEARS_AFTER = 50
+
+    const val MILLIS_PER_DAY = 86_400_000L
+
+    private const val MILLIS_PER_SECOND = 1000
+
+    private val zoneIds = ConcurrentHashMap<String, ZoneId>()
+    private val tables = ConcurrentHashMap<ZoneId, Table>()
+
+
+    /**
+     * Resolves a time zone ID to a [ZoneId]. Resolved IDs are cached.
+     *
+     * @param id    time zone ID
+     * @return zone with the given ID
+     *
+     * @throws java.time.DateTimeException if the ID is invalid or unknown (see [ZoneId.of])
+     */
+    fun zoneId(id: String): ZoneId =
+        zoneIds.getOrPut(id) { ZoneId.of(id) }
+
+    /**
+     * Gets the (cached) transition table of a zone.
+     *
+     * @param zoneId    zone
+     * @return transition table of the zone
+     */
+    fun table(zoneId: ZoneId): Table =
+        tables.getOrPut(zoneId) {
+            val rules = zoneId.rules
+            if (rules.isFixedOffset)
+                Table(rules, Long.MIN_VALUE, Long.MAX_VALUE)
+            else {
+                val year = Year.now(ZoneOffset.UTC).value
+                Table(
+                    rules,
+                    LocalDate.of(year - TABLE_YEARS_BEFORE, 1, 1).toEpochDay() * MILLIS_PER_DAY,
+                    LocalDate.of(year + TABLE_YEARS_AFTER + 1, 1, 1).toEpochDay() * MILLIS_PER_DAY
+                )
+            }
+        }
+
+    /**
+     * Whether the transition table of a zone has already been calculated.
+     */
+    @VisibleForTesting
+    internal fun isTableCached(zoneId: ZoneId) = tables.containsKey(zoneId)
+
+    fun offsetMillis(zoneId: ZoneId, utcMillis: Long) = table(zoneId).offsetMillis(utcMillis)
+
+    fun toLocalMillis(zoneId: ZoneId, utcMillis: Long) = table(zoneId).toLocalMillis(utcMillis)
+
+    fun toUtcMillis(zoneId: ZoneId, localMillis: Long) = table(zoneId).toUtcMillis(localMillis)
+
+
+    /**
+     * @param localMillis   local milliseconds
+     * @return days since 1970-01-01 (local date, see [LocalDate.ofEpochDay])
+     */
+    fun epochDay(localMillis: Long): Long = Math.floorDiv(localMillis, MILLIS_PER_DAY)
+
+    /**
+     * @param localMillis   local milliseconds
+     * @return milliseconds since local midnight
+     */
+    fun millisOfDay(localMillis: Long): Long = Math.floorMod(localMillis, MILLIS_PER_DAY)
+
+    /**
+     * @param date      local date
+     * @param millisOfDay milliseconds since local midnight
+     * @return local milliseconds
+     */
+    fun localMillis(date: LocalDate, millisOfDay: Long) = date.toEpochDay() * MILLIS_PER_DAY + millisOfDay
+
+    fun toLocalDate(localMillis: Long): LocalDate = LocalDate.ofEpochDay(epochDay(localMillis))
+
+    fun toLocalTime(localMillis: Long): LocalTime = LocalTime.ofNanoOfDay(millisOfDay(localMillis) * 1_000_000)
+
+
+    /**
+     * Offset transitions of one zone within a time range.
+     *
+     * @param rules         rules of the zone (used for times outside the range)
+     * @param fromMillis    start of the range (UTC epoch milliseconds, inclusive)
+     * @param toMillis      end of the range (UTC epoch milliseconds, exclusive)
+     */
+    class Table(
+        private val rules: ZoneRules,
+        val fromMillis: Long,
+        val toMillis: Long
+    ) {
+
+        /** UTC epoch milliseconds of the transitions within the range, ascending */
+        private val transitions: LongArray
+
+        /** `offsets[i]` is the offset (in ms) before `transitions[i]`; the last element is the offset after the last transition */
+        private val offsets: IntArray
+
+        init {
+            val transitionList = mutableListOf<Long>()
+            val offsetList = mutableListOf<Int>()
+            if (rules.isFixedOffset)
+                offsetList += rules.getOffset(Instant.EPOCH).totalSeconds * MILLIS_PER_SECOND
+            else {
+                offsetList += rules.getOffset(Instant.ofEpochMilli(fromMillis)).totalSeconds * MILLIS_PER_SECOND
+                var transition = rules.nextTransition(Instant.ofEpochMilli(fromMillis))
+                while (transition != null && transition.toEpochSecond() * MILLIS_PER_SECOND < toMillis) {
+                    transitionList += transition.toEpochSecond() * MILLIS_PER_SECOND
+                    offsetList += transition.offsetAfter.totalSeconds * MILLIS_PER_SECOND
+                    transition = rules.nextTransition(transition.instant)
+                }
+            }
+            transitions = transitionList.toLongArray()
+            offsets = offsetList.toIntArray()
+        }
+
+        /** number of transitions in the table */
+        val size
+            get() = transitions.size
+
+        /**
+         * @param utcMillis     UTC epoch milliseconds
+         * @return offset from UTC (in ms) at the given time
+         */
+        fun offsetMillis(utcMillis: Long): Int {
+            if (utcMillis < fromMillis || utcMillis >= toMillis)
+                return rules.getOffset(Instant.ofEpochMilli(utcMillis)).totalSeconds * MILLIS_PER_SECOND
+
+            val idx = Arrays.binarySearch(transitions, utcMillis)
+            return if (idx >= 0)
+                offsets[idx + 1]        // exactly at a transition: offset after the transition
+            else
+                offsets[-idx - 1]       // -idx-1 = number of transitions before utcMillis
+        }
+
+        /**
+         * @param utcMillis     UTC epoch milliseconds
+         * @return local milliseconds
+         */
+        fun toLocalMillis(utcMillis: Long) = utcMillis + offsetMillis(utcMillis)
+
+        /**
+         * Converts a local time to UTC in the same way as [java.time.ZonedDateTime.of]:
+         *
+         * - when the local time is ambiguous (in an overlap), the earlier offset is used,
+         * - when the local time doesn't exist (in a gap), it's moved forward by the length of the gap.
+         *
+         * Assumes that there's at most one transition within ±1 day (offsets are between -18 and +18 hours).
+         *
+         * @param localMillis   local milliseconds
+         * @return UTC epoch milliseconds
+         */
+        fun toUtcMillis(localMillis: Long): Long {
+            val early = offsetMillis(localMillis - MILLIS_PER_DAY)
+            val late = offsetMillis(localMillis + MILLIS_PER_DAY)
+            if (early == late)
+                return localMillis - early
+
+            if (offsetMillis(localMillis - early) == early)     // valid with earlier offset (also in overlap)
+                return localMillis - early
+            if (offsetMillis(localMillis - late) == late)       // valid with later offset
+                return localMillis - late
+
+            // gap: move forward by length of gap, which is the same as using the earlier offset
+            return localMillis - early
+        }
+
+    }
+
+}
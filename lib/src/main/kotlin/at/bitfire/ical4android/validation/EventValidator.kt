@@ -12,14 +12,12 @@ import at.bitfire.ical4android.util.DateUtils
 import at.bitfire.ical4android.util.TimeApiExtensions.toIcal4jDate
 import at.bitfire.ical4android.util.TimeApiExtensions.toLocalDate
 import at.bitfire.ical4android.util.TimeApiExtensions.toZoneIdCompat
+import at.bitfire.ical4android.util.ZoneOffsets
 import net.fortuna.ical4j.model.DateTime
 import net.fortuna.ical4j.model.Recur
 import net.fortuna.ical4j.model.property.DtStart
 import net.fortuna.ical4j.model.property.RRule
 import net.fortuna.ical4j.util.TimeZones
-import java.time.LocalTime
-import java.time.ZonedDateTime
-import java.util.Calendar
 import java.util.TimeZone
 import java.util.logging.Logger
 
@@ -132,25 +130,19 @@ object EventValidator {
                         else /* floating time */
                             TimeZone.getDefault()
 
-                        val dtStartCal = Calendar.getInstance(dtStartTimeZone).apply {
-                            time = dtStart.date
-                        }
-                        val dtStartTime = LocalTime.of(
-                            dtStartCal.get(Calendar.HOUR_OF_DAY),
-                            dtStartCal.get(Calendar.MINUTE),
-                            dtStartCal.get(Calendar.SECOND)
-                        )
-
-                        val newUntil = ZonedDateTime.of(
-                            until.toLocalDate(),    // date from until
-                            dtStartTime,       // time from dtStart
-                            dtStartTimeZone.toZoneIdCompat()
-                        )
+                        val dtStartZone = dtStartTimeZone.toZoneIdCompat()
+
+                        // time from dtStart (whole seconds)
+                        val dtStartMillisOfDay = ZoneOffsets.millisOfDay(ZoneOffsets.toLocalMillis(dtStartZone, dtStart.date.time))
+                        val dtStartTime = dtStartMillisOfDay - dtStartMillisOfDay % 1000
+
+                        // date from until
+                        val newUntil = ZoneOffsets.toUtcMillis(dtStartZone, ZoneOffsets.localMillis(until.toLocalDate(), dtStartTime))
 
                         // Android requires UNTIL in UTC as defined in RFC 2445.
                         // https://android.googlesource.com/platform/frameworks/opt/calendar/+/refs/tags/android-12.1.0_r27/src/com/android/calendarcommon2/RecurrenceProcessor.java#93
                         val newUntilUTC = DateTime(true).apply {
-                            time = newUntil.toInstant().toEpochMilli()
+                            time = newUntil
                         }
 
                         // remove current RRULE and remember new one to be added
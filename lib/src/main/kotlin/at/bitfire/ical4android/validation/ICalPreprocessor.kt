@@ -26,6 +26,9 @@ import java.util.logging.Logger
  */
 object ICalPreprocessor {
 
+    private val logger
+        get() = Logger.getLogger(javaClass.name)
+
     private val propertyRules = arrayOf(
         CreatedPropertyRule(),      // make sure CREATED is UTC
 
@@ -66,14 +69,16 @@ object ICalPreprocessor {
 
     @Suppress("UNCHECKED_CAST")
     private fun applyRules(property: Property) {
-        propertyRules
-            .filter { rule -> rule.supportedType.isAssignableFrom(property::class.java) }
-            .forEach {
-                val beforeStr = property.toString()
-                (it as Rfc5545PropertyRule<Property>).applyTo(property)
-                val afterStr = property.toString()
-                if (beforeStr != afterStr)
-                    Logger.getLogger(javaClass.name).log(Level.FINER, "$beforeStr -> $afterStr")
+        for (rule in propertyRules)
+            if (rule.supportedType.isAssignableFrom(property::class.java)) {
+                // only serialize the property when the change will actually be logged
+                val beforeStr = if (logger.isLoggable(Level.FINER)) property.toString() else null
+                (rule as Rfc5545PropertyRule<Property>).applyTo(property)
+                if (beforeStr != null) {
+                    val afterStr = property.toString()
+                    if (beforeStr != afterStr)
+                        logger.log(Level.FINER, "$beforeStr -> $afterStr")
+                }
             }
     }
 
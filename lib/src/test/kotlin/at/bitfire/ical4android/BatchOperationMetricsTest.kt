@@ -0,0 +1,65 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class BatchOperationMetricsTest {
+
+    @Test
+    fun testHistogram_Buckets() {
+        val histogram = BatchOperationMetrics.Histogram(longArrayOf(1, 10, 100))
+        histogram.add(0)
+        histogram.add(1)
+        histogram.add(5)
+        histogram.add(10)
+        histogram.add(1000)
+
+        assertEquals(2L, histogram.bucketCount(0))
+        assertEquals(2L, histogram.bucketCount(1))
+        assertEquals(0L, histogram.bucketCount(2))
+        assertEquals(1L, histogram.bucketCount(3))
+        assertEquals(5L, histogram.count)
+        assertEquals(1016L, histogram.sum)
+        assertEquals(1000L, histogram.max)
+    }
+
+    @Test
+    fun testOnCommit_Aggregates() {
+        val metrics = BatchOperationMetrics()
+        val stats = BatchOperation.CommitStats(
+            operationsByType = mapOf(BatchOperation.CpoBuilder.Type.INSERT to 3, BatchOperation.CpoBuilder.Type.DELETE to 1),
+            operationsByUri = mapOf("com.android.calendar/events" to 4),
+            estimatedPayloadBytes = 2048,
+            splits = 1,
+            chunks = listOf(
+                BatchOperation.CommitStats.Chunk(0, 2, 2_000_000),
+                BatchOperation.CommitStats.Chunk(2, 4, 3_000_000)
+            ),
+            rowsAffected = 4,
+            yieldPoints = listOf(0),
+            error = null
+        )
+        metrics.onCommit(stats)
+        metrics.onCommit(stats)
+
+        assertEquals(2L, metrics.commits)
+        assertEquals(0L, metrics.failedCommits)
+        assertEquals(2L, metrics.splits)
+        assertEquals(8L, metrics.rowsAffected)
+        assertEquals(2L, metrics.yieldPoints)
+        assertEquals(2L, metrics.operationsPerCommit.count)
+        assertEquals(8L, metrics.operationsPerCommit.sum)
+        assertEquals(4L, metrics.chunkMillis.count)
+
+        metrics.reset()
+        assertEquals(0L, metrics.commits)
+        assertEquals(0L, metrics.chunkMillis.count)
+    }
+
+}
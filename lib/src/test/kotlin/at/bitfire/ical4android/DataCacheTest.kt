@@ -0,0 +1,80 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class DataCacheTest {
+
+    @Test
+    fun testStrong() {
+        val cache = DataCache.Strong<String>()
+        val slot = cache.newSlot()
+        assertNull(slot.get())
+
+        val value = "value"
+        slot.set(value)
+        assertSame(value, slot.get())
+
+        slot.set(null)
+        assertNull(slot.get())
+    }
+
+    @Test
+    fun testLru_EvictsLeastRecentlyUsed() {
+        val cache = DataCache.Lru<String>(10) { it.length.toLong() }
+        val slot1 = cache.newSlot().apply { set("12345") }
+        val slot2 = cache.newSlot().apply { set("12345") }
+        assertEquals(10L, cache.bytes)
+
+        // access slot1, so that slot2 is the least recently used one
+        slot1.get()
+        val slot3 = cache.newSlot().apply { set("123") }
+        assertEquals("12345", slot1.get())
+        assertNull(slot2.get())
+        assertEquals("123", slot3.get())
+        assertEquals(8L, cache.bytes)
+        assertEquals(2, cache.size)
+        assertEquals(1L, cache.metrics.evictions)
+    }
+
+    @Test
+    fun testLru_ReplaceValue() {
+        val cache = DataCache.Lru<String>(10) { it.length.toLong() }
+        val slot = cache.newSlot()
+        slot.set("12345")
+        slot.set("123")
+        assertEquals(3L, cache.bytes)
+
+        slot.set(null)
+        assertEquals(0L, cache.bytes)
+        assertEquals(0, cache.size)
+    }
+
+    @Test
+    fun testMetrics() {
+        val metrics = DataCache.Metrics()
+        metrics.loaded(1_000_000, false)
+        metrics.hit()
+        metrics.hit()
+        metrics.loaded(2_000_000, true)
+
+        assertEquals(2L, metrics.hits)
+        assertEquals(2L, metrics.loads)
+        assertEquals(1L, metrics.reloads)
+        assertEquals(2_000_000L, metrics.reloadNanos)
+        assertEquals(0.5, metrics.hitRate, 0.001)
+
+        metrics.reset()
+        assertEquals(0L, metrics.hits)
+        assertEquals(0.0, metrics.hitRate, 0.001)
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * This file is part of ical4android which is released under GPLv3.
+ * Copyright © All Contributors. See the LICENSE and AUTHOR files in the root directory for details.
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+package at.bitfire.ical4android.util
+
+import at.bitfire.ical4android.util.LogUtils.logLazy
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.logging.Handler
+import java.util.logging.Level
+import java.util.logging.LogRecord
+import java.util.logging.Logger
+
+class LogUtilsTest {
+
+    private val records = mutableListOf<LogRecord>()
+
+    private val logger = Logger.getAnonymousLogger().apply {
+        useParentHandlers = false
+        addHandler(object: Handler() {
+            override fun publish(record: LogRecord) { records += record }
+            override fun flush() {}
+            override fun close() {}
+        })
+    }
+
+
+    @Test
+    fun testLogLazy_LevelDisabled() {
+        logger.level = Level.INFO
+        var built = false
+        logger.logLazy(Level.FINE) { built = true; "message" }
+        logger.logLazy(Level.FINE, "message") { built = true; Any() }
+        assertFalse(built)
+        assertTrue(records.isEmpty())
+    }
+
+    @Test
+    fun testLogLazy_LevelEnabled() {
+        logger.level = Level.ALL
+        val e = Exception()
+        logger.logLazy(Level.FINE, e) { "message" }
+        logger.logLazy(Level.FINE, "with param") { 42 }
+
+        assertEquals(2, records.size)
+        assertEquals("message", records[0].message)
+        assertEquals(e, records[0].thrown)
+        assertEquals("with param", records[1].message)
+        assertEquals(42, records[1].parameters.single())
+    }
+
+}